@@ -0,0 +1,129 @@
+package datawave.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.accumulo.core.security.Authorizations;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import datawave.accumulo.util.security.UserAuthFunctions;
+import datawave.security.authorization.DatawaveUser;
+import datawave.security.authorization.SubjectIssuerDNPair;
+import datawave.security.util.AuthorizationsMinimizer;
+
+/**
+ * Benchmarks for minimizing the authorizations of a proxy chain and for computing a user's requested authorizations
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AuthorizationBenchmarks {
+    
+    @State(Scope.Benchmark)
+    public static class Chain {
+        @Param({"SHALLOW_NARROW", "SHALLOW_WIDE"})
+        public VisibilityCorpus.Shape shape;
+        
+        /**
+         * number of entities in the proxy chain
+         */
+        @Param({"2", "8", "32"})
+        public int entities;
+        
+        /**
+         * number of distinct authorizations held by each entity
+         */
+        @Param({"16", "256", "1024"})
+        public int auths;
+        
+        List<Authorizations> authorizations;
+        DatawaveUser user;
+        String requestedAuths;
+        UserAuthFunctions userAuthFunctions = UserAuthFunctions.getInstance();
+        
+        @Setup(Level.Trial)
+        public void setup() {
+            VisibilityCorpus corpus = new VisibilityCorpus(shape);
+            authorizations = new ArrayList<>(corpus.authorizations(entities, auths));
+            // servers proxying for users typically hold a superset of the user's authorizations
+            for (int i = 1; i < entities; i += 2) {
+                List<byte[]> superset = new ArrayList<>(authorizations.get(0).getAuthorizations());
+                superset.addAll(authorizations.get(i).getAuthorizations());
+                authorizations.set(i, new Authorizations(superset));
+            }
+            
+            Set<String> userAuths = new HashSet<>();
+            for (byte[] auth : authorizations.get(0)) {
+                userAuths.add(new String(auth, UTF_8));
+            }
+            SubjectIssuerDNPair dn = SubjectIssuerDNPair.of("userDN", "issuerDN");
+            user = new DatawaveUser(dn, DatawaveUser.UserType.USER, userAuths, null, null, System.currentTimeMillis());
+            requestedAuths = String.join(" , ", userAuths);
+        }
+    }
+    
+    @Benchmark
+    public Collection<Authorizations> minimize(Chain chain) {
+        return AuthorizationsMinimizer.minimize(chain.authorizations);
+    }
+    
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Collection<Authorizations> minimizeContended(Chain chain) {
+        return AuthorizationsMinimizer.minimize(chain.authorizations);
+    }
+    
+    /**
+     * The original quadratic implementation, as a baseline for {@link #minimize}
+     */
+    @Benchmark
+    public Collection<Authorizations> minimizeBySubsetScan(Chain chain) {
+        Collection<Authorizations> authorizations = chain.authorizations;
+        final LinkedHashSet<Set<String>> allAuths = authorizations.stream()
+                        .map(a -> a.getAuthorizations().stream().map(String::new).collect(Collectors.toCollection(HashSet::new)))
+                        .collect(Collectors.toCollection(LinkedHashSet::new));
+        for (Iterator<Set<String>> it = allAuths.iterator(); it.hasNext(); /* empty */) {
+            Set<String> currentSet = it.next();
+            if (allAuths.stream().filter(a -> a != currentSet && a.size() <= currentSet.size()).anyMatch(currentSet::containsAll))
+                it.remove();
+        }
+        if (allAuths.size() < authorizations.size()) {
+            authorizations = allAuths.stream().map(a -> new Authorizations(a.toArray(new String[0]))).collect(Collectors.toCollection(LinkedHashSet::new));
+        }
+        return authorizations;
+    }
+    
+    @Benchmark
+    public Authorizations getRequestedAuthorizations(Chain chain) {
+        return chain.userAuthFunctions.getRequestedAuthorizations(chain.requestedAuths, chain.user);
+    }
+    
+    @Benchmark
+    @Threads(Threads.MAX)
+    public Authorizations getRequestedAuthorizationsContended(Chain chain) {
+        return chain.userAuthFunctions.getRequestedAuthorizations(chain.requestedAuths, chain.user);
+    }
+}
@@ -0,0 +1,77 @@
+package datawave.benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import datawave.marking.MarkingFunctions;
+
+/**
+ * Compares {@link MarkingFunctions.Encoding} with building an {@link ObjectMapper} per call, and with the binary encoding
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EncodingBenchmarks {
+    
+    Map<String,String> markings;
+    String encoded;
+    byte[] encodedBytes;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        markings = new LinkedHashMap<>();
+        markings.put(MarkingFunctions.Default.COLUMN_VISIBILITY, "(T1&T2&(T3|T4))|(T5&T6)");
+        markings.put("orgs", "ORG1,ORG2");
+        markings.put("source", "ingest");
+        encoded = MarkingFunctions.Encoding.toString(markings);
+        encodedBytes = MarkingFunctions.Encoding.toBytes(markings);
+    }
+    
+    @Benchmark
+    public String toStringNewMapper() throws Exception {
+        return new ObjectMapper().writeValueAsString(markings);
+    }
+    
+    @Benchmark
+    public String toStringShared() {
+        return MarkingFunctions.Encoding.toString(markings);
+    }
+    
+    @Benchmark
+    public byte[] toBytes() {
+        return MarkingFunctions.Encoding.toBytes(markings);
+    }
+    
+    @Benchmark
+    public Map<?,?> fromStringNewMapper() throws Exception {
+        return new ObjectMapper().readValue(encoded, Map.class);
+    }
+    
+    @Benchmark
+    public Map<String,String> fromStringShared() {
+        return MarkingFunctions.Encoding.fromString(encoded);
+    }
+    
+    @Benchmark
+    public Map<String,String> fromBytes() {
+        return MarkingFunctions.Encoding.fromBytes(encodedBytes);
+    }
+}
@@ -0,0 +1,144 @@
+package datawave.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import datawave.marking.ColumnVisibilityCache;
+import datawave.marking.ColumnVisibilityHelper;
+import datawave.marking.FlattenedVisibilityCache;
+import datawave.marking.MarkingFunctions;
+
+/**
+ * Benchmarks for the visibility caches and marking functions. Each benchmark runs single threaded and, as a {@code Contended} variant, on every available
+ * processor so that lock contention in the shared caches shows up.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarkingBenchmarks {
+    
+    @State(Scope.Benchmark)
+    public static class Corpus {
+        @Param({"SHALLOW_NARROW", "SHALLOW_WIDE", "DEEP_NARROW", "DEEP_WIDE"})
+        public VisibilityCorpus.Shape shape;
+        
+        /**
+         * number of distinct inputs; larger than the default {@link ColumnVisibilityCache} size means the benchmark includes misses
+         */
+        @Param({"128", "4096"})
+        public int size;
+        
+        ByteSequence[] expressions;
+        ColumnVisibility[] visibilities;
+        List<List<ColumnVisibility>> groups;
+        // ColumnVisibility.flatten() normalizes the parse tree in place, so combineByString gets its own copies of the groups
+        List<List<ColumnVisibility>> stringGroups;
+        List<Authorizations> authorizations;
+        MarkingFunctions markingFunctions = new MarkingFunctions.Default();
+        
+        @Setup(Level.Trial)
+        public void setup() {
+            VisibilityCorpus corpus = new VisibilityCorpus(shape);
+            expressions = corpus.expressions(size).stream().map(ArrayByteSequence::new).toArray(ByteSequence[]::new);
+            visibilities = corpus.visibilities(size).toArray(new ColumnVisibility[0]);
+            groups = new ArrayList<>();
+            for (int i = 0; i < size; i += 8) {
+                groups.add(corpus.visibilities(8));
+            }
+            stringGroups = groups.stream().map(group -> group.stream().map(vis -> new ColumnVisibility(vis.getExpression())).collect(Collectors.toList()))
+                            .collect(Collectors.toList());
+            authorizations = corpus.authorizations(3, 64);
+            ColumnVisibilityCache.clear();
+            FlattenedVisibilityCache.clear();
+        }
+    }
+    
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = 0;
+        
+        int next(int size) {
+            next = (next + 1) % size;
+            return next;
+        }
+    }
+    
+    @Benchmark
+    public ColumnVisibility columnVisibilityCacheGet(Corpus corpus, Cursor cursor) {
+        return ColumnVisibilityCache.get(corpus.expressions[cursor.next(corpus.size)]);
+    }
+    
+    @Benchmark
+    @Threads(Threads.MAX)
+    public ColumnVisibility columnVisibilityCacheGetContended(Corpus corpus, Cursor cursor) {
+        return ColumnVisibilityCache.get(corpus.expressions[cursor.next(corpus.size)]);
+    }
+    
+    @Benchmark
+    public byte[] flatten(Corpus corpus, Cursor cursor) {
+        return FlattenedVisibilityCache.flatten(corpus.visibilities[cursor.next(corpus.size)]);
+    }
+    
+    @Benchmark
+    @Threads(Threads.MAX)
+    public byte[] flattenContended(Corpus corpus, Cursor cursor) {
+        return FlattenedVisibilityCache.flatten(corpus.visibilities[cursor.next(corpus.size)]);
+    }
+    
+    @Benchmark
+    public ColumnVisibility combine(Corpus corpus, Cursor cursor) throws MarkingFunctions.Exception {
+        return corpus.markingFunctions.combine(corpus.groups.get(cursor.next(corpus.groups.size())));
+    }
+    
+    @Benchmark
+    @Threads(Threads.MAX)
+    public ColumnVisibility combineContended(Corpus corpus, Cursor cursor) throws MarkingFunctions.Exception {
+        return corpus.markingFunctions.combine(corpus.groups.get(cursor.next(corpus.groups.size())));
+    }
+    
+    /**
+     * The combine implementation that joins the flattened expressions as Strings and parses the result twice, as a baseline for {@link #combine}
+     */
+    @Benchmark
+    public ColumnVisibility combineByString(Corpus corpus, Cursor cursor) {
+        Collection<ColumnVisibility> expressions = corpus.stringGroups.get(cursor.next(corpus.stringGroups.size()));
+        return new ColumnVisibility(new ColumnVisibility(expressions.stream().map(ColumnVisibility::flatten).filter(b -> b.length > 0)
+                        .map(b -> "(" + new String(b, UTF_8) + ")").collect(Collectors.joining("&")).getBytes(UTF_8)).flatten());
+    }
+    
+    @Benchmark
+    public ColumnVisibility simplifyForAuthorizations(Corpus corpus, Cursor cursor) throws MarkingFunctions.Exception {
+        return ColumnVisibilityHelper.simplifyColumnVisibilityForAuthorizations(corpus.visibilities[cursor.next(corpus.size)], corpus.authorizations);
+    }
+    
+    @Benchmark
+    @Threads(Threads.MAX)
+    public ColumnVisibility simplifyForAuthorizationsContended(Corpus corpus, Cursor cursor) throws MarkingFunctions.Exception {
+        return ColumnVisibilityHelper.simplifyColumnVisibilityForAuthorizations(corpus.visibilities[cursor.next(corpus.size)], corpus.authorizations);
+    }
+}
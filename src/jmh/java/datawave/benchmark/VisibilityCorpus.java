@@ -0,0 +1,132 @@
+package datawave.benchmark;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+
+/**
+ * Generates repeatable corpora of visibility expressions and authorizations for the benchmarks. Shallow expressions are an OR of a few ANDs of terms, which is
+ * typical of event markings, while deep expressions nest alternating ANDs and ORs several levels down. Narrow corpora draw their terms from a small
+ * vocabulary, so expressions share most of their terms, while wide corpora draw from a large one.
+ */
+public class VisibilityCorpus {
+    
+    public enum Shape {
+        SHALLOW_NARROW(1, 8), SHALLOW_WIDE(1, 512), DEEP_NARROW(4, 8), DEEP_WIDE(4, 512);
+        
+        private final int depth;
+        private final int vocabulary;
+        
+        Shape(int depth, int vocabulary) {
+            this.depth = depth;
+            this.vocabulary = vocabulary;
+        }
+    }
+    
+    private static final long SEED = 0x5eed;
+    
+    private final Shape shape;
+    private final Random random = new Random(SEED);
+    
+    public VisibilityCorpus(Shape shape) {
+        this.shape = shape;
+    }
+    
+    /**
+     * @param count
+     *            the number of expressions
+     * @return {@code count} expressions, not necessarily distinct
+     */
+    public List<byte[]> expressions(int count) {
+        List<byte[]> expressions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder expression = new StringBuilder();
+            appendOr(expression, shape.depth);
+            expressions.add(expression.toString().getBytes(UTF_8));
+        }
+        return expressions;
+    }
+    
+    /**
+     * @param count
+     *            the number of visibilities
+     * @return {@code count} newly parsed visibilities
+     */
+    public List<ColumnVisibility> visibilities(int count) {
+        List<ColumnVisibility> visibilities = new ArrayList<>(count);
+        for (byte[] expression : expressions(count)) {
+            visibilities.add(new ColumnVisibility(expression));
+        }
+        return visibilities;
+    }
+    
+    /**
+     * Generate authorizations sets of exactly {@code size} distinct authorizations each. The terms are drawn from the vocabulary of this corpus extended by
+     * {@code size} terms, so that the sets can be as large as asked for, while narrow corpora still produce sets that share most of their terms.
+     *
+     * @param count
+     *            the number of authorizations sets, like the entities in a proxy chain
+     * @param size
+     *            the number of distinct authorizations in each set
+     * @return {@code count} authorizations sets
+     */
+    public List<Authorizations> authorizations(int count, int size) {
+        int vocabulary = shape.vocabulary + size;
+        List<Authorizations> authorizations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Set<String> auths = new LinkedHashSet<>();
+            while (auths.size() < size) {
+                auths.add("T" + random.nextInt(vocabulary));
+            }
+            authorizations.add(new Authorizations(auths.toArray(new String[0])));
+        }
+        return authorizations;
+    }
+    
+    /**
+     * @return a term from the vocabulary of this corpus
+     */
+    public String term() {
+        return "T" + random.nextInt(shape.vocabulary);
+    }
+    
+    private void appendOr(StringBuilder expression, int depth) {
+        int branches = 1 + random.nextInt(3);
+        for (int i = 0; i < branches; i++) {
+            if (i > 0) {
+                expression.append('|');
+            }
+            boolean parens = branches > 1;
+            if (parens) {
+                expression.append('(');
+            }
+            appendAnd(expression, depth);
+            if (parens) {
+                expression.append(')');
+            }
+        }
+    }
+    
+    private void appendAnd(StringBuilder expression, int depth) {
+        int clauses = 1 + random.nextInt(4);
+        for (int i = 0; i < clauses; i++) {
+            if (i > 0) {
+                expression.append('&');
+            }
+            if (depth > 1 && random.nextBoolean()) {
+                expression.append('(');
+                appendOr(expression, depth - 1);
+                expression.append(')');
+            } else {
+                expression.append(term());
+            }
+        }
+    }
+}
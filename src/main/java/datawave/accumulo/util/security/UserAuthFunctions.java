@@ -2,11 +2,15 @@ package datawave.accumulo.util.security;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -14,11 +18,12 @@ import java.util.stream.Collectors;
 import org.apache.accumulo.core.security.Authorizations;
 
 import com.google.common.base.Splitter;
-import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 
 import datawave.security.authorization.AuthorizationException;
 import datawave.security.authorization.DatawaveUser;
+import datawave.security.util.MinimizedAuthorizations;
 
 /**
  * Function definitions for common DataWave/Accumulo security concerns, such as translation of {@link DatawaveUser} auth tokens to Accumulo
@@ -117,6 +122,52 @@ public interface UserAuthFunctions {
     LinkedHashSet<Authorizations> mergeAuthorizations(Authorizations primaryUserAuths, Collection<? extends DatawaveUser> proxyChain,
                     Predicate<? super DatawaveUser> proxiedUserTest);
     
+    /**
+     * Merges and minimizes the authorizations of many requests at once. Each result is the {@link MinimizedAuthorizations} form of what
+     * {@link #mergeAuthorizations(Authorizations, Collection, Predicate)} returns for the corresponding request, which scanners can consume without minimizing
+     * it again (see {@link datawave.security.util.ScannerHelper}).
+     *
+     * @param requests
+     *            the requests to merge
+     * @return the minimized authorizations for each request, in the order of {@code requests}
+     */
+    default List<MinimizedAuthorizations> mergeAuthorizations(List<MergeRequest> requests) {
+        Map<List<Authorizations>,MinimizedAuthorizations> merged = new HashMap<>();
+        List<MinimizedAuthorizations> minimized = new ArrayList<>(requests.size());
+        for (MergeRequest request : requests) {
+            LinkedHashSet<Authorizations> auths = mergeAuthorizations(request.getPrimaryUserAuths(), request.getProxyChain(), request.getProxiedUserTest());
+            minimized.add(merged.computeIfAbsent(ImmutableList.copyOf(auths), MinimizedAuthorizations::of));
+        }
+        return minimized;
+    }
+    
+    /**
+     * The arguments of {@link #mergeAuthorizations(Authorizations, Collection, Predicate)} for one request in a call to {@link #mergeAuthorizations(List)}
+     */
+    class MergeRequest {
+        private final Authorizations primaryUserAuths;
+        private final Collection<? extends DatawaveUser> proxyChain;
+        private final Predicate<? super DatawaveUser> proxiedUserTest;
+        
+        public MergeRequest(Authorizations primaryUserAuths, Collection<? extends DatawaveUser> proxyChain, Predicate<? super DatawaveUser> proxiedUserTest) {
+            this.primaryUserAuths = primaryUserAuths;
+            this.proxyChain = proxyChain;
+            this.proxiedUserTest = proxiedUserTest;
+        }
+        
+        public Authorizations getPrimaryUserAuths() {
+            return primaryUserAuths;
+        }
+        
+        public Collection<? extends DatawaveUser> getProxyChain() {
+            return proxyChain;
+        }
+        
+        public Predicate<? super DatawaveUser> getProxiedUserTest() {
+            return proxiedUserTest;
+        }
+    }
+    
     /**
      * Default implementation of {@link UserAuthFunctions}
      */
@@ -164,7 +215,7 @@ public interface UserAuthFunctions {
             if (null == user) {
                 return Authorizations.EMPTY;
             }
-            return UserAuthFunctions.getRequestedAuthorizations(requestedAuths, user::getAuths, throwOnMissingAuths);
+            return UserAuthIndex.forUser(user).getRequestedAuthorizations(requestedAuths, throwOnMissingAuths);
         }
         
         /**
@@ -174,6 +225,30 @@ public interface UserAuthFunctions {
         @Override
         public LinkedHashSet<Authorizations> mergeAuthorizations(Authorizations primaryUserAuths, Collection<? extends DatawaveUser> proxyChain,
                         Predicate<? super DatawaveUser> proxiedUserTest) {
+            return mergeAuthorizations(primaryUserAuths, proxyChain, proxiedUserTest, user -> UserAuthIndex.forUser(user).getAuthorizations());
+        }
+        
+        /**
+         * Identical user auth sets are converted only once per batch, by comparing the users by identity, and identical merged sets are minimized only once
+         */
+        @Override
+        public List<MinimizedAuthorizations> mergeAuthorizations(List<MergeRequest> requests) {
+            Map<DatawaveUser,Authorizations> userAuths = new IdentityHashMap<>();
+            Function<DatawaveUser,Authorizations> toAuthorizations = user -> userAuths.computeIfAbsent(user,
+                            u -> UserAuthIndex.forUser(u).getAuthorizations());
+            
+            Map<List<Authorizations>,MinimizedAuthorizations> merged = new HashMap<>();
+            List<MinimizedAuthorizations> minimized = new ArrayList<>(requests.size());
+            for (MergeRequest request : requests) {
+                LinkedHashSet<Authorizations> auths = mergeAuthorizations(request.getPrimaryUserAuths(), request.getProxyChain(), request.getProxiedUserTest(),
+                                toAuthorizations);
+                minimized.add(merged.computeIfAbsent(ImmutableList.copyOf(auths), MinimizedAuthorizations::of));
+            }
+            return minimized;
+        }
+        
+        private LinkedHashSet<Authorizations> mergeAuthorizations(Authorizations primaryUserAuths, Collection<? extends DatawaveUser> proxyChain,
+                        Predicate<? super DatawaveUser> proxiedUserTest, Function<DatawaveUser,Authorizations> toAuthorizations) {
             LinkedHashSet<Authorizations> mergedAuths = new LinkedHashSet<>();
             
             if (null == primaryUserAuths) {
@@ -186,8 +261,7 @@ public interface UserAuthFunctions {
                     // @formatter:off
                     proxyChain.stream()
                             .filter(proxiedUserTest)
-                            .map(DatawaveUser::getAuths)
-                            .map(UserAuthFunctions::toAuthorizations)
+                            .map(toAuthorizations)
                             .forEach(mergedAuths::add);
                     // @formatter:on
                 }
@@ -200,36 +274,13 @@ public interface UserAuthFunctions {
      * @return If {@code throwOnMissingAuths} is {@code false}, returns the intersection of {@code requestedAuths} and {@code authSupplier.get()} as an
      *         {@link Authorizations} instance. If {@code throwOnMissingAuths} is {@code true}, the same intersection is computed, but
      *         {@link IllegalArgumentException} is thrown if any auths were requested but not supplied.
+     * @see UserAuthIndex
      */
     static Authorizations getRequestedAuthorizations(String requestedAuths, Supplier<Collection<String>> authSupplier, boolean throwOnMissingAuths) {
-        HashSet<String> requested = null;
-        if (!Strings.isNullOrEmpty(requestedAuths)) {
-            requested = new HashSet<>(splitAuths(requestedAuths));
-        }
-        
-        Authorizations authorizations = null;
-        
-        if (null != authSupplier) {
-            HashSet<String> missingAuths = (requested == null) ? new HashSet<>() : new HashSet<>(requested);
-            HashSet<String> userAuths = new HashSet<>(authSupplier.get());
-            if (!userAuths.isEmpty()) {
-                if (null != requested) {
-                    missingAuths.removeAll(userAuths);
-                    userAuths.retainAll(requested);
-                }
-                authorizations = new Authorizations(userAuths.toArray(new String[userAuths.size()]));
-            }
-            
-            if (!missingAuths.isEmpty() && throwOnMissingAuths) {
-                throw new IllegalArgumentException("User requested authorizations that they don't have. Missing: " + missingAuths + ", Requested: " + requested
-                                + ", User: " + userAuths);
-            }
-        }
-        
-        if (null == authorizations) {
-            authorizations = Authorizations.EMPTY;
+        if (null == authSupplier) {
+            return Authorizations.EMPTY;
         }
-        return authorizations;
+        return UserAuthIndex.forAuths(authSupplier.get()).getRequestedAuthorizations(requestedAuths, throwOnMissingAuths);
     }
     
     /**
@@ -0,0 +1,232 @@
+package datawave.accumulo.util.security;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.accumulo.core.security.Authorizations;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+
+import datawave.security.authorization.DatawaveUser;
+
+/**
+ * A precomputed index of a user's authorizations, used to resolve requested authorization strings (see
+ * {@link UserAuthFunctions#getRequestedAuthorizations(String, DatawaveUser, boolean)}) without splitting them into intermediate collections. Indexes are
+ * interned per distinct set of authorizations and remembered per {@link DatawaveUser} instance, and each index caches the {@link Authorizations} that it
+ * resolved for recently requested strings.
+ * <p>
+ * Indexes are immutable apart from their internal caches, and are thread safe.
+ */
+public final class UserAuthIndex {
+    /**
+     * System property that can be used to override the default maximum number of distinct authorization sets that are indexed
+     */
+    public static final String MAX_SIZE_PROPERTY = "datawave.user.auth.index.maxSize";
+    public static final long DEFAULT_MAX_SIZE = 10000;
+    
+    private static final int MAX_CACHED_REQUESTS = 64;
+    private static final int CONCURRENCY_LEVEL = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final CharMatcher WHITESPACE = CharMatcher.whitespace();
+    
+    private static final long MAX_SIZE = Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE);
+    private static final Cache<Set<String>,UserAuthIndex> byAuths = CacheBuilder.newBuilder().maximumSize(MAX_SIZE).concurrencyLevel(CONCURRENCY_LEVEL)
+                    .build();
+    // weak keys are compared by identity, so a user object is never hashed
+    private static final Cache<DatawaveUser,UserAuthIndex> byUser = CacheBuilder.newBuilder().weakKeys().maximumSize(MAX_SIZE)
+                    .concurrencyLevel(CONCURRENCY_LEVEL).build();
+    
+    private final Set<String> auths;
+    private final String[] authStrings;
+    private final byte[][] authBytes;
+    // open addressing hash table of indexes into authStrings, offset by one so that zero means an empty slot
+    private final int[] table;
+    private final Authorizations allAuthorizations;
+    private final Cache<String,Resolution> resolutions = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_REQUESTS).concurrencyLevel(CONCURRENCY_LEVEL)
+                    .build();
+    
+    private UserAuthIndex(Set<String> auths) {
+        this.auths = auths;
+        this.authStrings = auths.toArray(new String[0]);
+        this.authBytes = new byte[authStrings.length][];
+        this.table = new int[Integer.highestOneBit(Math.max(1, authStrings.length) * 2) * 2];
+        for (int i = 0; i < authStrings.length; i++) {
+            // Authorizations(String...) trims each authorization before encoding it
+            authBytes[i] = authStrings[i].trim().getBytes(UTF_8);
+            int slot = authStrings[i].hashCode() & (table.length - 1);
+            while (table[slot] != 0) {
+                slot = (slot + 1) & (table.length - 1);
+            }
+            table[slot] = i + 1;
+        }
+        this.allAuthorizations = authStrings.length == 0 ? null : toAuthorizations(allMatched());
+    }
+    
+    /**
+     * Get the index for a user's authorizations
+     *
+     * @param user
+     *            the user
+     * @return the index of {@link DatawaveUser#getAuths()}
+     */
+    public static UserAuthIndex forUser(DatawaveUser user) {
+        UserAuthIndex index = byUser.getIfPresent(user);
+        if (index == null) {
+            index = forAuths(user.getAuths());
+            byUser.put(user, index);
+        }
+        return index;
+    }
+    
+    /**
+     * Get the index for a collection of authorizations
+     *
+     * @param auths
+     *            the authorizations
+     * @return the index of {@code auths}
+     */
+    public static UserAuthIndex forAuths(Collection<String> auths) {
+        UserAuthIndex index = (auths instanceof Set) ? byAuths.getIfPresent(auths) : null;
+        if (index == null) {
+            Set<String> key = ImmutableSet.copyOf(auths);
+            index = byAuths.getIfPresent(key);
+            if (index == null) {
+                index = byAuths.asMap().computeIfAbsent(key, UserAuthIndex::new);
+            }
+        }
+        return index;
+    }
+    
+    /**
+     * @return the approximate number of distinct authorization sets that are indexed
+     */
+    public static long size() {
+        return byAuths.size();
+    }
+    
+    public static void clear() {
+        byUser.invalidateAll();
+        byAuths.invalidateAll();
+    }
+    
+    /**
+     * @return all of the indexed authorizations, as {@link UserAuthFunctions#toAuthorizations(Collection)} would convert them
+     */
+    public Authorizations getAuthorizations() {
+        return allAuthorizations == null ? Authorizations.EMPTY : allAuthorizations;
+    }
+    
+    /**
+     * Resolve requested authorizations against the indexed authorizations. The semantics are those of
+     * {@link UserAuthFunctions#getRequestedAuthorizations(String, java.util.function.Supplier, boolean)}.
+     *
+     * @param requestedAuths
+     *            the comma delimited requested authorizations, or null or empty to request all of the indexed authorizations
+     * @param throwOnMissingAuths
+     *            whether to throw if an authorization was requested that is not indexed
+     * @return the intersection of the requested and indexed authorizations
+     * @throws IllegalArgumentException
+     *             if {@code throwOnMissingAuths} is true and any requested authorizations are not indexed
+     */
+    public Authorizations getRequestedAuthorizations(String requestedAuths, boolean throwOnMissingAuths) {
+        if (requestedAuths == null || requestedAuths.isEmpty()) {
+            return getAuthorizations();
+        }
+        Resolution resolution = resolutions.getIfPresent(requestedAuths);
+        if (resolution == null) {
+            resolution = resolve(requestedAuths);
+            resolutions.put(requestedAuths, resolution);
+        }
+        if (throwOnMissingAuths && !resolution.missing.isEmpty()) {
+            throw new IllegalArgumentException("User requested authorizations that they don't have. Missing: " + resolution.missing + ", Requested: "
+                            + requestedAuths + ", User: " + auths);
+        }
+        return resolution.authorizations;
+    }
+    
+    private Resolution resolve(String requestedAuths) {
+        long[] matched = new long[(authStrings.length + Long.SIZE - 1) / Long.SIZE];
+        Set<String> missing = null;
+        int length = requestedAuths.length();
+        int start = 0;
+        while (start <= length) {
+            int end = requestedAuths.indexOf(UserAuthFunctions.REQUESTED_AUTHS_DELIMITER, start);
+            if (end < 0) {
+                end = length;
+            }
+            int next = end + 1;
+            // trim the token in place, as Splitter.trimResults() would
+            while (start < end && WHITESPACE.matches(requestedAuths.charAt(start))) {
+                start++;
+            }
+            while (end > start && WHITESPACE.matches(requestedAuths.charAt(end - 1))) {
+                end--;
+            }
+            if (end > start) {
+                int index = lookup(requestedAuths, start, end);
+                if (index >= 0) {
+                    matched[index / Long.SIZE] |= 1L << (index % Long.SIZE);
+                } else {
+                    if (missing == null) {
+                        missing = new LinkedHashSet<>();
+                    }
+                    missing.add(requestedAuths.substring(start, end));
+                }
+            }
+            start = next;
+        }
+        Authorizations authorizations = authStrings.length == 0 ? Authorizations.EMPTY : toAuthorizations(matched);
+        return new Resolution(authorizations, missing == null ? ImmutableSet.of() : ImmutableSet.copyOf(missing));
+    }
+    
+    private int lookup(String s, int start, int end) {
+        // the same hash as s.substring(start, end).hashCode()
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + s.charAt(i);
+        }
+        int len = end - start;
+        for (int slot = hash & (table.length - 1); table[slot] != 0; slot = (slot + 1) & (table.length - 1)) {
+            String auth = authStrings[table[slot] - 1];
+            if (auth.length() == len && auth.regionMatches(0, s, start, len)) {
+                return table[slot] - 1;
+            }
+        }
+        return -1;
+    }
+    
+    private long[] allMatched() {
+        long[] matched = new long[(authStrings.length + Long.SIZE - 1) / Long.SIZE];
+        for (int i = 0; i < authStrings.length; i++) {
+            matched[i / Long.SIZE] |= 1L << (i % Long.SIZE);
+        }
+        return matched;
+    }
+    
+    private Authorizations toAuthorizations(long[] matched) {
+        List<byte[]> bytes = new ArrayList<>();
+        for (int i = 0; i < authStrings.length; i++) {
+            if ((matched[i / Long.SIZE] & (1L << (i % Long.SIZE))) != 0) {
+                bytes.add(authBytes[i]);
+            }
+        }
+        return new Authorizations(bytes);
+    }
+    
+    private static class Resolution {
+        private final Authorizations authorizations;
+        private final Set<String> missing;
+        
+        Resolution(Authorizations authorizations, Set<String> missing) {
+            this.authorizations = authorizations;
+            this.missing = missing;
+        }
+    }
+}
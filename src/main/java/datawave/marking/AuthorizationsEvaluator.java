@@ -0,0 +1,229 @@
+package datawave.marking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.accumulo.core.security.ColumnVisibility.Node;
+import org.apache.accumulo.core.security.ColumnVisibility.NodeType;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Evaluates parsed visibility expressions against a collection of {@link Authorizations} at once, walking the parse tree directly rather than requiring a
+ * {@link ColumnVisibility} per sub-expression. Every authorization is indexed once into a map from the authorization bytes to a bit mask of the authorizations
+ * sets that contain it, so each term of an expression is looked up once no matter how many authorizations sets there are. An expression is satisfied if it is
+ * satisfied by every one of the authorizations sets.
+ * <p>
+ * Evaluators are immutable and thread safe. Use {@link #forAuthorizations(Collection)} to obtain a cached instance.
+ * <p>
+ * This class is loaded by the visibility filter iterators on the tablet servers, so it must only depend on Accumulo and Guava.
+ */
+public class AuthorizationsEvaluator {
+    private static final int MAX_CACHED_EVALUATORS = 1024;
+    
+    private static final Cache<List<Authorizations>,AuthorizationsEvaluator> evaluators = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_EVALUATORS)
+                    .concurrencyLevel(Math.max(4, Runtime.getRuntime().availableProcessors())).recordStats().build();
+    
+    // one mask per group of (up to) 64 authorizations sets
+    private final Map<ByteSequence,long[]> termMasks = new HashMap<>();
+    private final long[] fullMasks;
+    private final Set<Authorizations> fingerprint;
+    
+    public AuthorizationsEvaluator(Collection<Authorizations> authorizations) {
+        // an authorizations set that is a superset of another can never change the result, so only the minimal sets are evaluated
+        Collection<Authorizations> minimized = minimize(authorizations);
+        fingerprint = ImmutableSet.copyOf(minimized);
+        int numGroups = (minimized.size() + Long.SIZE - 1) / Long.SIZE;
+        fullMasks = new long[numGroups];
+        int index = 0;
+        for (Authorizations auths : minimized) {
+            int group = index / Long.SIZE;
+            long bit = 1L << (index % Long.SIZE);
+            fullMasks[group] |= bit;
+            for (byte[] auth : auths) {
+                termMasks.computeIfAbsent(new ArrayByteSequence(auth), k -> new long[numGroups])[group] |= bit;
+            }
+            index++;
+        }
+    }
+    
+    /**
+     * Get an evaluator for the specified authorizations, creating and caching one if needed. Repeated calls with an equal list return the same evaluator
+     * without allocating.
+     *
+     * @param authorizations
+     *            the authorizations sets
+     * @return the evaluator
+     */
+    public static AuthorizationsEvaluator forAuthorizations(List<Authorizations> authorizations) {
+        AuthorizationsEvaluator evaluator = evaluators.getIfPresent(authorizations);
+        if (evaluator == null) {
+            evaluator = new AuthorizationsEvaluator(authorizations);
+            // cache against a copy so that a caller reusing its list cannot corrupt the cache key
+            evaluators.put(ImmutableList.copyOf(authorizations), evaluator);
+        }
+        return evaluator;
+    }
+    
+    /**
+     * @return the hit and miss counts for the evaluator cache
+     */
+    public static CacheStats getCacheStats() {
+        return evaluators.stats();
+    }
+    
+    /**
+     * Get a canonical representation of the authorizations that this evaluator was created with. Two evaluators with equal fingerprints produce the same
+     * result for any expression, regardless of the order of the authorizations sets or of any redundant (superset) authorizations sets.
+     *
+     * @return the minimized set of authorizations sets
+     */
+    public Set<Authorizations> getFingerprint() {
+        return fingerprint;
+    }
+    
+    /**
+     * Determine whether a visibility is satisfied by all of the authorizations sets
+     *
+     * @param visibility
+     *            the visibility
+     * @return true if every authorizations set satisfies {@code visibility}
+     */
+    public boolean evaluate(ColumnVisibility visibility) {
+        byte[] expression = visibility.getExpression();
+        return expression.length == 0 || evaluate(visibility.getParseTree(), expression);
+    }
+    
+    /**
+     * Determine whether a (sub-)tree of a parsed visibility is satisfied by all of the authorizations sets
+     *
+     * @param node
+     *            the node to evaluate
+     * @param expression
+     *            the expression that {@code node} was parsed from
+     * @return true if every authorizations set satisfies {@code node}
+     */
+    public boolean evaluate(Node node, byte[] expression) {
+        for (int group = 0; group < fullMasks.length; group++) {
+            if (mask(node, expression, group) != fullMasks[group]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @return the bit mask of the authorizations sets within {@code group} that satisfy {@code node}
+     */
+    private long mask(Node node, byte[] expression, int group) {
+        long full = fullMasks[group];
+        switch (node.getType()) {
+            case TERM:
+                long[] masks = termMasks.get(unquotedTerm(node, expression));
+                return masks == null ? 0L : masks[group];
+            case AND:
+                long and = full;
+                for (Node child : node.getChildren()) {
+                    and &= mask(child, expression, group);
+                    if (and == 0L) {
+                        break;
+                    }
+                }
+                return and;
+            case OR:
+                long or = 0L;
+                for (Node child : node.getChildren()) {
+                    or |= mask(child, expression, group);
+                    if (or == full) {
+                        break;
+                    }
+                }
+                return or;
+            default:
+                return full;
+        }
+    }
+    
+    /**
+     * Remove the duplicate authorizations sets and those that are a superset of another set, as they can never change the result. This is the same
+     * minimization as {@code datawave.security.util.AuthorizationsMinimizer}, repeated here so that the tablet servers do not need the client classes it
+     * depends on. It only runs when an evaluator is created, so it favors simplicity over speed.
+     *
+     * @param authorizations
+     *            the authorizations sets
+     * @return the minimal authorizations sets, in their original order
+     */
+    static Collection<Authorizations> minimize(Collection<Authorizations> authorizations) {
+        Map<Set<ByteSequence>,Authorizations> distinct = new LinkedHashMap<>();
+        for (Authorizations auths : authorizations) {
+            Set<ByteSequence> terms = new HashSet<>();
+            for (byte[] auth : auths) {
+                terms.add(new ArrayByteSequence(auth));
+            }
+            distinct.putIfAbsent(terms, auths);
+        }
+        
+        // a set can only be a superset of a smaller one, so each set only needs to be checked against the smaller sets that were kept
+        List<Set<ByteSequence>> bySize = new ArrayList<>(distinct.keySet());
+        bySize.sort(Comparator.comparingInt(Set::size));
+        List<Set<ByteSequence>> kept = new ArrayList<>();
+        for (Set<ByteSequence> candidate : bySize) {
+            if (kept.stream().noneMatch(candidate::containsAll)) {
+                kept.add(candidate);
+            }
+        }
+        distinct.keySet().retainAll(kept);
+        return distinct.values();
+    }
+    
+    /**
+     * Get the term for a term node, removing any quoting so that it may be compared to an authorization
+     *
+     * @param termNode
+     *            the term node
+     * @param expression
+     *            the expression that {@code termNode} was parsed from
+     * @return the unquoted, unescaped term
+     */
+    static ByteSequence unquotedTerm(Node termNode, byte[] expression) {
+        ByteSequence term = termNode.getTerm(expression);
+        if (expression[termNode.getTermStart()] == '"') {
+            byte[] data = term.getBackingArray();
+            int end = term.offset() + term.length();
+            for (int i = term.offset(); i < end; i++) {
+                if (data[i] == '\\') {
+                    return new ArrayByteSequence(unescape(data, term.offset(), end));
+                }
+            }
+        }
+        return term;
+    }
+    
+    private static byte[] unescape(byte[] data, int start, int end) {
+        byte[] unescaped = new byte[end - start];
+        int len = 0;
+        for (int i = start; i < end; i++) {
+            if (data[i] == '\\' && i + 1 < end) {
+                i++;
+            }
+            unescaped[len++] = data[i];
+        }
+        return Arrays.copyOf(unescaped, len);
+    }
+}
@@ -1,22 +1,78 @@
 package datawave.marking;
 
-import java.util.Collections;
-import java.util.Map;
-
 import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.security.ColumnVisibility;
-import org.apache.commons.collections4.map.LRUMap;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * This is a cache that can be used per process to save parsed visibilities. The cache is a segmented (lock-striped) approximate LRU so that concurrent
+ * readers do not contend on a single monitor. Visibilities are always parsed outside of any lock; two threads that miss on the same bytes at the same time may
+ * both parse them, in which case the last one put into the cache wins. Cached visibilities are the canonical visibilities from the
+ * {@link VisibilityInterner}, which this cache keeps reachable.
+ * <p>
+ * A cached visibility is shared by every caller that gets it, so it must not be modified. In particular {@link ColumnVisibility#flatten()} normalizes the
+ * parse tree in place; use {@link ColumnVisibilityHelper#flattenToBytes(ColumnVisibility)} or the {@link FlattenedVisibilityCache} instead.
+ */
 public class ColumnVisibilityCache {
-    @SuppressWarnings("unchecked")
-    private static Map<ByteSequence,ColumnVisibility> cache = Collections.synchronizedMap(new LRUMap(256));
+    /**
+     * System property that can be used to override the default maximum number of cached visibilities
+     */
+    public static final String MAX_SIZE_PROPERTY = "datawave.marking.columnVisibilityCache.maxSize";
+    public static final long DEFAULT_MAX_SIZE = 256;
+    
+    private static final int CONCURRENCY_LEVEL = Math.max(4, Runtime.getRuntime().availableProcessors());
+    
+    private static volatile Cache<ByteSequence,ColumnVisibility> cache = createCache(configuredMaximumSize());
     
     public static ColumnVisibility get(ByteSequence bytes) {
-        ColumnVisibility vis = cache.get(bytes);
+        Cache<ByteSequence,ColumnVisibility> current = cache;
+        ColumnVisibility vis = current.getIfPresent(bytes);
         if (vis == null) {
-            vis = new ColumnVisibility(bytes.toArray());
-            cache.put(bytes, vis);
+            vis = VisibilityInterner.parse(bytes.toArray());
+            current.put(bytes, vis);
         }
         return vis;
     }
+    
+    /**
+     * Replace the cache with an empty one that holds at most {@code maxSize} visibilities
+     *
+     * @param maxSize
+     *            the maximum number of visibilities to cache
+     */
+    public static void setMaximumSize(long maxSize) {
+        cache = createCache(maxSize);
+    }
+    
+    /**
+     * @return the hit, miss and eviction counts for the cache
+     */
+    public static CacheStats getStats() {
+        return cache.stats();
+    }
+    
+    /**
+     * @return the approximate number of visibilities currently cached
+     */
+    public static long size() {
+        return cache.size();
+    }
+    
+    public static void clear() {
+        cache.invalidateAll();
+    }
+    
+    /**
+     * @return the maximum size set with {@link #MAX_SIZE_PROPERTY}, or {@link #DEFAULT_MAX_SIZE}
+     */
+    static long configuredMaximumSize() {
+        return Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE);
+    }
+    
+    private static Cache<ByteSequence,ColumnVisibility> createCache(long maxSize) {
+        return CacheBuilder.newBuilder().maximumSize(maxSize).concurrencyLevel(CONCURRENCY_LEVEL).recordStats().build();
+    }
 }
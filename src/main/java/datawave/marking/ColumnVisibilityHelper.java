@@ -1,123 +1,156 @@
 package datawave.marking;
 
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.accumulo.core.security.ColumnVisibility.Node;
 import org.apache.accumulo.core.security.ColumnVisibility.NodeType;
-import org.apache.accumulo.core.security.VisibilityEvaluator;
-import org.apache.accumulo.core.security.VisibilityParseException;
 import org.apache.log4j.Logger;
 
-import datawave.marking.MarkingFunctions.Exception;
+import datawave.marking.VisibilitySimplificationCache.Operation;
 
 public class ColumnVisibilityHelper {
     
     protected static final Charset charset = Charset.forName("UTF-8");
     private static Logger log = Logger.getLogger(ColumnVisibilityHelper.class);
     
+    /**
+     * Remove the branches of a top level OR that are not satisfied by all of the authorizations. Results are memoized in the
+     * {@link VisibilitySimplificationCache}.
+     *
+     * @param columnVisibility
+     *            the visibility to simplify
+     * @param authorizations
+     *            the authorizations sets, or null to only flatten a top level OR
+     * @return the simplified visibility
+     * @throws MarkingFunctions.Exception
+     *             if the visibility cannot be simplified
+     */
     public static ColumnVisibility simplifyColumnVisibilityForAuthorizations(ColumnVisibility columnVisibility, Collection<Authorizations> authorizations)
                     throws MarkingFunctions.Exception {
-        
-        ColumnVisibility simplifiedCV = columnVisibility;
-        
-        Node node = columnVisibility.getParseTree();
-        if (node.getType() == NodeType.OR) {
-            if (log.isTraceEnabled()) {
-                log.trace("Top level OR Node, removing unsatisfied branches from: " + columnVisibility);
-            }
-            byte[] expression = columnVisibility.getExpression();
-            if (authorizations != null) {
-                HashSet<VisibilityEvaluator> ve = new HashSet<>();
-                for (Authorizations a : authorizations)
-                    ve.add(new VisibilityEvaluator(a));
-                removeUnsatisfiedTopLevelOrNodes(ve, expression, node);
-            }
-            
-            simplifiedCV = ColumnVisibilityHelper.flatten(node, expression);
-            if (log.isTraceEnabled()) {
-                log.trace("removed unsatisfied branches, visibility now: " + simplifiedCV);
-            }
+        if (columnVisibility.getParseTree().getType() != NodeType.OR) {
+            return columnVisibility;
         }
-        return simplifiedCV;
+        AuthorizationsEvaluator evaluator = (authorizations == null) ? null : AuthorizationsEvaluator.forAuthorizations(asList(authorizations));
+        Object fingerprint = (evaluator == null) ? VisibilitySimplificationCache.NO_AUTHORIZATIONS : evaluator.getFingerprint();
+        return VisibilitySimplificationCache.get(Operation.SIMPLIFY_FOR_AUTHORIZATIONS, columnVisibility, fingerprint,
+                        () -> removeUnsatisfiedTopLevelOrNodes(columnVisibility, evaluator));
+    }
+    
+    private static List<Authorizations> asList(Collection<Authorizations> authorizations) {
+        // evaluators are cached by list, so pass a list in to look one up without copying
+        return (authorizations instanceof List) ? (List<Authorizations>) authorizations : new ArrayList<>(authorizations);
     }
     
+    /**
+     * Remove the terms that should not be displayed from a visibility. Results are memoized in the {@link VisibilitySimplificationCache}.
+     *
+     * @param columnVisibility
+     *            the visibility
+     * @param undisplayedVisibilities
+     *            the terms to remove
+     * @return the visibility without the undisplayed terms
+     * @throws MarkingFunctions.Exception
+     *             if the visibility cannot be simplified
+     */
     public static ColumnVisibility removeUndisplayedVisibilities(ColumnVisibility columnVisibility, Set<String> undisplayedVisibilities)
                     throws MarkingFunctions.Exception {
-        ColumnVisibility newColumnVisibility = columnVisibility;
-        if (undisplayedVisibilities != null && !undisplayedVisibilities.isEmpty()) {
-            byte[] expression = columnVisibility.getExpression();
-            Node node = columnVisibility.getParseTree();
-            removeUndisplayedVisibilities(node, expression, undisplayedVisibilities);
-            newColumnVisibility = flatten(node, expression);
+        if (undisplayedVisibilities == null || undisplayedVisibilities.isEmpty()) {
+            return columnVisibility;
         }
-        return newColumnVisibility;
+        TermSet fingerprint = VisibilitySimplificationCache.fingerprint(undisplayedVisibilities);
+        return VisibilitySimplificationCache.get(Operation.REMOVE_UNDISPLAYED, columnVisibility, fingerprint, () -> {
+            byte[] expression = columnVisibility.getExpression();
+            Node node = copy(columnVisibility.getParseTree());
+            removeUndisplayedVisibilities(node, expression, fingerprint);
+            return flatten(node, expression);
+        });
     }
     
-    private static void removeUnsatisfiedTopLevelOrNodes(Set<VisibilityEvaluator> ve, byte[] expression, Node node) throws Exception {
-        if (node.getType() == NodeType.OR) {
-            List<Node> children = node.getChildren();
-            int lastNode = children.size() - 1;
-            for (int x = lastNode; x >= 0; x--) {
-                Node currNode = children.get(x);
-                boolean remove = isUnsatisfied(x, ve, currNode, expression);
-                if (remove == true) {
-                    children.remove(x);
-                }
-            }
-        }
+    /**
+     * Combine visibilities into the flattened AND of all of them. This produces the same visibility as joining the flattened expressions with {@code &} and
+     * flattening the result, without building intermediate Strings or parsing the combined expression (see {@link VisibilityCombiner}).
+     *
+     * @param columnVisibilities
+     *            the visibilities to combine
+     * @return the combined visibility
+     */
+    public static ColumnVisibility combine(Collection<ColumnVisibility> columnVisibilities) {
+        return new VisibilityCombiner().addAll(columnVisibilities).getCombined();
     }
     
-    private static boolean isUnsatisfied(int position, Set<VisibilityEvaluator> ve, Node currNode, byte[] expression) throws Exception {
-        boolean unsatisfied = false;
-        try {
-            ColumnVisibility currVis = ColumnVisibilityHelper.flatten(currNode, expression);
-            for (VisibilityEvaluator v : ve) {
-                if (!v.evaluate(currVis))
-                    unsatisfied = true;
+    private static ColumnVisibility removeUnsatisfiedTopLevelOrNodes(ColumnVisibility columnVisibility, AuthorizationsEvaluator evaluator) {
+        if (log.isTraceEnabled()) {
+            log.trace("Top level OR Node, removing unsatisfied branches from: " + columnVisibility);
+        }
+        byte[] expression = columnVisibility.getExpression();
+        // build a new tree rather than modifying the parse tree of the (possibly shared) visibility we were given
+        Node node = columnVisibility.getParseTree();
+        Node simplified = new Node(NodeType.OR, node.getTermStart());
+        for (Node child : node.getChildren()) {
+            if (evaluator == null || evaluator.evaluate(child, expression)) {
+                simplified.add(copy(child));
             }
-        } catch (VisibilityParseException e) {
-            throw new MarkingFunctions.Exception(e);
         }
-        return unsatisfied;
-    }
-    
-    private static String termNodeToString(Node termNode, byte[] expression) throws Exception {
-        int start = termNode.getTermStart();
-        int end = termNode.getTermEnd();
         
-        String str = "[ERROR]";
-        try {
-            str = new String(expression, start, end - start, charset);
-        } catch (RuntimeException e) {
-            log.error("Error converting term: start:" + start + " length:" + (end - start) + "of expression:" + expression + " -- " + e.getMessage());
-            throw new MarkingFunctions.Exception(e);
+        ColumnVisibility simplifiedCV = ColumnVisibilityHelper.flatten(simplified, expression);
+        if (log.isTraceEnabled()) {
+            log.trace("removed unsatisfied branches, visibility now: " + simplifiedCV);
         }
-        return str;
+        return simplifiedCV;
     }
     
+    /**
+     * Flatten a visibility without modifying its parse tree. {@link ColumnVisibility#flatten()} normalizes the parse tree of the visibility in place, which is
+     * not safe for visibilities that are shared between threads such as those from the {@link ColumnVisibilityCache}.
+     *
+     * @param vis
+     *            the visibility to flatten
+     * @return the flattened expression
+     */
+    public static byte[] flattenToBytes(ColumnVisibility vis) {
+        byte[] expression = vis.getExpression();
+        Node node = ColumnVisibility.normalize(copy(vis.getParseTree()), expression);
+        return ExpressionBuffer.get().append(node, expression).toArray();
+    }
+    
+    /**
+     * Normalize the node and write it straight to bytes. The result is the canonical visibility from the {@link VisibilityInterner}. Note that normalizing
+     * modifies {@code node}.
+     */
     private static ColumnVisibility flatten(Node node, byte[] expression) {
-        
         Node newNode = ColumnVisibility.normalize(node, expression);
-        StringBuilder sb = new StringBuilder();
-        ColumnVisibility.stringify(newNode, expression, sb);
-        return new ColumnVisibility(sb.toString());
+        byte[] flattened = ExpressionBuffer.get().append(newNode, expression).toArray();
+        return VisibilityInterner.parse(flattened);
+    }
+    
+    private static Node copy(Node node) {
+        if (node.getType() == NodeType.TERM) {
+            return new Node(node.getTermStart(), node.getTermEnd());
+        }
+        Node copy = new Node(node.getType(), node.getTermStart());
+        for (Node child : node.getChildren()) {
+            copy.add(copy(child));
+        }
+        return copy;
     }
     
-    private static void removeUndisplayedVisibilities(Node node, byte[] expression, Set<String> undisplayedVisibilities) throws MarkingFunctions.Exception {
+    private static void removeUndisplayedVisibilities(Node node, byte[] expression, TermSet undisplayedVisibilities) {
         List<Node> children = node.getChildren();
         // walk backwards so we don't change the index that we need to remove
         int lastNode = children.size() - 1;
         for (int x = lastNode; x >= 0; x--) {
             Node currNode = children.get(x);
             if (currNode.getType() == NodeType.TERM) {
-                String nodeString = termNodeToString(currNode, expression);
-                if (undisplayedVisibilities.contains(nodeString)) {
+                ByteSequence term = new ArrayByteSequence(expression, currNode.getTermStart(), currNode.getTermEnd() - currNode.getTermStart());
+                if (undisplayedVisibilities.contains(term)) {
                     children.remove(x);
                 }
             } else {
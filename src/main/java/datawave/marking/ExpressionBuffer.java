@@ -0,0 +1,102 @@
+package datawave.marking;
+
+import java.util.Arrays;
+
+import org.apache.accumulo.core.security.ColumnVisibility.Node;
+import org.apache.accumulo.core.security.ColumnVisibility.NodeType;
+
+/**
+ * A reusable, growable byte buffer used to write visibility expressions directly as bytes, avoiding the String round trip of
+ * {@link org.apache.accumulo.core.security.ColumnVisibility#stringify}. Instances are not thread safe; use {@link #get()} to obtain a reset buffer that is
+ * local to the calling thread.
+ */
+class ExpressionBuffer {
+    private static final int INITIAL_CAPACITY = 256;
+    // don't let one huge expression pin a large buffer to the thread forever
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    
+    private static final ThreadLocal<ExpressionBuffer> buffers = ThreadLocal.withInitial(ExpressionBuffer::new);
+    
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int length = 0;
+    
+    /**
+     * @return an empty buffer local to the calling thread
+     */
+    static ExpressionBuffer get() {
+        ExpressionBuffer buffer = buffers.get();
+        buffer.reset();
+        return buffer;
+    }
+    
+    void reset() {
+        if (bytes.length > MAX_RETAINED_CAPACITY) {
+            bytes = new byte[INITIAL_CAPACITY];
+        }
+        length = 0;
+    }
+    
+    int length() {
+        return length;
+    }
+    
+    ExpressionBuffer append(byte b) {
+        ensureCapacity(length + 1);
+        bytes[length++] = b;
+        return this;
+    }
+    
+    ExpressionBuffer append(byte[] src, int offset, int len) {
+        ensureCapacity(length + len);
+        System.arraycopy(src, offset, bytes, length, len);
+        length += len;
+        return this;
+    }
+    
+    /**
+     * Write the expression for a node. This produces the same bytes as {@link org.apache.accumulo.core.security.ColumnVisibility#stringify}, so writing a
+     * normalized node produces the flattened form of the expression.
+     *
+     * @param node
+     *            the node to write
+     * @param expression
+     *            the expression that {@code node} was parsed from
+     * @return this buffer
+     */
+    ExpressionBuffer append(Node node, byte[] expression) {
+        if (node.getType() == NodeType.TERM) {
+            append(expression, node.getTermStart(), node.getTermEnd() - node.getTermStart());
+        } else {
+            byte sep = node.getType() == NodeType.AND ? (byte) '&' : (byte) '|';
+            boolean first = true;
+            for (Node child : node.getChildren()) {
+                if (!first) {
+                    append(sep);
+                }
+                first = false;
+                boolean parens = (child.getType() != NodeType.TERM && node.getType() != child.getType());
+                if (parens) {
+                    append((byte) '(');
+                }
+                append(child, expression);
+                if (parens) {
+                    append((byte) ')');
+                }
+            }
+        }
+        return this;
+    }
+    
+    /**
+     * @return a copy of the bytes written to this buffer
+     */
+    byte[] toArray() {
+        return Arrays.copyOf(bytes, length);
+    }
+    
+    private void ensureCapacity(int capacity) {
+        if (capacity > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(capacity, bytes.length * 2));
+        }
+    }
+}
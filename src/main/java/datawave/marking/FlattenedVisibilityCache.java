@@ -1,19 +1,43 @@
 package datawave.marking;
 
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.security.ColumnVisibility;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
 /**
- * This is a cache that can be used per process to save flattened visibility calculations.
+ * This is a cache that can be used per process to save flattened visibility calculations. The cache is bounded by the estimated number of bytes held by the
+ * cached visibilities and their flattened forms (or, alternatively, by the number of entries) and may optionally evict entries that have not been accessed
+ * for some time.
  *
  */
 public class FlattenedVisibilityCache {
-    private static Map<ColumnVisibility,byte[]> flattenedVisCache = Collections.synchronizedMap(new HashMap<>());
+    /**
+     * System property that can be used to override the default maximum estimated bytes held by the cache
+     */
+    public static final String MAX_WEIGHT_PROPERTY = "datawave.marking.flattenedVisibilityCache.maxWeight";
+    /**
+     * System property that can be used to bound the cache by number of entries instead of by estimated bytes
+     */
+    public static final String MAX_SIZE_PROPERTY = "datawave.marking.flattenedVisibilityCache.maxSize";
+    /**
+     * System property that can be used to set the number of milliseconds after which an entry that has not been accessed is evicted
+     */
+    public static final String EXPIRE_AFTER_ACCESS_PROPERTY = "datawave.marking.flattenedVisibilityCache.expireAfterAccessMs";
+    
+    public static final long DEFAULT_MAX_WEIGHT = 64L * 1024L * 1024L;
+    
+    // rough per entry overhead of the cache entry, the ColumnVisibility, its parse tree and the two arrays
+    private static final int ENTRY_OVERHEAD = 160;
+    private static final int CONCURRENCY_LEVEL = Math.max(4, Runtime.getRuntime().availableProcessors());
+    
+    private static volatile Cache<ColumnVisibility,byte[]> flattenedVisCache = createCache(Long.getLong(MAX_SIZE_PROPERTY, 0L),
+                    Long.getLong(MAX_WEIGHT_PROPERTY, DEFAULT_MAX_WEIGHT), Long.getLong(EXPIRE_AFTER_ACCESS_PROPERTY, 0L));
     
     /**
      * Create a flattened visibility, using the cache if possible
@@ -23,10 +47,11 @@ public class FlattenedVisibilityCache {
      * @return the flattened visibility
      */
     public static byte[] flatten(ColumnVisibility vis) {
-        byte[] visBytes = flattenedVisCache.get(vis);
+        Cache<ColumnVisibility,byte[]> current = flattenedVisCache;
+        byte[] visBytes = current.getIfPresent(vis);
         if (visBytes == null) {
-            visBytes = vis.flatten();
-            flattenedVisCache.put(vis, visBytes);
+            visBytes = ColumnVisibilityHelper.flattenToBytes(vis);
+            current.put(vis, visBytes);
         }
         return visBytes;
     }
@@ -38,4 +63,67 @@ public class FlattenedVisibilityCache {
     public static boolean equals(ColumnVisibility left, ColumnVisibility right) {
         return Arrays.equals(flatten(left), flatten(right));
     }
+    
+    /**
+     * Replace the cache with an empty one using the specified eviction settings. If {@code maxSize} is positive then the cache is bounded by number of
+     * entries, otherwise it is bounded by {@code maxWeight} estimated bytes.
+     *
+     * @param maxSize
+     *            the maximum number of entries, or a non-positive value to bound by weight instead
+     * @param maxWeight
+     *            the maximum estimated number of bytes held by the cache, or a non-positive value for an unbounded cache if {@code maxSize} is not set
+     * @param expireAfterAccess
+     *            the idle time after which an entry is evicted, or a non-positive value to never expire entries
+     * @param unit
+     *            the unit of {@code expireAfterAccess}
+     */
+    public static void configure(long maxSize, long maxWeight, long expireAfterAccess, TimeUnit unit) {
+        flattenedVisCache = createCache(maxSize, maxWeight, unit.toMillis(expireAfterAccess));
+    }
+    
+    /**
+     * @return the hit, miss and eviction counts for the cache
+     */
+    public static CacheStats getStats() {
+        return flattenedVisCache.stats();
+    }
+    
+    /**
+     * @return the approximate number of visibilities currently cached
+     */
+    public static long size() {
+        return flattenedVisCache.size();
+    }
+    
+    public static void clear() {
+        flattenedVisCache.invalidateAll();
+    }
+    
+    /**
+     * Estimate the number of bytes held by a cache entry
+     *
+     * @param vis
+     *            the cached visibility
+     * @param flattened
+     *            the flattened form of {@code vis}
+     * @return the estimated number of bytes
+     */
+    static int weigh(ColumnVisibility vis, byte[] flattened) {
+        // the expression is held once by the visibility itself and roughly once more by the term nodes of its parse tree
+        return ENTRY_OVERHEAD + (2 * vis.getExpression().length) + flattened.length;
+    }
+    
+    private static Cache<ColumnVisibility,byte[]> createCache(long maxSize, long maxWeight, long expireAfterAccessMs) {
+        CacheBuilder<Object,Object> builder = CacheBuilder.newBuilder().concurrencyLevel(CONCURRENCY_LEVEL).recordStats();
+        if (expireAfterAccessMs > 0) {
+            builder.expireAfterAccess(expireAfterAccessMs, TimeUnit.MILLISECONDS);
+        }
+        if (maxSize > 0) {
+            return builder.maximumSize(maxSize).build();
+        } else if (maxWeight > 0) {
+            return builder.maximumWeight(maxWeight).<ColumnVisibility,byte[]> weigher(FlattenedVisibilityCache::weigh).build();
+        } else {
+            return builder.build();
+        }
+    }
 }
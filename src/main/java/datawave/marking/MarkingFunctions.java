@@ -2,23 +2,33 @@ package datawave.marking;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 
+import org.apache.accumulo.core.data.ArrayByteSequence;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.commons.beanutils.BeanUtils;
+import org.apache.hadoop.io.WritableUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.google.common.base.Charsets;
 import com.google.common.collect.Maps;
 
@@ -33,6 +43,40 @@ public interface MarkingFunctions {
     
     ColumnVisibility combine(Collection<ColumnVisibility> columnVisibilities) throws MarkingFunctions.Exception;
     
+    /**
+     * Combine many groups of visibilities at once, for example one group per aggregated event or document
+     *
+     * @param visibilityGroups
+     *            the groups of visibilities to combine
+     * @return the combined visibility of each group, in the iteration order of {@code visibilityGroups}
+     * @throws MarkingFunctions.Exception
+     *             if a group cannot be combined
+     */
+    default List<ColumnVisibility> combineAll(Collection<? extends Collection<ColumnVisibility>> visibilityGroups) throws MarkingFunctions.Exception {
+        return combineAll(visibilityGroups, false);
+    }
+    
+    /**
+     * Combine many groups of visibilities at once, optionally combining the groups in parallel. Implementations that do not support parallel combining may
+     * ignore {@code parallel}.
+     *
+     * @param visibilityGroups
+     *            the groups of visibilities to combine
+     * @param parallel
+     *            whether the groups may be combined in parallel, which is only worthwhile for very large batches
+     * @return the combined visibility of each group, in the iteration order of {@code visibilityGroups}
+     * @throws MarkingFunctions.Exception
+     *             if a group cannot be combined
+     */
+    default List<ColumnVisibility> combineAll(Collection<? extends Collection<ColumnVisibility>> visibilityGroups, boolean parallel)
+                    throws MarkingFunctions.Exception {
+        List<ColumnVisibility> combined = new ArrayList<>(visibilityGroups.size());
+        for (Collection<ColumnVisibility> group : visibilityGroups) {
+            combined.add(combine(group));
+        }
+        return combined;
+    }
+    
     @SuppressWarnings("unchecked")
     Map<String,String> combine(Map<String,String>... markings) throws MarkingFunctions.Exception;
     
@@ -78,10 +122,25 @@ public interface MarkingFunctions {
         @Override
         public ColumnVisibility combine(Collection<ColumnVisibility> expressions) {
             
-            // filter out any empty expressions, then flatten each one (to de-dupe) and concatenate with '&'
-            // flatten the final combined ColumnVisibility and use that to make the ColumnVisibility to return
-            return new ColumnVisibility(new ColumnVisibility(expressions.stream().map(ColumnVisibility::flatten).filter(b -> b.length > 0)
-                            .map(b -> "(" + new String(b, UTF_8) + ")").collect(Collectors.joining("&")).getBytes(UTF_8)).flatten());
+            // flatten each expression (to de-dupe), skipping empty ones, and AND together the clauses of the flattened expressions
+            return ColumnVisibilityHelper.combine(expressions);
+        }
+        
+        /**
+         * {@inheritDoc}
+         * <p>
+         * When {@code parallel} is set the groups are combined on the common fork/join pool.
+         */
+        @Override
+        public List<ColumnVisibility> combineAll(Collection<? extends Collection<ColumnVisibility>> visibilityGroups, boolean parallel) {
+            if (parallel) {
+                return visibilityGroups.parallelStream().map(ColumnVisibilityHelper::combine).collect(Collectors.toList());
+            }
+            List<ColumnVisibility> combined = new ArrayList<>(visibilityGroups.size());
+            for (Collection<ColumnVisibility> group : visibilityGroups) {
+                combined.add(ColumnVisibilityHelper.combine(group));
+            }
+            return combined;
         }
         
         @Override
@@ -95,8 +154,8 @@ public interface MarkingFunctions {
         
         @Override
         public ColumnVisibility translateToColumnVisibility(Map<String,String> markings) {
-            ColumnVisibility cv = new ColumnVisibility(markings.get(COLUMN_VISIBILITY));
-            return new ColumnVisibility(cv.flatten());
+            byte[] flattened = FlattenedVisibilityCache.flatten(new ArrayByteSequence(markings.get(COLUMN_VISIBILITY).getBytes(UTF_8)));
+            return VisibilityInterner.parse(flattened);
         }
         
         @Override
@@ -138,6 +197,13 @@ public interface MarkingFunctions {
     class Encoding {
         static private Logger log = LoggerFactory.getLogger(Encoding.class);
         
+        // ObjectReader and ObjectWriter are immutable and thread safe, unlike configuring an ObjectMapper, so they can be shared by all callers
+        private static final ObjectMapper objectMapper = new ObjectMapper();
+        private static final ObjectWriter writer = objectMapper.writer();
+        private static final ObjectReader reader = objectMapper.readerFor(Map.class);
+        
+        private static final int NULL_LENGTH = -1;
+        
         /**
          * Turn a set of markings into a serializable string
          * 
@@ -146,9 +212,8 @@ public interface MarkingFunctions {
          * @return a serialized String version of {@code markings}
          */
         public static String toString(Map<String,String> markings) {
-            ObjectMapper objectMapper = new ObjectMapper();
             try {
-                return objectMapper.writeValueAsString(markings);
+                return writer.writeValueAsString(markings);
             } catch (JsonProcessingException e) {
                 log.error("could not serialize " + markings);
                 return "";
@@ -163,15 +228,81 @@ public interface MarkingFunctions {
          * @return a {@link Map} of the de-serialized markings from {@code encodedMarkings}
          */
         public static Map<String,String> fromString(String encodedMarkings) {
-            ObjectMapper objectMapper = new ObjectMapper();
             try {
-                // noinspection unchecked
-                return objectMapper.readValue(encodedMarkings, Map.class);
+                return reader.readValue(encodedMarkings);
             } catch (IOException e) {
                 log.error("could not deserialize " + encodedMarkings);
                 return Collections.emptyMap();
             }
         }
+        
+        /**
+         * Turn a set of markings into a compact binary form for internal transport. The encoding is the number of entries followed by each key and value as a
+         * length prefixed UTF-8 string, with all numbers written as variable length integers. Use {@link #fromBytes(byte[])} to decode it.
+         *
+         * @param markings
+         *            the markings map to encode
+         * @return the encoded markings
+         */
+        public static byte[] toBytes(Map<String,String> markings) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 * (markings.size() + 1));
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                WritableUtils.writeVInt(out, markings.size());
+                for (Map.Entry<String,String> entry : markings.entrySet()) {
+                    writeString(out, entry.getKey());
+                    writeString(out, entry.getValue());
+                }
+            } catch (IOException e) {
+                // not expected when writing to memory
+                throw new IllegalStateException("could not encode " + markings, e);
+            }
+            return bytes.toByteArray();
+        }
+        
+        /**
+         * Turn markings encoded by {@link #toBytes(Map)} back into a map
+         *
+         * @param encodedMarkings
+         *            the encoded markings
+         * @return a {@link Map} of the decoded markings from {@code encodedMarkings}, in their original order
+         */
+        public static Map<String,String> fromBytes(byte[] encodedMarkings) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(encodedMarkings));
+            try {
+                int size = WritableUtils.readVInt(in);
+                Map<String,String> markings = Maps.newLinkedHashMapWithExpectedSize(Math.min(size, encodedMarkings.length));
+                for (int i = 0; i < size; i++) {
+                    markings.put(readString(in, encodedMarkings), readString(in, encodedMarkings));
+                }
+                return markings;
+            } catch (IOException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                log.error("could not decode markings from " + encodedMarkings.length + " bytes");
+                return Collections.emptyMap();
+            }
+        }
+        
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            if (value == null) {
+                WritableUtils.writeVInt(out, NULL_LENGTH);
+            } else {
+                byte[] bytes = value.getBytes(UTF_8);
+                WritableUtils.writeVInt(out, bytes.length);
+                out.write(bytes);
+            }
+        }
+        
+        private static String readString(DataInputStream in, byte[] encodedMarkings) throws IOException {
+            int length = WritableUtils.readVInt(in);
+            if (length == NULL_LENGTH) {
+                return null;
+            }
+            // decode straight from the encoded array rather than copying into an intermediate buffer
+            int offset = encodedMarkings.length - in.available();
+            String value = new String(encodedMarkings, offset, length, UTF_8);
+            in.skipBytes(length);
+            return value;
+        }
     }
     
     /**
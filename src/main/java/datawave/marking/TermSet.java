@@ -0,0 +1,50 @@
+package datawave.marking;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * An immutable set of visibility terms (for example a set of undisplayed visibilities) that tests membership by the term bytes of a parsed expression, so
+ * that no String is created for each term that is tested. Two term sets are equal if they contain the same terms.
+ */
+public final class TermSet {
+    private final Set<String> terms;
+    private final Set<ByteSequence> termBytes = new HashSet<>();
+    
+    public TermSet(Set<String> terms) {
+        this.terms = ImmutableSet.copyOf(terms);
+        for (String term : this.terms) {
+            termBytes.add(new ArrayByteSequence(term.getBytes(UTF_8)));
+        }
+    }
+    
+    /**
+     * @param term
+     *            the term bytes, exactly as they appear in an expression
+     * @return true if the term is in this set
+     */
+    public boolean contains(ByteSequence term) {
+        return termBytes.contains(term);
+    }
+    
+    public Set<String> getTerms() {
+        return terms;
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        return this == o || (o instanceof TermSet && terms.equals(((TermSet) o).terms));
+    }
+    
+    @Override
+    public int hashCode() {
+        return terms.hashCode();
+    }
+}
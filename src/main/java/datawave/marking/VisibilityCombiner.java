@@ -0,0 +1,184 @@
+package datawave.marking;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.accumulo.core.security.ColumnVisibility.Node;
+import org.apache.accumulo.core.security.ColumnVisibility.NodeType;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * Combines visibilities one at a time into the flattened AND of all of them, producing the same result as {@link MarkingFunctions.Default#combine(Collection)}
+ * without first collecting the visibilities. The combiner keeps the de-duplicated top level AND clauses of the flattened inputs, ordered as
+ * {@link ColumnVisibility#normalize} would order them, so its memory is proportional to the number of distinct clauses rather than the number of inputs. Adding
+ * a visibility that has been seen before costs cache and set lookups, but no parsing.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class VisibilityCombiner {
+    private static final Comparator<Clause> CLAUSE_COMPARATOR = (a, b) -> compare(a.node, a.expression, b.node, b.expression);
+    
+    private final TreeSet<Clause> clauses = new TreeSet<>(CLAUSE_COMPARATOR);
+    // consecutive inputs very often carry the same visibility, so remember the last one to skip the lookups entirely
+    private byte[] lastExpression = null;
+    private ColumnVisibility combined = null;
+    
+    /**
+     * Add a visibility to the combination
+     *
+     * @param columnVisibility
+     *            the visibility
+     * @return this combiner
+     */
+    public VisibilityCombiner add(ColumnVisibility columnVisibility) {
+        byte[] expression = columnVisibility.getExpression();
+        if (Arrays.equals(expression, lastExpression)) {
+            return this;
+        }
+        lastExpression = expression;
+        
+        byte[] flattened = FlattenedVisibilityCache.flatten(columnVisibility);
+        if (flattened.length == 0) {
+            return this;
+        }
+        // most visibilities are already flattened, in which case there is no need to look up a parsed copy of the flattened form
+        ColumnVisibility flattenedCV = Arrays.equals(flattened, expression) ? columnVisibility : ColumnVisibilityCache.get(new ArrayByteSequence(flattened));
+        byte[] flattenedExpression = flattenedCV.getExpression();
+        Node node = flattenedCV.getParseTree();
+        if (node.getType() == NodeType.AND) {
+            for (Node child : node.getChildren()) {
+                addClause(child, flattenedExpression);
+            }
+        } else {
+            addClause(node, flattenedExpression);
+        }
+        return this;
+    }
+    
+    /**
+     * Add a visibility expression to the combination. The expression is parsed through the {@link ColumnVisibilityCache}.
+     *
+     * @param expression
+     *            the visibility expression
+     * @return this combiner
+     */
+    public VisibilityCombiner add(ByteSequence expression) {
+        if (lastExpression != null && new ArrayByteSequence(lastExpression).equals(expression)) {
+            return this;
+        }
+        return add(ColumnVisibilityCache.get(expression));
+    }
+    
+    /**
+     * Add visibilities to the combination
+     *
+     * @param columnVisibilities
+     *            the visibilities
+     * @return this combiner
+     */
+    public VisibilityCombiner addAll(Collection<ColumnVisibility> columnVisibilities) {
+        for (ColumnVisibility columnVisibility : columnVisibilities) {
+            add(columnVisibility);
+        }
+        return this;
+    }
+    
+    /**
+     * Get the combination of the visibilities added so far. The result is computed on demand and remembered until another clause is added.
+     *
+     * @return the combined, flattened visibility
+     */
+    public ColumnVisibility getCombined() {
+        if (combined == null) {
+            ExpressionBuffer buffer = ExpressionBuffer.get();
+            if (clauses.size() == 1) {
+                Clause clause = clauses.first();
+                buffer.append(clause.node, clause.expression);
+            } else {
+                for (Clause clause : clauses) {
+                    if (buffer.length() > 0) {
+                        buffer.append((byte) '&');
+                    }
+                    boolean parens = clause.node.getType() != NodeType.TERM;
+                    if (parens) {
+                        buffer.append((byte) '(');
+                    }
+                    buffer.append(clause.node, clause.expression);
+                    if (parens) {
+                        buffer.append((byte) ')');
+                    }
+                }
+            }
+            combined = VisibilityInterner.parse(buffer.toArray());
+        }
+        return combined;
+    }
+    
+    /**
+     * @return the number of distinct clauses in the combination
+     */
+    public int getClauseCount() {
+        return clauses.size();
+    }
+    
+    /**
+     * Discard everything added so far
+     */
+    public void reset() {
+        clauses.clear();
+        lastExpression = null;
+        combined = null;
+    }
+    
+    private void addClause(Node node, byte[] expression) {
+        if (clauses.add(new Clause(node, expression))) {
+            combined = null;
+        }
+    }
+    
+    /**
+     * Orders nodes from different expressions the same way that {@link org.apache.accumulo.core.security.ColumnVisibility.NodeComparator} orders nodes from a
+     * single expression.
+     */
+    private static int compare(Node a, byte[] aExpression, Node b, byte[] bExpression) {
+        int diff = a.getType().ordinal() - b.getType().ordinal();
+        if (diff != 0) {
+            return diff;
+        }
+        switch (a.getType()) {
+            case EMPTY:
+                return 0;
+            case TERM:
+                return WritableComparator.compareBytes(aExpression, a.getTermStart(), a.getTermEnd() - a.getTermStart(), bExpression, b.getTermStart(),
+                                b.getTermEnd() - b.getTermStart());
+            default:
+                List<Node> aChildren = a.getChildren();
+                List<Node> bChildren = b.getChildren();
+                diff = aChildren.size() - bChildren.size();
+                for (int i = 0; diff == 0 && i < aChildren.size(); i++) {
+                    diff = compare(aChildren.get(i), aExpression, bChildren.get(i), bExpression);
+                }
+                return diff;
+        }
+    }
+    
+    /**
+     * A top level AND clause of a flattened visibility, along with the expression it was parsed from. Clauses refer to the parse trees of flattened
+     * visibilities, which normalizing would not change.
+     */
+    private static class Clause {
+        private final Node node;
+        private final byte[] expression;
+        
+        Clause(Node node, byte[] expression) {
+            this.node = node;
+            this.expression = expression;
+        }
+    }
+}
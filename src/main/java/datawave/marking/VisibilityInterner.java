@@ -0,0 +1,63 @@
+package datawave.marking;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.security.ColumnVisibility;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Maps each distinct visibility expression to one canonical, parsed visibility, so that large result sets carrying many identical markings hold (and parse)
+ * one visibility for each expression rather than one per result. Canonical visibilities are weakly referenced and are released once nothing refers to them.
+ * <p>
+ * A canonical visibility is shared by every caller that gets it, so its parse tree must not be modified. {@link ColumnVisibility#flatten()} would normalize
+ * the parse tree in place, so canonical visibilities flatten a copy of their parse tree instead (see
+ * {@link ColumnVisibilityHelper#flattenToBytes(ColumnVisibility)}).
+ */
+public class VisibilityInterner {
+    private static final Cache<ByteSequence,ColumnVisibility> visibilities = CacheBuilder.newBuilder().weakValues()
+                    .concurrencyLevel(Math.max(4, Runtime.getRuntime().availableProcessors())).build();
+    
+    /**
+     * Get the canonical visibility for an expression, parsing it if needed
+     *
+     * @param expression
+     *            the visibility expression, which must not be modified afterwards
+     * @return the canonical visibility for {@code expression}
+     */
+    public static ColumnVisibility parse(byte[] expression) {
+        ByteSequence key = new ArrayByteSequence(expression);
+        ColumnVisibility canonical = visibilities.getIfPresent(key);
+        if (canonical == null) {
+            // the key wraps the expression of the visibility rather than a copy of it, which does not keep the weakly referenced visibility reachable
+            ColumnVisibility parsed = new CanonicalColumnVisibility(expression);
+            canonical = visibilities.asMap().putIfAbsent(key, parsed);
+            if (canonical == null) {
+                canonical = parsed;
+            }
+        }
+        return canonical;
+    }
+    
+    /**
+     * @return the approximate number of canonical visibilities
+     */
+    public static long size() {
+        return visibilities.size();
+    }
+    
+    /**
+     * A shared visibility that flattens without normalizing its own parse tree
+     */
+    private static class CanonicalColumnVisibility extends ColumnVisibility {
+        CanonicalColumnVisibility(byte[] expression) {
+            super(expression);
+        }
+        
+        @Override
+        public byte[] flatten() {
+            return ColumnVisibilityHelper.flattenToBytes(this);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package datawave.marking;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.apache.accumulo.core.security.ColumnVisibility;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * This is a cache that can be used per process to memoize the results of {@link ColumnVisibilityHelper#simplifyColumnVisibilityForAuthorizations} and
+ * {@link ColumnVisibilityHelper#removeUndisplayedVisibilities}. Results are keyed by the expression bytes of the visibility plus a canonical fingerprint of
+ * the authorizations (see {@link AuthorizationsEvaluator#getFingerprint()}) or of the set of undisplayed terms. Only the simplified expression is cached;
+ * callers are given its canonical visibility from the {@link VisibilityInterner}.
+ */
+public class VisibilitySimplificationCache {
+    /**
+     * System property that can be used to override the default maximum number of cached results
+     */
+    public static final String MAX_SIZE_PROPERTY = "datawave.marking.visibilitySimplificationCache.maxSize";
+    public static final long DEFAULT_MAX_SIZE = 10000;
+    
+    private static final int MAX_CACHED_UNDISPLAYED_SETS = 256;
+    private static final int CONCURRENCY_LEVEL = Math.max(4, Runtime.getRuntime().availableProcessors());
+    
+    /**
+     * Fingerprint used for a simplification without authorizations
+     */
+    static final Object NO_AUTHORIZATIONS = new Object();
+    
+    private static volatile Cache<SimplificationKey,byte[]> cache = createCache(Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+    
+    // canonical, immutable term sets for the undisplayed visibility sets that we have seen
+    private static final Cache<Set<String>,TermSet> undisplayedFingerprints = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_UNDISPLAYED_SETS)
+                    .concurrencyLevel(CONCURRENCY_LEVEL).build();
+    
+    /**
+     * The kinds of simplification that are memoized
+     */
+    enum Operation {
+        SIMPLIFY_FOR_AUTHORIZATIONS, REMOVE_UNDISPLAYED
+    }
+    
+    /**
+     * A computation of a simplified visibility
+     */
+    interface Simplification {
+        ColumnVisibility simplify() throws MarkingFunctions.Exception;
+    }
+    
+    /**
+     * Get a memoized result, computing and caching it if needed. The computation is done outside of any lock.
+     *
+     * @param operation
+     *            the kind of simplification
+     * @param columnVisibility
+     *            the visibility being simplified
+     * @param fingerprint
+     *            the canonical fingerprint of whatever the visibility is being simplified against
+     * @param simplification
+     *            the computation of the result
+     * @return the simplified visibility
+     * @throws MarkingFunctions.Exception
+     *             if the computation fails
+     */
+    static ColumnVisibility get(Operation operation, ColumnVisibility columnVisibility, Object fingerprint, Simplification simplification)
+                    throws MarkingFunctions.Exception {
+        Cache<SimplificationKey,byte[]> current = cache;
+        SimplificationKey key = new SimplificationKey(operation, columnVisibility.getExpression(), fingerprint);
+        byte[] expression = current.getIfPresent(key);
+        if (expression != null) {
+            return VisibilityInterner.parse(expression);
+        }
+        ColumnVisibility result = simplification.simplify();
+        current.put(key, result.getExpression());
+        return result;
+    }
+    
+    /**
+     * Get a canonical fingerprint for a set of undisplayed visibilities
+     *
+     * @param undisplayedVisibilities
+     *            the undisplayed visibilities
+     * @return an immutable term set equal to {@code undisplayedVisibilities}
+     */
+    static TermSet fingerprint(Set<String> undisplayedVisibilities) {
+        TermSet fingerprint = undisplayedFingerprints.getIfPresent(undisplayedVisibilities);
+        if (fingerprint == null) {
+            fingerprint = new TermSet(undisplayedVisibilities);
+            undisplayedFingerprints.put(fingerprint.getTerms(), fingerprint);
+        }
+        return fingerprint;
+    }
+    
+    /**
+     * Replace the cache with an empty one that holds at most {@code maxSize} results
+     *
+     * @param maxSize
+     *            the maximum number of results to cache
+     */
+    public static void setMaximumSize(long maxSize) {
+        cache = createCache(maxSize);
+    }
+    
+    /**
+     * @return the hit, miss and eviction counts for the cache
+     */
+    public static CacheStats getStats() {
+        return cache.stats();
+    }
+    
+    /**
+     * @return the approximate number of results currently cached
+     */
+    public static long size() {
+        return cache.size();
+    }
+    
+    public static void clear() {
+        cache.invalidateAll();
+    }
+    
+    private static Cache<SimplificationKey,byte[]> createCache(long maxSize) {
+        return CacheBuilder.newBuilder().maximumSize(maxSize).concurrencyLevel(CONCURRENCY_LEVEL).recordStats().build();
+    }
+    
+    private static class SimplificationKey {
+        private final Operation operation;
+        private final byte[] expression;
+        private final Object fingerprint;
+        private final int hashCode;
+        
+        SimplificationKey(Operation operation, byte[] expression, Object fingerprint) {
+            this.operation = operation;
+            this.expression = expression;
+            this.fingerprint = fingerprint;
+            this.hashCode = 31 * (31 * operation.ordinal() + Arrays.hashCode(expression)) + fingerprint.hashCode();
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SimplificationKey)) {
+                return false;
+            }
+            SimplificationKey other = (SimplificationKey) o;
+            return hashCode == other.hashCode && operation == other.operation && Arrays.equals(expression, other.expression)
+                            && fingerprint.equals(other.fingerprint);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -9,7 +9,6 @@ import org.apache.accumulo.core.iterators.IteratorEnvironment;
 import org.apache.accumulo.core.iterators.OptionDescriber;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 import org.apache.accumulo.core.iterators.WrappingIterator;
-import org.apache.accumulo.core.iteratorsImpl.system.VisibilityFilter;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.log4j.Logger;
 
@@ -32,12 +31,13 @@ public class ConfigurableVisibilityFilter extends WrappingIterator implements Op
     
     @Override
     public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
-        Authorizations auths = Authorizations.EMPTY;
-        if (options.containsKey(AUTHORIZATIONS_OPT))
-            auths = new Authorizations(options.get(AUTHORIZATIONS_OPT).split(","));
-        log.debug("Using authorizations: " + auths);
+        String auths = options.getOrDefault(AUTHORIZATIONS_OPT, "");
+        if (log.isDebugEnabled()) {
+            log.debug("Using authorizations: " + auths);
+        }
         
-        delegate = VisibilityFilter.wrap(source, auths, new byte[0]);
+        // verdicts are shared with every other filter for the same authorizations in this JVM, see VisibilityVerdictCache
+        delegate = new SharedVisibilityFilter(source, VisibilityVerdictCache.forAuthorizations(auths));
         super.init(delegate, options, env);
     }
     
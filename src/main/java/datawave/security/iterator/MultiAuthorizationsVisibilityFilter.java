@@ -0,0 +1,119 @@
+package datawave.security.iterator;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.Filter;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.log4j.Logger;
+
+import datawave.marking.AuthorizationsEvaluator;
+
+/**
+ * A visibility filter that tests each key against several authorizations sets in a single pass, keeping a key only if every set satisfies its visibility. This
+ * replaces a stack of {@link ConfigurableVisibilityFilter}s, one per set, each of which would parse and evaluate every visibility again. Each distinct
+ * visibility is parsed once and evaluated against all of the sets at once (see {@link AuthorizationsEvaluator}), and the verdict is remembered in the
+ * {@link VisibilityVerdictCache} shared by all filters for the same sets.
+ * <p>
+ * All of the sets are passed in the {@link #AUTHORIZATIONS_OPT} option, see {@link #encodeAuthorizations(Iterable)}.
+ */
+public class MultiAuthorizationsVisibilityFilter extends Filter {
+    public static final String AUTHORIZATIONS_OPT = "authorizations";
+    
+    // serialized authorizations only contain base64 characters, ',' and the ':' of their header
+    private static final String SET_SEPARATOR = ";";
+    
+    private static final Logger log = Logger.getLogger(MultiAuthorizationsVisibilityFilter.class);
+    
+    private VisibilityVerdictCache verdicts;
+    
+    @Override
+    public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
+        super.init(source, options, env);
+        List<Authorizations> authorizations = decodeAuthorizations(options.get(AUTHORIZATIONS_OPT));
+        if (log.isDebugEnabled()) {
+            log.debug("Using authorizations: " + authorizations);
+        }
+        
+        verdicts = VisibilityVerdictCache.forAuthorizations(authorizations);
+    }
+    
+    @Override
+    public SortedKeyValueIterator<Key,Value> deepCopy(IteratorEnvironment env) {
+        MultiAuthorizationsVisibilityFilter copy = (MultiAuthorizationsVisibilityFilter) super.deepCopy(env);
+        copy.verdicts = verdicts;
+        return copy;
+    }
+    
+    @Override
+    public boolean accept(Key k, Value v) {
+        return verdicts.accept(k.getColumnVisibilityData());
+    }
+    
+    @Override
+    public IteratorOptions describeOptions() {
+        IteratorOptions opts = super.describeOptions();
+        opts.setName(getClass().getSimpleName());
+        opts.setDescription("Filters keys to return only those whose visibility tests positive against every one of the supplied authorizations sets");
+        opts.addNamedOption(AUTHORIZATIONS_OPT, "Serialized authorizations sets separated by '" + SET_SEPARATOR + "'");
+        return opts;
+    }
+    
+    @Override
+    public boolean validateOptions(Map<String,String> options) {
+        boolean valid = false;
+        String auths = options.get(AUTHORIZATIONS_OPT);
+        if (auths != null && super.validateOptions(options)) {
+            try {
+                decodeAuthorizations(auths);
+                valid = true;
+            } catch (Exception e) {
+                // ignore
+            }
+        }
+        return valid;
+    }
+    
+    /**
+     * Encode authorizations sets for the {@link #AUTHORIZATIONS_OPT} option
+     *
+     * @param authorizations
+     *            the authorizations sets
+     * @return the option value
+     */
+    public static String encodeAuthorizations(Iterable<Authorizations> authorizations) {
+        StringBuilder encoded = new StringBuilder();
+        for (Authorizations auths : authorizations) {
+            if (encoded.length() > 0) {
+                encoded.append(SET_SEPARATOR);
+            }
+            encoded.append(auths.serialize());
+        }
+        return encoded.toString();
+    }
+    
+    /**
+     * Decode the authorizations sets from an {@link #AUTHORIZATIONS_OPT} option
+     *
+     * @param encoded
+     *            the option value
+     * @return the authorizations sets
+     */
+    public static List<Authorizations> decodeAuthorizations(String encoded) {
+        List<Authorizations> authorizations = new ArrayList<>();
+        if (encoded != null) {
+            for (String serialized : encoded.split(SET_SEPARATOR)) {
+                authorizations.add(new Authorizations(serialized.getBytes(UTF_8)));
+            }
+        }
+        return authorizations;
+    }
+}
@@ -0,0 +1,30 @@
+package datawave.security.iterator;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.Filter;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+
+/**
+ * A visibility filter that takes its verdicts from a {@link VisibilityVerdictCache}, so that it and all of its deep copies share them with every other filter
+ * for the same authorizations
+ */
+class SharedVisibilityFilter extends Filter {
+    private final VisibilityVerdictCache verdicts;
+    
+    SharedVisibilityFilter(SortedKeyValueIterator<Key,Value> source, VisibilityVerdictCache verdicts) {
+        setSource(source);
+        this.verdicts = verdicts;
+    }
+    
+    @Override
+    public SortedKeyValueIterator<Key,Value> deepCopy(IteratorEnvironment env) {
+        return new SharedVisibilityFilter(getSource().deepCopy(env), verdicts);
+    }
+    
+    @Override
+    public boolean accept(Key k, Value v) {
+        return verdicts.accept(k.getColumnVisibilityData());
+    }
+}
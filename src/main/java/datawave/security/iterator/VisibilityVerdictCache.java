@@ -0,0 +1,148 @@
+package datawave.security.iterator;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.log4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import datawave.marking.AuthorizationsEvaluator;
+
+/**
+ * A process wide cache of visibility verdicts, shared by every visibility filter instance (and deep copy) on a tablet server that filters for the same
+ * authorizations. Each canonical authorizations fingerprint (see {@link AuthorizationsEvaluator#getFingerprint()}) maps to one evaluator and one bounded,
+ * concurrent cache of verdicts, so the many short scan sessions of the same users do not each start with a cold cache.
+ */
+public class VisibilityVerdictCache {
+    /**
+     * System property that can be used to override the default maximum number of authorizations fingerprints with cached verdicts
+     */
+    public static final String MAX_AUTHORIZATIONS_PROPERTY = "datawave.security.visibilityVerdictCache.maxAuthorizations";
+    public static final long DEFAULT_MAX_AUTHORIZATIONS = 256;
+    /**
+     * System property that can be used to override the default maximum number of verdicts cached per authorizations fingerprint
+     */
+    public static final String MAX_VERDICTS_PROPERTY = "datawave.security.visibilityVerdictCache.maxVerdicts";
+    public static final long DEFAULT_MAX_VERDICTS = 10000;
+    
+    private static final Logger log = Logger.getLogger(VisibilityVerdictCache.class);
+    
+    private static final int CONCURRENCY_LEVEL = Math.max(4, Runtime.getRuntime().availableProcessors());
+    private static final long MAX_AUTHORIZATIONS = Long.getLong(MAX_AUTHORIZATIONS_PROPERTY, DEFAULT_MAX_AUTHORIZATIONS);
+    private static final long MAX_VERDICTS = Long.getLong(MAX_VERDICTS_PROPERTY, DEFAULT_MAX_VERDICTS);
+    
+    private static final Cache<Set<Authorizations>,VisibilityVerdictCache> byFingerprint = CacheBuilder.newBuilder().maximumSize(MAX_AUTHORIZATIONS)
+                    .concurrencyLevel(CONCURRENCY_LEVEL).build();
+    // lets filters configured with the same option string skip parsing it
+    private static final Cache<String,VisibilityVerdictCache> byOption = CacheBuilder.newBuilder().maximumSize(MAX_AUTHORIZATIONS)
+                    .concurrencyLevel(CONCURRENCY_LEVEL).build();
+    
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    
+    private final AuthorizationsEvaluator evaluator;
+    private final Cache<ByteSequence,Boolean> verdicts = CacheBuilder.newBuilder().maximumSize(MAX_VERDICTS).concurrencyLevel(CONCURRENCY_LEVEL).build();
+    
+    private VisibilityVerdictCache(AuthorizationsEvaluator evaluator) {
+        this.evaluator = evaluator;
+    }
+    
+    /**
+     * Get the shared verdicts for a single set of authorizations
+     *
+     * @param authorizationsOption
+     *            the comma delimited authorizations, as passed to {@link ConfigurableVisibilityFilter#AUTHORIZATIONS_OPT}
+     * @return the shared verdicts
+     */
+    public static VisibilityVerdictCache forAuthorizations(String authorizationsOption) {
+        VisibilityVerdictCache shared = byOption.getIfPresent(authorizationsOption);
+        if (shared == null) {
+            Authorizations auths = authorizationsOption.isEmpty() ? Authorizations.EMPTY : new Authorizations(authorizationsOption.split(","));
+            shared = forAuthorizations(Collections.singletonList(auths));
+            byOption.put(authorizationsOption, shared);
+        }
+        return shared;
+    }
+    
+    /**
+     * Get the shared verdicts for several sets of authorizations, all of which must satisfy a visibility for it to be accepted
+     *
+     * @param authorizations
+     *            the authorizations sets
+     * @return the shared verdicts
+     */
+    public static VisibilityVerdictCache forAuthorizations(List<Authorizations> authorizations) {
+        AuthorizationsEvaluator evaluator = AuthorizationsEvaluator.forAuthorizations(authorizations);
+        VisibilityVerdictCache shared = byFingerprint.getIfPresent(evaluator.getFingerprint());
+        if (shared == null) {
+            shared = byFingerprint.asMap().computeIfAbsent(evaluator.getFingerprint(), k -> new VisibilityVerdictCache(evaluator));
+        }
+        return shared;
+    }
+    
+    /**
+     * Determine whether a visibility is satisfied, using a cached verdict if there is one
+     *
+     * @param visibility
+     *            the visibility expression; an empty visibility is always accepted
+     * @return true if the visibility is satisfied by all of the authorizations sets
+     */
+    public boolean accept(ByteSequence visibility) {
+        if (visibility.length() == 0) {
+            return true;
+        }
+        Boolean verdict = verdicts.getIfPresent(visibility);
+        if (verdict == null) {
+            misses.increment();
+            try {
+                verdict = evaluator.evaluate(new ColumnVisibility(visibility.toArray()));
+            } catch (IllegalArgumentException e) {
+                log.error("Parse Error", e);
+                verdict = Boolean.FALSE;
+            }
+            // copy the key so that the shared cache does not hold on to the array of a scanned key
+            verdicts.put(new ArrayByteSequence(visibility.toArray()), verdict);
+        } else {
+            hits.increment();
+        }
+        return verdict;
+    }
+    
+    /**
+     * @return the approximate number of authorizations fingerprints with cached verdicts
+     */
+    public static long size() {
+        return byFingerprint.size();
+    }
+    
+    /**
+     * @return the approximate number of verdicts cached across all authorizations fingerprints
+     */
+    public static long verdictCount() {
+        return byFingerprint.asMap().values().stream().mapToLong(shared -> shared.verdicts.size()).sum();
+    }
+    
+    /**
+     * @return the fraction of verdict lookups that were answered from the cache, or 1.0 if there have been none
+     */
+    public static double hitRate() {
+        long hitCount = hits.sum();
+        long requestCount = hitCount + misses.sum();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+    
+    public static void clear() {
+        byOption.invalidateAll();
+        byFingerprint.invalidateAll();
+        hits.reset();
+        misses.reset();
+    }
+}
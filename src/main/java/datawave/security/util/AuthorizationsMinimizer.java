@@ -1,12 +1,16 @@
 package datawave.security.util;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.Map;
 
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.security.Authorizations;
 
 /**
@@ -44,26 +48,76 @@ public class AuthorizationsMinimizer {
      * @return a minimized set of Authorizations that allows visibility of exactly the same data as {@code authorizations}
      */
     public static Collection<Authorizations> minimize(Collection<Authorizations> authorizations) {
-        if (authorizations.size() > 1) {
-            // Convert collection of Authorizations into a collection of String sets (the individual authorizations).
-            // Since we are adding to a LinkedHashSet, this will de-dupe any duplicate authorization sets.
-            final LinkedHashSet<Set<String>> allAuths = authorizations.stream()
-                            .map(a -> a.getAuthorizations().stream().map(String::new).collect(Collectors.toCollection(HashSet::new)))
-                            .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (authorizations.size() > 1 && !(authorizations instanceof MinimizedAuthorizations)) {
+            // Map each authorization to a small integer and each set of authorizations to a bitset of those integers.
+            // Since we are adding to a LinkedHashMap keyed on the bitset, this will de-dupe any duplicate authorization sets.
+            Map<ByteSequence,Integer> dictionary = new HashMap<>();
+            LinkedHashMap<BitSet,Authorizations> distinct = new LinkedHashMap<>();
+            for (Authorizations auths : authorizations) {
+                BitSet bits = new BitSet();
+                for (byte[] auth : auths) {
+                    Integer id = dictionary.computeIfAbsent(new ArrayByteSequence(auth), k -> dictionary.size());
+                    bits.set(id);
+                }
+                distinct.putIfAbsent(bits, auths);
+            }
+            
+            // Visit the sets from smallest to largest, keeping each one that is not a superset of a set that has already been kept. A set can only be a
+            // superset of a smaller one, and the sets are distinct, so checking against the kept sets is enough.
+            long[][] sets = new long[distinct.size()][];
+            int[] cardinality = new int[distinct.size()];
+            Integer[] bySize = new Integer[distinct.size()];
+            int index = 0;
+            for (BitSet bits : distinct.keySet()) {
+                sets[index] = bits.toLongArray();
+                cardinality[index] = bits.cardinality();
+                bySize[index] = index;
+                index++;
+            }
+            Arrays.sort(bySize, Comparator.comparingInt(i -> cardinality[i]));
             
-            // Go through the authorizations sets and remove any that are supersets of any other.
-            for (Iterator<Set<String>> it = allAuths.iterator(); it.hasNext(); /* empty */) {
-                Set<String> currentSet = it.next();
-                if (allAuths.stream().filter(a -> a != currentSet && a.size() <= currentSet.size()).anyMatch(currentSet::containsAll))
-                    it.remove();
+            boolean[] keep = new boolean[sets.length];
+            int[] kept = new int[sets.length];
+            int numKept = 0;
+            for (int candidate : bySize) {
+                boolean superset = false;
+                for (int k = 0; k < numKept && !superset; k++) {
+                    superset = isSubset(sets[kept[k]], sets[candidate]);
+                }
+                if (!superset) {
+                    keep[candidate] = true;
+                    kept[numKept++] = candidate;
+                }
             }
             
-            // If we removed any sets of authorizations, then we need to convert the reduced set from
-            // TreeSet<String> objects back into Authorizations objects.
-            if (allAuths.size() < authorizations.size()) {
-                authorizations = allAuths.stream().map(a -> new Authorizations(a.toArray(new String[0]))).collect(Collectors.toCollection(LinkedHashSet::new));
+            // If we removed any sets of authorizations, then return the remaining ones in their original order.
+            if (numKept < authorizations.size()) {
+                LinkedHashSet<Authorizations> minimized = new LinkedHashSet<>();
+                index = 0;
+                for (Authorizations auths : distinct.values()) {
+                    if (keep[index++]) {
+                        minimized.add(auths);
+                    }
+                }
+                authorizations = minimized;
             }
         }
         return authorizations;
     }
+    
+    /**
+     * @return true if every bit set in {@code subset} is also set in {@code superset}
+     */
+    private static boolean isSubset(long[] subset, long[] superset) {
+        if (subset.length > superset.length) {
+            // BitSet.toLongArray drops trailing zero words, so subset has a bit beyond the last one in superset
+            return false;
+        }
+        for (int i = 0; i < subset.length; i++) {
+            if ((subset[i] & ~superset[i]) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,149 @@
+package datawave.security.util;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.security.Authorizations;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import datawave.security.iterator.MultiAuthorizationsVisibilityFilter;
+import datawave.webservice.common.connection.ScannerBaseDelegate;
+
+/**
+ * An immutable collection of authorizations that has already been minimized by {@link AuthorizationsMinimizer#minimize(Collection)}, along with the
+ * {@link MultiAuthorizationsVisibilityFilter} setting that scanners need for all but the first set. Instances are memoized per process, so that the many
+ * scanners a query creates for the same authorizations do not repeat the minimization or build their own filter settings.
+ * <p>
+ * The iterator settings are shared and must not be modified.
+ */
+public class MinimizedAuthorizations extends AbstractSet<Authorizations> {
+    /**
+     * System property that can be used to override the default maximum number of cached minimized collections
+     */
+    public static final String MAX_SIZE_PROPERTY = "datawave.security.minimizedAuthorizationsCache.maxSize";
+    public static final long DEFAULT_MAX_SIZE = 1024;
+    
+    static final int FILTER_PRIORITY = 10;
+    static final String FILTER_NAME = "visibilityFilter" + FILTER_PRIORITY;
+    
+    private static volatile Cache<List<Authorizations>,MinimizedAuthorizations> cache = createCache(Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE));
+    
+    private final ImmutableSet<Authorizations> authorizations;
+    private final List<IteratorSetting> visibilityFilters;
+    private final List<IteratorSetting> systemVisibilityFilters;
+    
+    private MinimizedAuthorizations(Collection<Authorizations> minimized) {
+        this.authorizations = ImmutableSet.copyOf(minimized);
+        if (authorizations.size() > 1) {
+            List<Authorizations> filtered = authorizations.asList().subList(1, authorizations.size());
+            this.visibilityFilters = ImmutableList.of(visibilityFilter(FILTER_NAME, filtered));
+            this.systemVisibilityFilters = ImmutableList.of(visibilityFilter(ScannerBaseDelegate.SYSTEM_ITERATOR_NAME_PREFIX + FILTER_NAME, filtered));
+        } else {
+            this.visibilityFilters = ImmutableList.of();
+            this.systemVisibilityFilters = ImmutableList.of();
+        }
+    }
+    
+    /**
+     * Get the minimized form of a collection of authorizations
+     *
+     * @param authorizations
+     *            the authorizations for each entity in the call chain, which must not be empty
+     * @return the minimized authorizations
+     */
+    public static MinimizedAuthorizations of(Collection<Authorizations> authorizations) {
+        if (authorizations instanceof MinimizedAuthorizations) {
+            return (MinimizedAuthorizations) authorizations;
+        }
+        if (authorizations == null || authorizations.isEmpty()) {
+            throw new IllegalArgumentException("Authorizations must not be empty.");
+        }
+        Cache<List<Authorizations>,MinimizedAuthorizations> current = cache;
+        // copy the key so that later changes to the caller's collection cannot affect the cache
+        List<Authorizations> key = ImmutableList.copyOf(authorizations);
+        MinimizedAuthorizations minimized = current.getIfPresent(key);
+        if (minimized == null) {
+            minimized = new MinimizedAuthorizations(AuthorizationsMinimizer.minimize(key));
+            current.put(key, minimized);
+        }
+        return minimized;
+    }
+    
+    /**
+     * @return the authorizations to create a scanner with, which is the first of the minimized sets
+     */
+    public Authorizations getScanAuthorizations() {
+        return authorizations.iterator().next();
+    }
+    
+    /**
+     * @return the setting for the {@link MultiAuthorizationsVisibilityFilter} that tests the remaining sets, named {@code visibilityFilter10}, or an empty
+     *         list if there is only one set
+     */
+    public List<IteratorSetting> getVisibilityFilters() {
+        return visibilityFilters;
+    }
+    
+    /**
+     * @return the same settings as {@link #getVisibilityFilters()}, with names that already carry the
+     *         {@link ScannerBaseDelegate#SYSTEM_ITERATOR_NAME_PREFIX system iterator prefix}
+     */
+    public List<IteratorSetting> getSystemVisibilityFilters() {
+        return systemVisibilityFilters;
+    }
+    
+    @Override
+    public Iterator<Authorizations> iterator() {
+        return authorizations.iterator();
+    }
+    
+    @Override
+    public int size() {
+        return authorizations.size();
+    }
+    
+    @Override
+    public boolean contains(Object o) {
+        return authorizations.contains(o);
+    }
+    
+    /**
+     * Replace the cache with an empty one that holds at most {@code maxSize} minimized collections
+     *
+     * @param maxSize
+     *            the maximum number of minimized collections to cache
+     */
+    public static void setMaximumCacheSize(long maxSize) {
+        cache = createCache(maxSize);
+    }
+    
+    /**
+     * @return the hit, miss and eviction counts for the cache
+     */
+    public static CacheStats getCacheStats() {
+        return cache.stats();
+    }
+    
+    public static void clearCache() {
+        cache.invalidateAll();
+    }
+    
+    static IteratorSetting visibilityFilter(String name, Collection<Authorizations> authorizations) {
+        IteratorSetting cfg = new IteratorSetting(FILTER_PRIORITY, name, MultiAuthorizationsVisibilityFilter.class);
+        cfg.addOption(MultiAuthorizationsVisibilityFilter.AUTHORIZATIONS_OPT, MultiAuthorizationsVisibilityFilter.encodeAuthorizations(authorizations));
+        return cfg;
+    }
+    
+    private static Cache<List<Authorizations>,MinimizedAuthorizations> createCache(long maxSize) {
+        return CacheBuilder.newBuilder().maximumSize(maxSize).concurrencyLevel(Math.max(4, Runtime.getRuntime().availableProcessors())).recordStats()
+                        .build();
+    }
+}
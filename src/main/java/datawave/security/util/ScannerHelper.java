@@ -2,6 +2,7 @@ package datawave.security.util;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.accumulo.core.client.AccumuloClient;
@@ -16,7 +17,8 @@ import org.apache.accumulo.core.security.Authorizations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import datawave.security.iterator.ConfigurableVisibilityFilter;
+import com.google.common.collect.Lists;
+
 import datawave.webservice.common.connection.ScannerBaseDelegate;
 
 public class ScannerHelper {
@@ -26,9 +28,9 @@ public class ScannerHelper {
         if (authorizations == null || authorizations.isEmpty())
             throw new IllegalArgumentException("Authorizations must not be empty.");
         
-        Iterator<Authorizations> iter = AuthorizationsMinimizer.minimize(authorizations).iterator();
-        Scanner scanner = connector.createScanner(tableName, iter.next());
-        addVisibilityFilters(iter, scanner);
+        MinimizedAuthorizations minimized = MinimizedAuthorizations.of(authorizations);
+        Scanner scanner = connector.createScanner(tableName, minimized.getScanAuthorizations());
+        addVisibilityFilters(minimized, scanner);
         return scanner;
     }
     
@@ -37,9 +39,9 @@ public class ScannerHelper {
         if (authorizations == null || authorizations.isEmpty())
             throw new IllegalArgumentException("Authorizations must not be empty.");
         
-        Iterator<Authorizations> iter = AuthorizationsMinimizer.minimize(authorizations).iterator();
-        BatchScanner batchScanner = connector.createBatchScanner(tableName, iter.next(), numQueryThreads);
-        addVisibilityFilters(iter, batchScanner);
+        MinimizedAuthorizations minimized = MinimizedAuthorizations.of(authorizations);
+        BatchScanner batchScanner = connector.createBatchScanner(tableName, minimized.getScanAuthorizations(), numQueryThreads);
+        addVisibilityFilters(minimized, batchScanner);
         return batchScanner;
     }
     
@@ -48,27 +50,54 @@ public class ScannerHelper {
         if (authorizations == null || authorizations.isEmpty())
             throw new IllegalArgumentException("Authorizations must not be empty.");
         
-        Iterator<Authorizations> iter = AuthorizationsMinimizer.minimize(authorizations).iterator();
+        MinimizedAuthorizations minimized = MinimizedAuthorizations.of(authorizations);
         BatchWriterConfig bwCfg = new BatchWriterConfig().setMaxLatency(maxLatency, TimeUnit.MILLISECONDS).setMaxMemory(maxMemory)
                         .setMaxWriteThreads(maxWriteThreads);
-        BatchDeleter batchDeleter = connector.createBatchDeleter(tableName, iter.next(), numQueryThreads, bwCfg);
-        addVisibilityFilters(iter, batchDeleter);
+        BatchDeleter batchDeleter = connector.createBatchDeleter(tableName, minimized.getScanAuthorizations(), numQueryThreads, bwCfg);
+        addVisibilityFilters(minimized, batchDeleter);
         return batchDeleter;
     }
     
+    /**
+     * Add the memoized visibility filter for all but the first of the minimized authorizations to a scanner
+     *
+     * @param minimized
+     *            the minimized authorizations
+     * @param scanner
+     *            the scanner, which should have been created with {@link MinimizedAuthorizations#getScanAuthorizations()}
+     */
+    protected static void addVisibilityFilters(MinimizedAuthorizations minimized, ScannerBase scanner) {
+        // Set the visibility filter as a "system" iterator, which means that normal modify, remove, clear operations performed
+        // on the scanner will not modify/remove/clear this iterator. This way, if a query logic attempts to reconfigure the
+        // scanner's iterators, then this iterator will remain intact.
+        if (scanner instanceof ScannerBaseDelegate) {
+            for (IteratorSetting cfg : minimized.getSystemVisibilityFilters()) {
+                ((ScannerBaseDelegate) scanner).addSystemScanIterator(cfg);
+            }
+        } else {
+            for (IteratorSetting cfg : minimized.getVisibilityFilters()) {
+                logger.warn("Adding system visibility filter to non-wrapped scanner {}.", scanner.getClass(), new Exception());
+                scanner.addScanIterator(cfg);
+            }
+        }
+    }
+    
+    /**
+     * Add a single {@link datawave.security.iterator.MultiAuthorizationsVisibilityFilter} that tests all of the remaining authorizations to a scanner
+     *
+     * @param iter
+     *            the authorizations that the scanner was not created with
+     * @param scanner
+     *            the scanner
+     */
     protected static void addVisibilityFilters(Iterator<Authorizations> iter, ScannerBase scanner) {
-        for (int priority = 10; iter.hasNext(); priority++) {
-            IteratorSetting cfg = new IteratorSetting(priority, ConfigurableVisibilityFilter.class);
-            cfg.setName("visibilityFilter" + priority);
-            cfg.addOption(ConfigurableVisibilityFilter.AUTHORIZATIONS_OPT, iter.next().toString());
-            // Set the visibility filter as a "system" iterator, which means that normal modify, remove, clear operations performed
-            // on the scanner will not modify/remove/clear this iterator. This way, if a query logic attempts to reconfigure the
-            // scanner's iterators, then this iterator will remain intact.
+        List<Authorizations> remaining = Lists.newArrayList(iter);
+        if (!remaining.isEmpty()) {
             if (scanner instanceof ScannerBaseDelegate) {
-                ((ScannerBaseDelegate) scanner).addSystemScanIterator(cfg);
+                ((ScannerBaseDelegate) scanner).addSystemScanIterator(MinimizedAuthorizations.visibilityFilter(MinimizedAuthorizations.FILTER_NAME, remaining));
             } else {
                 logger.warn("Adding system visibility filter to non-wrapped scanner {}.", scanner.getClass(), new Exception());
-                scanner.addScanIterator(cfg);
+                scanner.addScanIterator(MinimizedAuthorizations.visibilityFilter(MinimizedAuthorizations.FILTER_NAME, remaining));
             }
         }
     }
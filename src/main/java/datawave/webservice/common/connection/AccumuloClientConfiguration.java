@@ -1,20 +1,60 @@
 package datawave.webservice.common.connection;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
 
+import org.apache.accumulo.core.client.BatchWriterConfig;
 import org.apache.accumulo.core.client.ScannerBase;
 import org.apache.log4j.Logger;
 
 /**
  * This class will capture scanner hints per table and the consistency level per table. This will be used by the WrappedAccumuloClient to setup scanners as they
  * are created.
+ * <p>
+ * Hints and consistency levels are configured for table specifications, which are one of
+ * <ul>
+ * <li>a table name, e.g. {@code datawave.metadata}</li>
+ * <li>a prefix followed by {@code *}, e.g. {@code datawave.*} for all tables of a namespace or {@code *} for all tables</li>
+ * <li>a regular expression between slashes that matches the whole table name, e.g. {@code /.*Index/}</li>
+ * </ul>
+ * When several specifications match a table, prefixes apply first, shortest first, then regular expressions and then the table name, each overriding the
+ * hints and consistency level of the ones before. The configuration is compiled into an immutable snapshot that resolves each table once and is replaced
+ * whenever the configuration changes, so that {@link #apply(ScannerBase, String)} costs a single map lookup and never sees a partial change.
+ * <p>
+ * A configuration can also be read from properties, see {@link #fromProperties(Properties)}.
  */
 public class AccumuloClientConfiguration {
+    /**
+     * The prefix of the properties read by {@link #fromProperties(Properties)}
+     */
+    public static final String TABLE_PROPERTY_PREFIX = "table.";
+    public static final String HINT_PROPERTY_INFIX = ".hint.";
+    public static final String CONSISTENCY_PROPERTY_SUFFIX = ".consistency";
+    
     private Logger log = Logger.getLogger(AccumuloClientConfiguration.class);
-    private Map<String,Map<String,String>> hintsByTable = new HashMap<>();
-    private Map<String,ScannerBase.ConsistencyLevel> consistencyByTable = new HashMap<>();
+    // guarded by this, and kept in the order configured so that regular expressions apply in that order
+    private Map<String,Map<String,String>> hintsByTable = new LinkedHashMap<>();
+    private Map<String,ScannerBase.ConsistencyLevel> consistencyByTable = new LinkedHashMap<>();
+    // compiled from the maps above when first needed after a change
+    private volatile Snapshot snapshot = null;
+    private volatile AdaptiveScanTuning adaptiveScanTuning = null;
+    // learned while scanning, so updated concurrently
+    private final Map<String,AdaptiveScanTuning.Settings> scanSettingsByTable = new ConcurrentHashMap<>();
+    private volatile AdaptiveWriterTuning adaptiveWriterTuning = null;
+    // learned while writing, so updated concurrently
+    private final Map<String,AdaptiveWriterTuning.Settings> writerSettingsByTable = new ConcurrentHashMap<>();
     
     /**
      * Construct an empty configuration
@@ -48,6 +88,48 @@ public class AccumuloClientConfiguration {
         }
     }
     
+    /**
+     * Read a configuration from properties of the form
+     * 
+     * <pre>
+     * table.&lt;table specification&gt;.hint.&lt;hint name&gt;=&lt;hint value&gt;
+     * table.&lt;table specification&gt;.consistency=IMMEDIATE|EVENTUAL
+     * </pre>
+     * 
+     * Other properties are ignored, and regular expressions apply in the order of their property names.
+     * 
+     * @param properties
+     *            The properties
+     * @return The configuration
+     * @throws IllegalArgumentException
+     *             if a property is malformed
+     */
+    public static AccumuloClientConfiguration fromProperties(Properties properties) {
+        AccumuloClientConfiguration config = new AccumuloClientConfiguration();
+        for (String name : new TreeSet<>(properties.stringPropertyNames())) {
+            if (!name.startsWith(TABLE_PROPERTY_PREFIX)) {
+                continue;
+            }
+            String value = properties.getProperty(name).trim();
+            String rest = name.substring(TABLE_PROPERTY_PREFIX.length());
+            int hint = rest.lastIndexOf(HINT_PROPERTY_INFIX);
+            if (rest.endsWith(CONSISTENCY_PROPERTY_SUFFIX) && rest.length() > CONSISTENCY_PROPERTY_SUFFIX.length()) {
+                String table = rest.substring(0, rest.length() - CONSISTENCY_PROPERTY_SUFFIX.length());
+                try {
+                    config.setConsistency(table, ScannerBase.ConsistencyLevel.valueOf(value.toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Invalid property " + name + "=" + value, e);
+                }
+            } else if (hint > 0 && hint + HINT_PROPERTY_INFIX.length() < rest.length()) {
+                config.addHint(rest.substring(0, hint), rest.substring(hint + HINT_PROPERTY_INFIX.length()), value);
+            } else {
+                throw new IllegalArgumentException("Invalid property " + name + ", expected " + TABLE_PROPERTY_PREFIX + "<table>" + HINT_PROPERTY_INFIX
+                                + "<name> or " + TABLE_PROPERTY_PREFIX + "<table>" + CONSISTENCY_PROPERTY_SUFFIX);
+            }
+        }
+        return config;
+    }
+    
     /**
      * This will apply the configuration to a scanner
      * 
@@ -57,18 +139,40 @@ public class AccumuloClientConfiguration {
      *            The table name being scanned
      */
     public void apply(ScannerBase scanner, String tableName) {
-        if (hintsByTable.containsKey(tableName)) {
+        TableSettings settings = getTableSettings(tableName);
+        if (!settings.hints.isEmpty()) {
             try {
-                scanner.setExecutionHints(hintsByTable.get(tableName));
+                scanner.setExecutionHints(settings.hints);
             } catch (Exception e) {
                 log.warn("Failed to set execution hints for " + tableName, e);
             }
         }
-        if (consistencyByTable.containsKey(tableName)) {
-            scanner.setConsistencyLevel(consistencyByTable.get(tableName));
+        if (settings.consistency != null) {
+            scanner.setConsistencyLevel(settings.consistency);
         }
     }
     
+    /**
+     * Get the hints and consistency level of a table, from all of the table specifications that match it
+     * 
+     * @param tableName
+     *            The table name
+     * @return The settings for the table
+     */
+    public TableSettings getTableSettings(String tableName) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    current = new Snapshot(hintsByTable, consistencyByTable);
+                    snapshot = current;
+                }
+            }
+        }
+        return current.forTable(tableName);
+    }
+    
     /**
      * This will take a second configuration and overlay it on top of this one.
      * 
@@ -76,12 +180,124 @@ public class AccumuloClientConfiguration {
      *            The second configuration
      */
     public void applyOverrides(AccumuloClientConfiguration config) {
-        for (String table : config.hintsByTable.keySet()) {
-            putHints(table, config.hintsByTable.get(table));
+        Map<String,Map<String,String>> hints;
+        Map<String,ScannerBase.ConsistencyLevel> levels;
+        // copied first, so that the two configurations are never locked at once
+        synchronized (config) {
+            hints = new LinkedHashMap<>(config.hintsByTable);
+            levels = new LinkedHashMap<>(config.consistencyByTable);
         }
-        for (String table : config.consistencyByTable.keySet()) {
-            setConsistency(table, config.consistencyByTable.get(table));
+        synchronized (this) {
+            for (String table : hints.keySet()) {
+                putHints(table, hints.get(table));
+            }
+            for (String table : levels.keySet()) {
+                setConsistency(table, levels.get(table));
+            }
         }
+        if (config.adaptiveScanTuning != null) {
+            setAdaptiveScanTuning(config.adaptiveScanTuning);
+        }
+        scanSettingsByTable.putAll(config.scanSettingsByTable);
+        if (config.adaptiveWriterTuning != null) {
+            setAdaptiveWriterTuning(config.adaptiveWriterTuning);
+        }
+        writerSettingsByTable.putAll(config.writerSettingsByTable);
+    }
+    
+    /**
+     * Take over the settings learned by adaptive tuning from a configuration this one replaces, in place of any of its own
+     * 
+     * @param config
+     *            The configuration being replaced
+     */
+    public void inheritLearnedSettings(AccumuloClientConfiguration config) {
+        scanSettingsByTable.putAll(config.scanSettingsByTable);
+        writerSettingsByTable.putAll(config.writerSettingsByTable);
+    }
+    
+    /**
+     * Enable adaptive tuning of the batch size and readahead threshold of scanners, see {@link ScannerDelegate#enableAdaptiveTuning}
+     * 
+     * @param tuning
+     *            The bounds and rules for the tuning, or null to disable it
+     */
+    public void setAdaptiveScanTuning(AdaptiveScanTuning tuning) {
+        this.adaptiveScanTuning = tuning;
+    }
+    
+    public AdaptiveScanTuning getAdaptiveScanTuning() {
+        return adaptiveScanTuning;
+    }
+    
+    /**
+     * Get the settings for the next scan of a table
+     * 
+     * @param table
+     *            The table name
+     * @return The settings learned from earlier scans of the table, or the initial settings, or null if adaptive tuning is disabled
+     */
+    public AdaptiveScanTuning.Settings getScanSettings(String table) {
+        if (adaptiveScanTuning == null) {
+            return null;
+        }
+        AdaptiveScanTuning.Settings settings = scanSettingsByTable.get(table);
+        return settings == null ? adaptiveScanTuning.initial() : settings;
+    }
+    
+    /**
+     * Remember the settings learned from a scan of a table
+     * 
+     * @param table
+     *            The table name
+     * @param settings
+     *            The settings for the next scan of the table
+     */
+    public void putScanSettings(String table, AdaptiveScanTuning.Settings settings) {
+        scanSettingsByTable.put(table, settings);
+    }
+    
+    /**
+     * Enable adaptive tuning of the max memory and max latency of batch writers, see {@link AdaptiveWriterTuning}
+     * 
+     * @param tuning
+     *            The bounds and rules for the tuning, or null to disable it
+     */
+    public void setAdaptiveWriterTuning(AdaptiveWriterTuning tuning) {
+        this.adaptiveWriterTuning = tuning;
+    }
+    
+    public AdaptiveWriterTuning getAdaptiveWriterTuning() {
+        return adaptiveWriterTuning;
+    }
+    
+    /**
+     * Get the settings for the next batch writer on a table
+     * 
+     * @param table
+     *            The table name
+     * @param config
+     *            The configuration the writer was requested with
+     * @return The settings learned from earlier writers on the table, or the initial settings, or null if adaptive tuning is disabled
+     */
+    public AdaptiveWriterTuning.Settings getWriterSettings(String table, BatchWriterConfig config) {
+        if (adaptiveWriterTuning == null) {
+            return null;
+        }
+        AdaptiveWriterTuning.Settings settings = writerSettingsByTable.get(table);
+        return settings == null ? adaptiveWriterTuning.initial(config) : settings;
+    }
+    
+    /**
+     * Remember the settings learned from a batch writer on a table
+     * 
+     * @param table
+     *            The table name
+     * @param settings
+     *            The settings for the next batch writer on the table
+     */
+    public void putWriterSettings(String table, AdaptiveWriterTuning.Settings settings) {
+        writerSettingsByTable.put(table, settings);
     }
     
     /**
@@ -92,8 +308,10 @@ public class AccumuloClientConfiguration {
      * @param level
      *            The consistency level
      */
-    public void setConsistency(String table, ScannerBase.ConsistencyLevel level) {
+    public synchronized void setConsistency(String table, ScannerBase.ConsistencyLevel level) {
+        TableRule.validate(table);
         consistencyByTable.put(table, level);
+        snapshot = null;
     }
     
     /**
@@ -118,13 +336,15 @@ public class AccumuloClientConfiguration {
      * @param hints
      *            The hints
      */
-    public void addHints(String table, Map<String,String> hints) {
+    public synchronized void addHints(String table, Map<String,String> hints) {
         if (hints != null && !hints.isEmpty()) {
+            TableRule.validate(table);
             if (hintsByTable.containsKey(table)) {
                 hintsByTable.get(table).putAll(hints);
             } else {
                 hintsByTable.put(table, new HashMap<>(hints));
             }
+            snapshot = null;
         }
     }
     
@@ -136,12 +356,154 @@ public class AccumuloClientConfiguration {
      * @param hints
      *            The hints
      */
-    public void putHints(String table, Map<String,String> hints) {
+    public synchronized void putHints(String table, Map<String,String> hints) {
         if (hints == null || hints.isEmpty()) {
             hintsByTable.remove(table);
         } else {
+            TableRule.validate(table);
             hintsByTable.put(table, new HashMap<>(hints));
         }
+        snapshot = null;
+    }
+    
+    /**
+     * The hints and consistency level resolved for a table
+     */
+    public static final class TableSettings {
+        private static final TableSettings NONE = new TableSettings(Collections.emptyMap(), null);
+        
+        private final Map<String,String> hints;
+        private final ScannerBase.ConsistencyLevel consistency;
+        
+        private TableSettings(Map<String,String> hints, ScannerBase.ConsistencyLevel consistency) {
+            this.hints = hints;
+            this.consistency = consistency;
+        }
+        
+        /**
+         * @return The hints, which may be empty
+         */
+        public Map<String,String> getHints() {
+            return hints;
+        }
+        
+        /**
+         * @return The consistency level, or null if none is configured
+         */
+        public ScannerBase.ConsistencyLevel getConsistency() {
+            return consistency;
+        }
+        
+        @Override
+        public String toString() {
+            return "hints: " + hints + ", consistency: " + consistency;
+        }
     }
     
+    /**
+     * An immutable copy of the configured table specifications, and the settings resolved from them for each table scanned so far
+     */
+    private static final class Snapshot {
+        private final List<TableRule> rules = new ArrayList<>();
+        private final ConcurrentMap<String,TableSettings> resolved = new ConcurrentHashMap<>();
+        
+        Snapshot(Map<String,Map<String,String>> hintsByTable, Map<String,ScannerBase.ConsistencyLevel> consistencyByTable) {
+            Set<String> tables = new LinkedHashSet<>(hintsByTable.keySet());
+            tables.addAll(consistencyByTable.keySet());
+            for (String table : tables) {
+                Map<String,String> hints = hintsByTable.get(table);
+                rules.add(new TableRule(table, hints == null ? Collections.emptyMap() : hints, consistencyByTable.get(table)));
+            }
+            // stable, so regular expressions keep their order
+            rules.sort(Comparator.comparingInt((TableRule rule) -> rule.kind).thenComparingInt(rule -> rule.prefix == null ? 0 : rule.prefix.length()));
+        }
+        
+        TableSettings forTable(String tableName) {
+            TableSettings settings = resolved.get(tableName);
+            if (settings == null) {
+                settings = resolved.computeIfAbsent(tableName, this::resolve);
+            }
+            return settings;
+        }
+        
+        private TableSettings resolve(String tableName) {
+            Map<String,String> hints = new HashMap<>();
+            ScannerBase.ConsistencyLevel consistency = null;
+            for (TableRule rule : rules) {
+                if (rule.matches(tableName)) {
+                    hints.putAll(rule.hints);
+                    if (rule.consistency != null) {
+                        consistency = rule.consistency;
+                    }
+                }
+            }
+            if (hints.isEmpty() && consistency == null) {
+                return TableSettings.NONE;
+            }
+            return new TableSettings(Collections.unmodifiableMap(hints), consistency);
+        }
+    }
+    
+    /**
+     * The settings configured for one table specification
+     */
+    private static final class TableRule {
+        private static final int PREFIX = 0;
+        private static final int REGEX = 1;
+        private static final int EXACT = 2;
+        
+        private final int kind;
+        private final String table;
+        private final String prefix;
+        private final Pattern pattern;
+        private final Map<String,String> hints;
+        private final ScannerBase.ConsistencyLevel consistency;
+        
+        TableRule(String table, Map<String,String> hints, ScannerBase.ConsistencyLevel consistency) {
+            this.table = table;
+            this.hints = new HashMap<>(hints);
+            this.consistency = consistency;
+            if (isRegex(table)) {
+                this.kind = REGEX;
+                this.prefix = null;
+                this.pattern = Pattern.compile(table.substring(1, table.length() - 1));
+            } else if (table.endsWith("*")) {
+                this.kind = PREFIX;
+                this.prefix = table.substring(0, table.length() - 1);
+                this.pattern = null;
+            } else {
+                this.kind = EXACT;
+                this.prefix = null;
+                this.pattern = null;
+            }
+        }
+        
+        private static boolean isRegex(String table) {
+            return table.length() > 1 && table.startsWith("/") && table.endsWith("/");
+        }
+        
+        /**
+         * @throws IllegalArgumentException
+         *             if the table specification is a malformed regular expression
+         */
+        static void validate(String table) {
+            if (table == null || table.isEmpty()) {
+                throw new IllegalArgumentException("Table must not be empty");
+            }
+            if (isRegex(table)) {
+                Pattern.compile(table.substring(1, table.length() - 1));
+            }
+        }
+        
+        boolean matches(String tableName) {
+            switch (kind) {
+                case PREFIX:
+                    return tableName.startsWith(prefix);
+                case REGEX:
+                    return pattern.matcher(tableName).matches();
+                default:
+                    return table.equals(tableName);
+            }
+        }
+    }
 }
@@ -0,0 +1,249 @@
+package datawave.webservice.common.connection;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+
+/**
+ * The bounds within which {@link ScannerDelegate} adapts the batch size and readahead threshold of scanners, and the rules it adapts them by. After each scan
+ * of a table the settings for the next scan are derived from what was observed:
+ * <ul>
+ * <li>the batch size aims at batches of {@link #getTargetBatchBytes()} bytes, given the average size of the entries returned, so narrow tables get large
+ * batches and wide tables small ones</li>
+ * <li>the readahead threshold is halved when the consumer spent most of the scan waiting for batches, so that reading ahead starts sooner, and doubled when
+ * it hardly waited at all, so that batches are not held in memory before they are needed</li>
+ * </ul>
+ * The learned settings are kept per table by {@link AccumuloClientConfiguration}.
+ */
+public class AdaptiveScanTuning {
+    public static final int DEFAULT_MIN_BATCH_SIZE = 100;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 10000;
+    public static final long DEFAULT_TARGET_BATCH_BYTES = 1024 * 1024;
+    public static final long DEFAULT_MIN_READAHEAD_THRESHOLD = 1;
+    public static final long DEFAULT_MAX_READAHEAD_THRESHOLD = 8;
+    
+    // the Accumulo scanner defaults
+    static final int INITIAL_BATCH_SIZE = 1000;
+    static final long INITIAL_READAHEAD_THRESHOLD = 3;
+    
+    // calls to hasNext() that take longer than this had to wait for the next batch to be fetched
+    private static final long FETCH_THRESHOLD_NANOS = ConnectionMetrics.FETCH_THRESHOLD_NANOS;
+    private static final double WAITING_SHARE = 0.5;
+    private static final double IDLE_SHARE = 0.1;
+    
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final long targetBatchBytes;
+    private final long minReadaheadThreshold;
+    private final long maxReadaheadThreshold;
+    
+    public AdaptiveScanTuning() {
+        this(DEFAULT_MIN_BATCH_SIZE, DEFAULT_MAX_BATCH_SIZE, DEFAULT_TARGET_BATCH_BYTES, DEFAULT_MIN_READAHEAD_THRESHOLD, DEFAULT_MAX_READAHEAD_THRESHOLD);
+    }
+    
+    /**
+     * @param minBatchSize
+     *            the smallest batch size to use
+     * @param maxBatchSize
+     *            the largest batch size to use
+     * @param targetBatchBytes
+     *            the approximate size in bytes of the batches to aim for
+     * @param minReadaheadThreshold
+     *            the smallest readahead threshold to use
+     * @param maxReadaheadThreshold
+     *            the largest readahead threshold to use
+     */
+    public AdaptiveScanTuning(int minBatchSize, int maxBatchSize, long targetBatchBytes, long minReadaheadThreshold, long maxReadaheadThreshold) {
+        if (minBatchSize < 1 || maxBatchSize < minBatchSize || targetBatchBytes < 1 || minReadaheadThreshold < 0
+                        || maxReadaheadThreshold < minReadaheadThreshold) {
+            throw new IllegalArgumentException("Invalid adaptive scan bounds: batch size " + minBatchSize + " to " + maxBatchSize + ", target batch bytes "
+                            + targetBatchBytes + ", readahead threshold " + minReadaheadThreshold + " to " + maxReadaheadThreshold);
+        }
+        this.minBatchSize = minBatchSize;
+        this.maxBatchSize = maxBatchSize;
+        this.targetBatchBytes = targetBatchBytes;
+        this.minReadaheadThreshold = minReadaheadThreshold;
+        this.maxReadaheadThreshold = maxReadaheadThreshold;
+    }
+    
+    public int getMinBatchSize() {
+        return minBatchSize;
+    }
+    
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+    
+    public long getTargetBatchBytes() {
+        return targetBatchBytes;
+    }
+    
+    public long getMinReadaheadThreshold() {
+        return minReadaheadThreshold;
+    }
+    
+    public long getMaxReadaheadThreshold() {
+        return maxReadaheadThreshold;
+    }
+    
+    /**
+     * @return the settings for the first scan of a table, which are the Accumulo defaults within the bounds
+     */
+    public Settings initial() {
+        return new Settings(clamp(INITIAL_BATCH_SIZE, minBatchSize, maxBatchSize),
+                        clamp(INITIAL_READAHEAD_THRESHOLD, minReadaheadThreshold, maxReadaheadThreshold));
+    }
+    
+    /**
+     * Derive the settings for the next scan of a table
+     *
+     * @param current
+     *            the settings of the observed scan
+     * @param observation
+     *            what was observed
+     * @return the settings for the next scan, or {@code current} if too little was observed to learn from
+     */
+    public Settings adjust(Settings current, Observation observation) {
+        // less than a full batch says nothing about the fetches
+        if (observation.entries < current.batchSize) {
+            return current;
+        }
+        long entryBytes = Math.max(1, observation.bytes / observation.entries);
+        int batchSize = (int) clamp(targetBatchBytes / entryBytes, minBatchSize, maxBatchSize);
+        // move halfway, so that a single unusual scan does not swing the settings
+        batchSize = (current.batchSize + batchSize) / 2;
+        
+        long readaheadThreshold = current.readaheadThreshold;
+        long elapsed = observation.fetchNanos + observation.consumeNanos;
+        double fetchShare = (elapsed == 0) ? 0 : (double) observation.fetchNanos / elapsed;
+        if (fetchShare > WAITING_SHARE) {
+            readaheadThreshold = readaheadThreshold / 2;
+        } else if (fetchShare < IDLE_SHARE) {
+            readaheadThreshold = Math.max(1, readaheadThreshold * 2);
+        }
+        readaheadThreshold = clamp(readaheadThreshold, minReadaheadThreshold, maxReadaheadThreshold);
+        return new Settings(batchSize, readaheadThreshold);
+    }
+    
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+    
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+    
+    /**
+     * The batch size and readahead threshold for a scan
+     */
+    public static final class Settings {
+        private final int batchSize;
+        private final long readaheadThreshold;
+        
+        public Settings(int batchSize, long readaheadThreshold) {
+            this.batchSize = batchSize;
+            this.readaheadThreshold = readaheadThreshold;
+        }
+        
+        public int getBatchSize() {
+            return batchSize;
+        }
+        
+        public long getReadaheadThreshold() {
+            return readaheadThreshold;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Settings)) {
+                return false;
+            }
+            Settings other = (Settings) o;
+            return batchSize == other.batchSize && readaheadThreshold == other.readaheadThreshold;
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * batchSize + Long.hashCode(readaheadThreshold);
+        }
+        
+        @Override
+        public String toString() {
+            return "batchSize: " + batchSize + ", readaheadThreshold: " + readaheadThreshold;
+        }
+    }
+    
+    /**
+     * What was observed while consuming a scan
+     */
+    public static final class Observation {
+        private long entries;
+        private long bytes;
+        private long fetchNanos;
+        private long consumeNanos;
+        
+        public Observation() {}
+        
+        public Observation(long entries, long bytes, long fetchNanos, long consumeNanos) {
+            this.entries = entries;
+            this.bytes = bytes;
+            this.fetchNanos = fetchNanos;
+            this.consumeNanos = consumeNanos;
+        }
+        
+        @Override
+        public String toString() {
+            return "entries: " + entries + ", bytes: " + bytes + ", fetch ms: " + (fetchNanos / 1000000) + ", consume ms: " + (consumeNanos / 1000000);
+        }
+    }
+    
+    /**
+     * An iterator that observes the scan it iterates over, and hands the observation on once the scan has been read to the end
+     */
+    static class ObservingIterator implements Iterator<Map.Entry<Key,Value>> {
+        private final Iterator<Map.Entry<Key,Value>> source;
+        private final Consumer<Observation> onFinish;
+        private final Observation observation = new Observation();
+        private long lastReturned = 0;
+        private boolean finished = false;
+        
+        ObservingIterator(Iterator<Map.Entry<Key,Value>> source, Consumer<Observation> onFinish) {
+            this.source = source;
+            this.onFinish = onFinish;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            if (lastReturned != 0) {
+                observation.consumeNanos += start - lastReturned;
+                lastReturned = 0;
+            }
+            boolean hasNext = source.hasNext();
+            long elapsed = System.nanoTime() - start;
+            if (elapsed >= FETCH_THRESHOLD_NANOS) {
+                observation.fetchNanos += elapsed;
+            }
+            if (!hasNext && !finished) {
+                finished = true;
+                onFinish.accept(observation);
+            }
+            return hasNext;
+        }
+        
+        @Override
+        public Map.Entry<Key,Value> next() {
+            Map.Entry<Key,Value> entry = source.next();
+            observation.entries++;
+            observation.bytes += entry.getKey().getSize() + entry.getValue().getSize();
+            lastReturned = System.nanoTime();
+            return entry;
+        }
+    }
+}
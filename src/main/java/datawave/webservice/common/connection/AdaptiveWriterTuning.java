@@ -0,0 +1,188 @@
+package datawave.webservice.common.connection;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.client.BatchWriterConfig;
+
+/**
+ * The bounds within which {@link WrappedAccumuloClient} adapts the max memory and max latency of the batch writers it creates for a table, and the rules it
+ * adapts them by. When a writer is closed the settings for the next writer on the table are derived from what was observed:
+ * <ul>
+ * <li>if adding mutations blocked for more than a tenth of the writer's life, i.e. the buffer filled faster than it could be sent, the max memory is doubled so
+ * that bursts are absorbed, and the max latency is halved so that the buffer drains continuously</li>
+ * <li>if the buffer never held more than a quarter of the max memory, the max memory is halved and the max latency doubled, which sends fewer and larger
+ * batches</li>
+ * </ul>
+ * The learned settings are kept per table by {@link AccumuloClientConfiguration}.
+ */
+public class AdaptiveWriterTuning {
+    public static final long DEFAULT_MIN_MAX_MEMORY = 1024 * 1024;
+    public static final long DEFAULT_MAX_MAX_MEMORY = 256 * 1024 * 1024;
+    public static final long DEFAULT_MIN_MAX_LATENCY_MS = 100;
+    public static final long DEFAULT_MAX_MAX_LATENCY_MS = TimeUnit.MINUTES.toMillis(2);
+    
+    // calls to addMutation() that take longer than this were blocked by a full buffer
+    static final long BLOCKED_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double BLOCKED_SHARE = 0.1;
+    private static final long UNDERUSED_FRACTION = 4;
+    
+    private final long minMaxMemory;
+    private final long maxMaxMemory;
+    private final long minMaxLatencyMs;
+    private final long maxMaxLatencyMs;
+    
+    public AdaptiveWriterTuning() {
+        this(DEFAULT_MIN_MAX_MEMORY, DEFAULT_MAX_MAX_MEMORY, DEFAULT_MIN_MAX_LATENCY_MS, DEFAULT_MAX_MAX_LATENCY_MS);
+    }
+    
+    /**
+     * @param minMaxMemory
+     *            the smallest max memory to use, in bytes
+     * @param maxMaxMemory
+     *            the largest max memory to use, in bytes
+     * @param minMaxLatencyMs
+     *            the smallest max latency to use
+     * @param maxMaxLatencyMs
+     *            the largest max latency to use
+     */
+    public AdaptiveWriterTuning(long minMaxMemory, long maxMaxMemory, long minMaxLatencyMs, long maxMaxLatencyMs) {
+        if (minMaxMemory < 1 || maxMaxMemory < minMaxMemory || minMaxLatencyMs < 1 || maxMaxLatencyMs < minMaxLatencyMs) {
+            throw new IllegalArgumentException("Invalid adaptive writer bounds: max memory " + minMaxMemory + " to " + maxMaxMemory + ", max latency "
+                            + minMaxLatencyMs + " to " + maxMaxLatencyMs);
+        }
+        this.minMaxMemory = minMaxMemory;
+        this.maxMaxMemory = maxMaxMemory;
+        this.minMaxLatencyMs = minMaxLatencyMs;
+        this.maxMaxLatencyMs = maxMaxLatencyMs;
+    }
+    
+    public long getMinMaxMemory() {
+        return minMaxMemory;
+    }
+    
+    public long getMaxMaxMemory() {
+        return maxMaxMemory;
+    }
+    
+    public long getMinMaxLatencyMs() {
+        return minMaxLatencyMs;
+    }
+    
+    public long getMaxMaxLatencyMs() {
+        return maxMaxLatencyMs;
+    }
+    
+    /**
+     * @param config
+     *            the configuration a writer was requested with
+     * @return the settings for the first writer on a table, which are those of {@code config} within the bounds
+     */
+    public Settings initial(BatchWriterConfig config) {
+        return new Settings(clamp(config.getMaxMemory(), minMaxMemory, maxMaxMemory),
+                        clamp(config.getMaxLatency(TimeUnit.MILLISECONDS), minMaxLatencyMs, maxMaxLatencyMs));
+    }
+    
+    /**
+     * Derive the settings for the next writer on a table
+     *
+     * @param current
+     *            the settings of the observed writer
+     * @param observation
+     *            what was observed
+     * @return the settings for the next writer, or {@code current} if nothing was written
+     */
+    public Settings adjust(Settings current, Observation observation) {
+        if (observation.mutations == 0 || observation.lifetimeNanos <= 0) {
+            return current;
+        }
+        long maxMemory = current.maxMemory;
+        long maxLatencyMs = current.maxLatencyMs;
+        if ((double) observation.blockedNanos / observation.lifetimeNanos > BLOCKED_SHARE) {
+            maxMemory = maxMemory * 2;
+            maxLatencyMs = maxLatencyMs / 2;
+        } else if (observation.highWaterBytes < maxMemory / UNDERUSED_FRACTION) {
+            maxMemory = Math.max(maxMemory / 2, observation.highWaterBytes * 2);
+            maxLatencyMs = maxLatencyMs * 2;
+        }
+        return new Settings(clamp(maxMemory, minMaxMemory, maxMaxMemory), clamp(maxLatencyMs, minMaxLatencyMs, maxMaxLatencyMs));
+    }
+    
+    private static long clamp(long value, long min, long max) {
+        return Math.max(min, Math.min(max, value));
+    }
+    
+    /**
+     * The max memory and max latency for a batch writer
+     */
+    public static final class Settings {
+        private final long maxMemory;
+        private final long maxLatencyMs;
+        
+        public Settings(long maxMemory, long maxLatencyMs) {
+            this.maxMemory = maxMemory;
+            this.maxLatencyMs = maxLatencyMs;
+        }
+        
+        public long getMaxMemory() {
+            return maxMemory;
+        }
+        
+        public long getMaxLatencyMs() {
+            return maxLatencyMs;
+        }
+        
+        /**
+         * @param config
+         *            the configuration a writer was requested with
+         * @return a copy of {@code config} with these settings
+         */
+        public BatchWriterConfig apply(BatchWriterConfig config) {
+            return new BatchWriterConfig().setMaxMemory(maxMemory).setMaxLatency(maxLatencyMs, TimeUnit.MILLISECONDS).merge(config);
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Settings)) {
+                return false;
+            }
+            Settings other = (Settings) o;
+            return maxMemory == other.maxMemory && maxLatencyMs == other.maxLatencyMs;
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(maxMemory) + Long.hashCode(maxLatencyMs);
+        }
+        
+        @Override
+        public String toString() {
+            return "maxMemory: " + maxMemory + ", maxLatencyMs: " + maxLatencyMs;
+        }
+    }
+    
+    /**
+     * What was observed over the life of a batch writer
+     */
+    public static final class Observation {
+        private final long mutations;
+        private final long lifetimeNanos;
+        private final long blockedNanos;
+        private final long highWaterBytes;
+        
+        public Observation(long mutations, long lifetimeNanos, long blockedNanos, long highWaterBytes) {
+            this.mutations = mutations;
+            this.lifetimeNanos = lifetimeNanos;
+            this.blockedNanos = blockedNanos;
+            this.highWaterBytes = highWaterBytes;
+        }
+        
+        @Override
+        public String toString() {
+            return "mutations: " + mutations + ", lifetime ms: " + (lifetimeNanos / 1000000) + ", blocked ms: " + (blockedNanos / 1000000)
+                            + ", high water bytes: " + highWaterBytes;
+        }
+    }
+}
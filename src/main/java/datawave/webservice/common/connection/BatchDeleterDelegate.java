@@ -18,7 +18,11 @@ public class BatchDeleterDelegate extends ScannerBaseDelegate implements BatchDe
     
     @Override
     public final void delete() throws MutationsRejectedException, TableNotFoundException {
-        ((BatchDeleter) delegate).delete();
+        try {
+            ((BatchDeleter) delegate).delete();
+        } finally {
+            invalidateResultCache();
+        }
     }
     
     @Override
@@ -1,6 +1,8 @@
 package datawave.webservice.common.connection;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.accumulo.core.client.BatchScanner;
 import org.apache.accumulo.core.data.Range;
@@ -9,6 +11,8 @@ import org.apache.accumulo.core.data.Range;
  * A simple wrapper around a {@link BatchScanner} that overrides the methods that configure iterators.
  */
 public class BatchScannerDelegate extends ScannerBaseDelegate implements BatchScanner {
+    private List<Range> ranges = null;
+    
     public BatchScannerDelegate(BatchScanner delegate) {
         super(delegate);
     }
@@ -16,5 +20,11 @@ public class BatchScannerDelegate extends ScannerBaseDelegate implements BatchSc
     @Override
     public final void setRanges(Collection<Range> ranges) {
         ((BatchScanner) delegate).setRanges(ranges);
+        this.ranges = new ArrayList<>(ranges);
+    }
+    
+    @Override
+    protected Collection<Range> getScanRanges() {
+        return ranges;
     }
 }
@@ -0,0 +1,149 @@
+package datawave.webservice.common.connection;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.data.Mutation;
+
+/**
+ * A simple wrapper around a {@link BatchWriter} that records its throughput, flush latency, buffer occupancy and rejected mutations in the
+ * {@link ConnectionMetrics} of its table, and observes how often adding mutations blocked for {@link AdaptiveWriterTuning}.
+ * <p>
+ * The buffer occupancy is estimated as the bytes added since the last flush, since the writer also sends mutations on its own when its buffer fills or its
+ * latency expires.
+ */
+public class BatchWriterDelegate implements BatchWriter {
+    
+    protected final BatchWriter delegate;
+    private final ConnectionMetrics.TableMetrics metrics;
+    private final Consumer<AdaptiveWriterTuning.Observation> onClose;
+    
+    private final long created = System.nanoTime();
+    private final LongAdder mutations = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private final AtomicLong bytesSinceFlush = new AtomicLong();
+    private final AtomicLong highWaterBytes = new AtomicLong();
+    private volatile boolean closed = false;
+    
+    public BatchWriterDelegate(BatchWriter delegate, ConnectionMetrics.TableMetrics metrics) {
+        this(delegate, metrics, null);
+    }
+    
+    /**
+     * @param delegate
+     *            the writer
+     * @param metrics
+     *            the metrics of the table being written, or null
+     * @param onClose
+     *            handed what was observed when the writer is closed, or null
+     */
+    public BatchWriterDelegate(BatchWriter delegate, ConnectionMetrics.TableMetrics metrics, Consumer<AdaptiveWriterTuning.Observation> onClose) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+        this.onClose = onClose;
+    }
+    
+    @Override
+    public void addMutation(Mutation m) throws MutationsRejectedException {
+        long start = System.nanoTime();
+        try {
+            delegate.addMutation(m);
+        } catch (MutationsRejectedException e) {
+            rejected();
+            throw e;
+        }
+        blocked(System.nanoTime() - start);
+        added(1, m.numBytes());
+    }
+    
+    @Override
+    public void addMutations(Iterable<Mutation> iterable) throws MutationsRejectedException {
+        long count = 0;
+        long bytes = 0;
+        try {
+            for (Mutation m : iterable) {
+                long start = System.nanoTime();
+                delegate.addMutation(m);
+                blocked(System.nanoTime() - start);
+                count++;
+                bytes += m.numBytes();
+            }
+        } catch (MutationsRejectedException e) {
+            rejected();
+            throw e;
+        } finally {
+            added(count, bytes);
+        }
+    }
+    
+    @Override
+    public void flush() throws MutationsRejectedException {
+        long start = System.nanoTime();
+        try {
+            delegate.flush();
+        } catch (MutationsRejectedException e) {
+            rejected();
+            throw e;
+        }
+        flushed(System.nanoTime() - start);
+    }
+    
+    @Override
+    public void close() throws MutationsRejectedException {
+        if (closed) {
+            delegate.close();
+            return;
+        }
+        closed = true;
+        long start = System.nanoTime();
+        try {
+            delegate.close();
+        } catch (MutationsRejectedException e) {
+            rejected();
+            throw e;
+        } finally {
+            flushed(System.nanoTime() - start);
+            if (onClose != null) {
+                onClose.accept(new AdaptiveWriterTuning.Observation(mutations.sum(), System.nanoTime() - created, blockedNanos.sum(), highWaterBytes.get()));
+            }
+        }
+    }
+    
+    /**
+     * @return the most bytes added between two flushes so far
+     */
+    public long getHighWaterBytes() {
+        return highWaterBytes.get();
+    }
+    
+    private void added(long count, long bytes) {
+        mutations.add(count);
+        long pending = bytesSinceFlush.addAndGet(bytes);
+        highWaterBytes.accumulateAndGet(pending, Math::max);
+        if (metrics != null) {
+            metrics.mutationsAdded(count, bytes);
+        }
+    }
+    
+    private void blocked(long nanos) {
+        if (nanos >= AdaptiveWriterTuning.BLOCKED_THRESHOLD_NANOS) {
+            blockedNanos.add(nanos);
+        }
+    }
+    
+    private void flushed(long nanos) {
+        long pending = bytesSinceFlush.getAndSet(0);
+        if (metrics != null) {
+            metrics.flushed(nanos, pending);
+        }
+    }
+    
+    private void rejected() {
+        if (metrics != null) {
+            metrics.rejected();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package datawave.webservice.common.connection;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Keeps the {@link AccumuloClientConfiguration} of a {@link WrappedAccumuloClient} in step with a properties file, see
+ * {@link AccumuloClientConfiguration#fromProperties(Properties)}. The file is checked for changes on an interval, by comparing a hash of its content, and
+ * each time it has changed its configuration replaces the one previously loaded with {@link WrappedAccumuloClient#reloadClientConfig}. That lays it over the
+ * configuration set and updated through the client, so a setting removed from the file no longer applies, and carries over the settings learned by adaptive
+ * tuning. A file that cannot be read or parsed is logged and the current configuration kept.
+ */
+public class ClientConfigurationReloader implements AutoCloseable {
+    private static final Logger log = Logger.getLogger(ClientConfigurationReloader.class);
+    
+    public static final long DEFAULT_CHECK_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+    
+    private final WrappedAccumuloClient client;
+    private final Path file;
+    private final long checkIntervalMs;
+    // the hash of the content last loaded, as an edit can leave the modification time unchanged
+    private HashCode loadedHash = null;
+    private ScheduledExecutorService scheduler = null;
+    
+    public ClientConfigurationReloader(WrappedAccumuloClient client, Path file) {
+        this(client, file, DEFAULT_CHECK_INTERVAL_MS);
+    }
+    
+    /**
+     * @param client
+     *            the client to configure
+     * @param file
+     *            the properties file
+     * @param checkIntervalMs
+     *            how often to check the file for changes
+     */
+    public ClientConfigurationReloader(WrappedAccumuloClient client, Path file, long checkIntervalMs) {
+        if (checkIntervalMs < 1) {
+            throw new IllegalArgumentException("Check interval must be positive, was " + checkIntervalMs);
+        }
+        this.client = client;
+        this.file = file;
+        this.checkIntervalMs = checkIntervalMs;
+    }
+    
+    /**
+     * Load the file now, and then check it for changes in the background
+     */
+    public synchronized void start() {
+        if (scheduler != null) {
+            throw new IllegalStateException("Reloader has already been started");
+        }
+        reloadQuietly();
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("client-config-reloader-%d").setDaemon(true).build());
+        scheduler.scheduleWithFixedDelay(this::reloadQuietly, checkIntervalMs, checkIntervalMs, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Load the file if it has changed since it was last loaded
+     *
+     * @return true if the client's configuration was replaced
+     * @throws IOException
+     *             if the file could not be read
+     * @throws IllegalArgumentException
+     *             if the file holds a malformed property
+     */
+    public synchronized boolean reload() throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        HashCode hash = Hashing.sha256().hashBytes(content);
+        if (hash.equals(loadedHash)) {
+            return false;
+        }
+        Properties properties = new Properties();
+        properties.load(new StringReader(new String(content, StandardCharsets.UTF_8)));
+        client.reloadClientConfig(AccumuloClientConfiguration.fromProperties(properties));
+        loadedHash = hash;
+        log.info("Loaded client configuration from " + file);
+        return true;
+    }
+    
+    private void reloadQuietly() {
+        try {
+            reload();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to load client configuration from " + file + ", keeping the current configuration", e);
+        }
+    }
+    
+    /**
+     * Stop checking the file. The current configuration is kept.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package datawave.webservice.common.connection;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+/**
+ * The metrics that {@link WrappedAccumuloClient} records for the scanners and writers it hands out, if it has been given a {@link MetricRegistry}. Metrics are
+ * registered per table, named {@code datawave.accumulo.<table>.<metric>}:
+ * <ul>
+ * <li>{@code scanners.mock} and {@code scanners.real}: the scanners created against the mock and the real instance. A scanner that routes between the two by
+ * the columns it fetches is counted when it is first read, against the instance it reads from</li>
+ * <li>{@code scanners.live}: the scanners that have not been closed yet. A scanner is only counted out when it is closed, so scanners that are dropped without
+ * being closed are counted as live for good, which makes this count a way to spot scanner leaks rather than the number of scans in progress</li>
+ * <li>{@code entries} and {@code bytes}: the entries, and their approximate size, returned by scanners</li>
+ * <li>{@code firstEntry}: the time from creating a scanner's iterator to its first entry</li>
+ * <li>{@code fetches}: the time spent waiting for the tablet servers, i.e. each call to {@code hasNext()} that took longer than 50 microseconds</li>
+ * <li>{@code mutations} and {@code mutationBytes}: the mutations, and their size, added to batch writers</li>
+ * <li>{@code flushes}: the time taken by batch writer flushes, including the flush when a writer is closed</li>
+ * <li>{@code bufferHighWater}: the bytes added to a batch writer between flushes, an upper bound on the occupancy of its buffer</li>
+ * <li>{@code rejected}: the calls to batch writers that failed with rejected mutations</li>
+ * <li>{@code cache.hits} and {@code cache.misses}: the scans served from and missing the {@link ScanResultCache}</li>
+ * </ul>
+ * A multi-table batch writer flushes all of its tables at once, so the time taken by those flushes, including the flush when the writer is closed, is recorded
+ * for the connection as a whole in {@code datawave.accumulo.multi-table.flushes} (a name no table can have).
+ */
+public class ConnectionMetrics {
+    public static final String PREFIX = "datawave.accumulo";
+    
+    // calls to hasNext() that take longer than this had to wait for the next batch to be fetched
+    static final long FETCH_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    
+    private final MetricRegistry registry;
+    private final ConcurrentMap<String,TableMetrics> tables = new ConcurrentHashMap<>();
+    private final Timer multiTableFlushes;
+    
+    public ConnectionMetrics(MetricRegistry registry) {
+        this.registry = registry;
+        this.multiTableFlushes = registry.timer(MetricRegistry.name(PREFIX, "multi-table", "flushes"));
+    }
+    
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+    
+    /**
+     * @param tableName
+     *            the table name
+     * @return the metrics for the table, registering them if necessary
+     */
+    public TableMetrics forTable(String tableName) {
+        TableMetrics metrics = tables.get(tableName);
+        if (metrics == null) {
+            metrics = tables.computeIfAbsent(tableName, table -> new TableMetrics(registry, table));
+        }
+        return metrics;
+    }
+    
+    void multiTableFlushed(long nanos) {
+        multiTableFlushes.update(nanos, TimeUnit.NANOSECONDS);
+    }
+    
+    /**
+     * @return the number of times multi-table batch writers have been flushed, including when they were closed
+     */
+    public long getMultiTableFlushes() {
+        return multiTableFlushes.getCount();
+    }
+    
+    /**
+     * The metrics for one table
+     */
+    public static class TableMetrics {
+        private final Counter mockScanners;
+        private final Counter realScanners;
+        private final Counter liveScanners;
+        private final Meter entries;
+        private final Meter bytes;
+        private final Timer firstEntry;
+        private final Timer fetches;
+        private final Meter mutations;
+        private final Meter mutationBytes;
+        private final Timer flushes;
+        private final Histogram bufferHighWater;
+        private final Meter rejected;
+        private final Meter cacheHits;
+        private final Meter cacheMisses;
+        
+        TableMetrics(MetricRegistry registry, String tableName) {
+            this.mockScanners = registry.counter(MetricRegistry.name(PREFIX, tableName, "scanners", "mock"));
+            this.realScanners = registry.counter(MetricRegistry.name(PREFIX, tableName, "scanners", "real"));
+            this.liveScanners = registry.counter(MetricRegistry.name(PREFIX, tableName, "scanners", "live"));
+            this.entries = registry.meter(MetricRegistry.name(PREFIX, tableName, "entries"));
+            this.bytes = registry.meter(MetricRegistry.name(PREFIX, tableName, "bytes"));
+            this.firstEntry = registry.timer(MetricRegistry.name(PREFIX, tableName, "firstEntry"));
+            this.fetches = registry.timer(MetricRegistry.name(PREFIX, tableName, "fetches"));
+            this.mutations = registry.meter(MetricRegistry.name(PREFIX, tableName, "mutations"));
+            this.mutationBytes = registry.meter(MetricRegistry.name(PREFIX, tableName, "mutationBytes"));
+            this.flushes = registry.timer(MetricRegistry.name(PREFIX, tableName, "flushes"));
+            this.bufferHighWater = registry.histogram(MetricRegistry.name(PREFIX, tableName, "bufferHighWater"));
+            this.rejected = registry.meter(MetricRegistry.name(PREFIX, tableName, "rejected"));
+            this.cacheHits = registry.meter(MetricRegistry.name(PREFIX, tableName, "cache", "hits"));
+            this.cacheMisses = registry.meter(MetricRegistry.name(PREFIX, tableName, "cache", "misses"));
+        }
+        
+        void scannerCreated(boolean mock) {
+            scannerCreated();
+            scannerRouted(mock);
+        }
+        
+        /**
+         * Count a scanner as live, for a scanner that is only counted as a mock or a real one by {@link #scannerRouted(boolean)} once it is first read
+         */
+        void scannerCreated() {
+            liveScanners.inc();
+        }
+        
+        void scannerRouted(boolean mock) {
+            (mock ? mockScanners : realScanners).inc();
+        }
+        
+        void scannerClosed() {
+            liveScanners.dec();
+        }
+        
+        void mutationsAdded(long count, long bytes) {
+            mutations.mark(count);
+            mutationBytes.mark(bytes);
+        }
+        
+        void flushed(long nanos, long highWaterBytes) {
+            flushes.update(nanos, TimeUnit.NANOSECONDS);
+            bufferHighWater.update(highWaterBytes);
+        }
+        
+        void rejected() {
+            rejected.mark();
+        }
+        
+        void cacheAccessed(boolean hit) {
+            (hit ? cacheHits : cacheMisses).mark();
+        }
+        
+        Iterator<Map.Entry<Key,Value>> meter(Iterator<Map.Entry<Key,Value>> source) {
+            return new MeteredIterator(source, this);
+        }
+        
+        /**
+         * @return the scanners created and not closed yet, including any that were dropped without being closed
+         */
+        public long getLiveScanners() {
+            return liveScanners.getCount();
+        }
+        
+        public long getScanners(boolean mock) {
+            return (mock ? mockScanners : realScanners).getCount();
+        }
+        
+        public long getEntries() {
+            return entries.getCount();
+        }
+        
+        public long getBytes() {
+            return bytes.getCount();
+        }
+        
+        public long getMutations() {
+            return mutations.getCount();
+        }
+        
+        public long getMutationBytes() {
+            return mutationBytes.getCount();
+        }
+        
+        public long getFlushes() {
+            return flushes.getCount();
+        }
+        
+        public long getRejected() {
+            return rejected.getCount();
+        }
+        
+        public long getCacheHits() {
+            return cacheHits.getCount();
+        }
+        
+        public long getCacheMisses() {
+            return cacheMisses.getCount();
+        }
+    }
+    
+    private static class MeteredIterator implements Iterator<Map.Entry<Key,Value>> {
+        private final Iterator<Map.Entry<Key,Value>> source;
+        private final TableMetrics metrics;
+        private final long created = System.nanoTime();
+        private boolean first = true;
+        
+        MeteredIterator(Iterator<Map.Entry<Key,Value>> source, TableMetrics metrics) {
+            this.source = source;
+            this.metrics = metrics;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            long start = System.nanoTime();
+            boolean hasNext = source.hasNext();
+            long elapsed = System.nanoTime() - start;
+            if (elapsed >= FETCH_THRESHOLD_NANOS) {
+                metrics.fetches.update(elapsed, TimeUnit.NANOSECONDS);
+            }
+            return hasNext;
+        }
+        
+        @Override
+        public Map.Entry<Key,Value> next() {
+            Map.Entry<Key,Value> entry = source.next();
+            if (first) {
+                first = false;
+                metrics.firstEntry.update(System.nanoTime() - created, TimeUnit.NANOSECONDS);
+            }
+            metrics.entries.mark();
+            metrics.bytes.mark(entry.getKey().getSize() + entry.getValue().getSize());
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package datawave.webservice.common.connection;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.security.Authorizations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * The names of the tables in the in-memory (mock) instance that {@link WrappedAccumuloClient} and {@link WrappedConnector} route scanners to. Listing the
+ * tables builds a new sorted set on every call, so the names are kept in an immutable set that is read without locking, and listed again only once the
+ * refresh interval has passed or the set has been {@link #invalidate() invalidated}. While one thread refreshes a stale set, other threads keep reading it.
+ * <p>
+ * A table can also be {@link #map(String, String) mapped} to a table of another name in the mock instance, e.g. to the latest copy loaded by
+ * {@link MockTableLoader}. The mappings are replaced as a whole, so a table is switched to a new copy in one write and a scanner sees either the previous copy
+ * or the new one. A copy that only holds the entries of some columns visible to some authorizations is only {@link #route(String, Authorizations) routed} to
+ * for the scans it holds every entry of.
+ */
+public class MockTableCache {
+    /**
+     * System property that can be used to override the default interval, in milliseconds, after which the table names are listed again
+     */
+    public static final String REFRESH_INTERVAL_PROPERTY = "datawave.mock.tableCache.refreshIntervalMs";
+    public static final long DEFAULT_REFRESH_INTERVAL_MS = 5000;
+    
+    private static final Logger log = LoggerFactory.getLogger(MockTableCache.class);
+    
+    private final Supplier<? extends Set<String>> lister;
+    private final long refreshIntervalNanos;
+    private final Ticker ticker;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private final AtomicLong invalidations = new AtomicLong();
+    
+    private volatile Map<String,MockTable> mappedTables = ImmutableMap.of();
+    private volatile Set<String> tableNames = null;
+    private volatile long listedNanos;
+    
+    public MockTableCache(Supplier<? extends Set<String>> lister) {
+        this(lister, Long.getLong(REFRESH_INTERVAL_PROPERTY, DEFAULT_REFRESH_INTERVAL_MS));
+    }
+    
+    public MockTableCache(Supplier<? extends Set<String>> lister, long refreshIntervalMillis) {
+        this(lister, refreshIntervalMillis, Ticker.systemTicker());
+    }
+    
+    MockTableCache(Supplier<? extends Set<String>> lister, long refreshIntervalMillis, Ticker ticker) {
+        this.lister = lister;
+        this.refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalMillis);
+        this.ticker = ticker;
+    }
+    
+    /**
+     * @param tableName
+     *            the table name
+     * @return true if the table is mapped, or the mock instance has the table as of the last time its tables were listed
+     */
+    public boolean contains(String tableName) {
+        return resolve(tableName) != null;
+    }
+    
+    /**
+     * @param tableName
+     *            the table name
+     * @return the name of the table in the mock instance to scan for {@code tableName}, or null if scanners should go to the real instance
+     */
+    public String resolve(String tableName) {
+        MockTable mapped = mappedTables.get(tableName);
+        if (mapped != null) {
+            return mapped.getPhysicalName();
+        }
+        return getTableNames().contains(tableName) ? tableName : null;
+    }
+    
+    /**
+     * @param tableName
+     *            the table name
+     * @param authorizations
+     *            the authorizations of the scan, or null if they are not known
+     * @return the table in the mock instance to scan for {@code tableName}, or null if the scan should go to the real instance because the mock instance does
+     *         not have the table or not every entry visible to {@code authorizations}
+     */
+    public MockTable route(String tableName, Authorizations authorizations) {
+        MockTable mapped = mappedTables.get(tableName);
+        if (mapped != null) {
+            return mapped.covers(authorizations) ? mapped : null;
+        }
+        return getTableNames().contains(tableName) ? new MockTable(tableName, null, Collections.emptyList()) : null;
+    }
+    
+    /**
+     * Route the scanners of a table to a table of another name in the mock instance, which holds every entry of the table
+     *
+     * @param tableName
+     *            the table name
+     * @param physicalName
+     *            the name of the table in the mock instance
+     * @return the name the table was mapped to before, or null
+     */
+    public String map(String tableName, String physicalName) {
+        return map(tableName, physicalName, null, Collections.emptyList());
+    }
+    
+    /**
+     * Route the scanners of a table to a table of another name in the mock instance, which holds the entries of some columns that are visible to some
+     * authorizations
+     *
+     * @param tableName
+     *            the table name
+     * @param physicalName
+     *            the name of the table in the mock instance
+     * @param authorizations
+     *            the authorizations that an entry had to be visible to, all of them, to be copied to the mock instance, or null if every entry was copied
+     * @param columns
+     *            the columns that were copied to the mock instance, or an empty collection for all columns
+     * @return the name the table was mapped to before, or null
+     */
+    public synchronized String map(String tableName, String physicalName, Collection<Authorizations> authorizations,
+                    Collection<IteratorSetting.Column> columns) {
+        Map<String,MockTable> tables = new HashMap<>(mappedTables);
+        MockTable previous = tables.put(tableName, new MockTable(physicalName, authorizations, columns));
+        mappedTables = ImmutableMap.copyOf(tables);
+        return previous == null ? null : previous.getPhysicalName();
+    }
+    
+    /**
+     * Stop routing the scanners of a table to the table it was mapped to
+     *
+     * @param tableName
+     *            the table name
+     * @return the name the table was mapped to, or null
+     */
+    public synchronized String unmap(String tableName) {
+        if (!mappedTables.containsKey(tableName)) {
+            return null;
+        }
+        Map<String,MockTable> tables = new HashMap<>(mappedTables);
+        MockTable previous = tables.remove(tableName);
+        mappedTables = ImmutableMap.copyOf(tables);
+        return previous.getPhysicalName();
+    }
+    
+    /**
+     * @return the names of the tables in the mock instance, listing them again first if they are stale
+     */
+    public Set<String> getTableNames() {
+        Set<String> names = tableNames;
+        if (names == null) {
+            synchronized (this) {
+                names = tableNames;
+                if (names == null) {
+                    names = list();
+                }
+            }
+        } else if (ticker.read() - listedNanos >= refreshIntervalNanos && refreshing.compareAndSet(false, true)) {
+            try {
+                names = list();
+            } catch (RuntimeException e) {
+                log.warn("Failed to list mock tables, continuing with the previous table names", e);
+            } finally {
+                refreshing.set(false);
+            }
+        }
+        return names;
+    }
+    
+    /**
+     * Discard the table names, so that they are listed again when next needed. Call this whenever tables are created, deleted or renamed in the mock instance.
+     */
+    public void invalidate() {
+        invalidations.incrementAndGet();
+        tableNames = null;
+    }
+    
+    private Set<String> list() {
+        long now = ticker.read();
+        long invalidation = invalidations.get();
+        Set<String> names = ImmutableSet.copyOf(lister.get());
+        // names listed before a concurrent invalidation may already be stale, so they are not kept
+        if (invalidations.get() == invalidation) {
+            listedNanos = now;
+            tableNames = names;
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Listed " + names.size() + " mock tables");
+        }
+        return names;
+    }
+    
+    /**
+     * A table in the mock instance that scanners of a table are routed to, and which of the entries of the table it holds
+     */
+    public static class MockTable {
+        private final String physicalName;
+        // the authorizations common to all of the authorizations the entries had to be visible to, or null for every entry
+        private final Set<ByteSequence> authorizations;
+        private final List<IteratorSetting.Column> columns;
+        
+        MockTable(String physicalName, Collection<Authorizations> authorizations, Collection<IteratorSetting.Column> columns) {
+            this.physicalName = physicalName;
+            if (authorizations == null) {
+                this.authorizations = null;
+            } else {
+                Set<ByteSequence> common = null;
+                for (Authorizations auths : authorizations) {
+                    Set<ByteSequence> terms = new HashSet<>();
+                    for (byte[] auth : auths) {
+                        terms.add(new ArrayByteSequence(auth));
+                    }
+                    if (common == null) {
+                        common = terms;
+                    } else {
+                        common.retainAll(terms);
+                    }
+                }
+                this.authorizations = (common == null) ? ImmutableSet.of() : ImmutableSet.copyOf(common);
+            }
+            this.columns = ImmutableList.copyOf(columns);
+        }
+        
+        public String getPhysicalName() {
+            return physicalName;
+        }
+        
+        /**
+         * @param scanAuthorizations
+         *            the authorizations of a scan, or null if they are not known
+         * @return true if every entry visible to {@code scanAuthorizations} was copied, i.e. they are a subset of each of the copied authorizations
+         */
+        public boolean covers(Authorizations scanAuthorizations) {
+            if (authorizations == null) {
+                return true;
+            }
+            if (scanAuthorizations == null) {
+                return false;
+            }
+            for (byte[] auth : scanAuthorizations) {
+                if (!authorizations.contains(new ArrayByteSequence(auth))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        /**
+         * @return true if every column was copied
+         */
+        public boolean hasAllColumns() {
+            return columns.isEmpty();
+        }
+        
+        /**
+         * @param fetchedColumns
+         *            the columns fetched by a scan, or an empty collection for all columns
+         * @return true if every fetched column was copied
+         */
+        public boolean covers(Collection<IteratorSetting.Column> fetchedColumns) {
+            if (columns.isEmpty()) {
+                return true;
+            }
+            if (fetchedColumns.isEmpty()) {
+                return false;
+            }
+            for (IteratorSetting.Column fetched : fetchedColumns) {
+                // a column is copied if its column family, or the column itself, was copied
+                if (!columns.contains(new IteratorSetting.Column(fetched.getColumnFamily())) && !columns.contains(fetched)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        
+        @Override
+        public String toString() {
+            return physicalName;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package datawave.webservice.common.connection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.NamespaceExistsException;
+import org.apache.accumulo.core.client.TableExistsException;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Mirrors tables of the real instance into the in-memory (mock) instance, so that {@link WrappedAccumuloClient} serves scanners of small metadata and
+ * reference tables without leaving the JVM.
+ * <p>
+ * Each {@link MirroredTable} is copied with a {@link ParallelRangeScanner} over the tablets of the real table, restricted to its columns and visible to its
+ * authorizations. Each load writes a new generation of the table, named {@code <table>_g<generation>}, to the mock instance, and only once it is complete is
+ * the table {@link MockTableCache#map(String, String) mapped} to it, so scanners switch from the previous generation to the new one at once and never see a
+ * partially loaded table. The previous generation is deleted after a grace period, so that the scanners still reading it can finish. After {@link #start()}
+ * every table is reloaded in the background once its time to live has passed; a failed reload keeps the previous copy.
+ * <p>
+ * Only the scans whose authorizations are a subset of the mirrored authorizations, and whose fetched columns are a subset of the mirrored columns, are served
+ * from the copy; every other scan of the table goes to the real instance.
+ */
+public class MockTableLoader implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(MockTableLoader.class);
+    
+    public static final int DEFAULT_CONCURRENCY = 4;
+    public static final long DEFAULT_GRACE_PERIOD_MS = TimeUnit.MINUTES.toMillis(1);
+    
+    static final String GENERATION_SEPARATOR = "_g";
+    
+    private final AccumuloClient real;
+    private final AccumuloClient mock;
+    private final MockTableCache mockTables;
+    private final ConcurrentMap<String,MirroredTable> tables = new ConcurrentHashMap<>();
+    private int concurrency = DEFAULT_CONCURRENCY;
+    private long gracePeriodMs = DEFAULT_GRACE_PERIOD_MS;
+    private ExecutorService executor = null;
+    // reloads the tables once started, and deletes previous generations
+    private ScheduledExecutorService scheduler = null;
+    private boolean started = false;
+    private boolean closed = false;
+    
+    /**
+     * @param client
+     *            the client whose real instance is mirrored into its mock instance
+     */
+    public MockTableLoader(WrappedAccumuloClient client) {
+        this(client.getReal(), client.getInvalidatingMock(), client.getMockTableCache());
+    }
+    
+    /**
+     * @param real
+     *            the client to read the tables from
+     * @param mock
+     *            the client of the in-memory instance to load the tables into
+     * @param mockTables
+     *            the cache of the mock table names that routes scanners to the loaded tables
+     */
+    public MockTableLoader(AccumuloClient real, AccumuloClient mock, MockTableCache mockTables) {
+        this.real = real;
+        this.mock = mock;
+        this.mockTables = mockTables;
+    }
+    
+    /**
+     * @param concurrency
+     *            the maximum number of tablets of a table to read at once
+     */
+    public void setConcurrency(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive, was " + concurrency);
+        }
+        this.concurrency = concurrency;
+    }
+    
+    /**
+     * @param gracePeriod
+     *            how long to keep the previous generation of a table after a new one has been loaded, for the scanners that are still reading it
+     * @param unit
+     *            the unit of {@code gracePeriod}
+     */
+    public void setGracePeriod(long gracePeriod, TimeUnit unit) {
+        this.gracePeriodMs = unit.toMillis(gracePeriod);
+    }
+    
+    /**
+     * @param executor
+     *            the executor to read the tables on, or null for the shared pool of daemon threads used by {@link ParallelRangeScanner}
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+    
+    /**
+     * Declare a table to mirror. It is not loaded until {@link #load(String)}, {@link #loadAll()} or {@link #start()} is called.
+     *
+     * @param table
+     *            the table to mirror
+     */
+    public void mirror(MirroredTable table) {
+        tables.put(table.getTableName(), table);
+    }
+    
+    public Collection<MirroredTable> getMirroredTables() {
+        return Collections.unmodifiableCollection(tables.values());
+    }
+    
+    /**
+     * Load every mirrored table, and then reload each in the background once its time to live has passed. A table that fails to load is retried on the same
+     * schedule, and scanned in the real instance meanwhile.
+     */
+    public synchronized void start() {
+        if (started || closed) {
+            throw new IllegalStateException("Loader has already been " + (closed ? "closed" : "started"));
+        }
+        started = true;
+        ScheduledExecutorService scheduler = scheduler();
+        for (MirroredTable table : tables.values()) {
+            reload(table.getTableName());
+            if (table.getTimeToLiveMs() > 0) {
+                scheduler.scheduleWithFixedDelay(() -> reload(table.getTableName()), table.getTimeToLiveMs(), table.getTimeToLiveMs(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+    
+    /**
+     * Load every mirrored table now
+     *
+     * @throws AccumuloException
+     *             if a table could not be read or written
+     * @throws AccumuloSecurityException
+     *             if the user may not read or write a table
+     * @throws TableNotFoundException
+     *             if a mirrored table does not exist in the real instance
+     */
+    public void loadAll() throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+        for (String tableName : tables.keySet()) {
+            load(tableName);
+        }
+    }
+    
+    /**
+     * Load a mirrored table now, switching to the new copy once it is complete
+     *
+     * @param tableName
+     *            the table name
+     * @return the number of entries loaded
+     * @throws AccumuloException
+     *             if the table could not be read or written
+     * @throws AccumuloSecurityException
+     *             if the user may not read or write the table
+     * @throws TableNotFoundException
+     *             if the table does not exist in the real instance
+     */
+    public long load(String tableName) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+        MirroredTable table = tables.get(tableName);
+        if (table == null) {
+            throw new IllegalArgumentException("Table " + tableName + " is not mirrored");
+        }
+        // one load of a table at a time, so that the generations are mapped in order
+        synchronized (table) {
+            long start = System.nanoTime();
+            String physicalName = nextGeneration(table);
+            createEmpty(physicalName);
+            long entries;
+            try {
+                grantAuthorizations(table.getAuthorizations());
+                entries = copy(table, physicalName);
+            } catch (RuntimeException | AccumuloException | AccumuloSecurityException | TableNotFoundException e) {
+                deleteQuietly(physicalName);
+                throw e;
+            }
+            // scanners created from now on read the new generation, those created before may still be reading the previous one
+            String previous = mockTables.map(tableName, physicalName, table.getAuthorizations(), table.getColumns());
+            if (previous != null) {
+                retire(previous);
+            }
+            table.loaded(entries);
+            if (log.isDebugEnabled()) {
+                log.debug("Loaded " + entries + " entries of " + tableName + " into the mock instance in "
+                                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+            }
+            return entries;
+        }
+    }
+    
+    private void reload(String tableName) {
+        try {
+            load(tableName);
+        } catch (Exception e) {
+            log.warn("Failed to load " + tableName + " into the mock instance, continuing with the previous copy", e);
+        }
+    }
+    
+    /**
+     * @return the name of the next generation of the table, which is not the generation that scanners are reading
+     */
+    private String nextGeneration(MirroredTable table) {
+        String current = mockTables.resolve(table.getTableName());
+        String physicalName;
+        do {
+            physicalName = table.getTableName() + GENERATION_SEPARATOR + (++table.generation);
+        } while (physicalName.equals(current));
+        return physicalName;
+    }
+    
+    private long copy(MirroredTable table, String physicalName) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+        ParallelRangeScanner scanner = new ParallelRangeScanner(real, table.getTableName(), table.getAuthorizations(), concurrency);
+        scanner.setExecutor(executor);
+        scanner.setScannerConfigurer(s -> {
+            for (IteratorSetting.Column column : table.getColumns()) {
+                if (column.getColumnQualifier() == null) {
+                    s.fetchColumnFamily(column.getColumnFamily());
+                } else {
+                    s.fetchColumn(column.getColumnFamily(), column.getColumnQualifier());
+                }
+            }
+        });
+        
+        long entries = 0;
+        try (ParallelRangeScanner.Scan scan = scanner.scanUnordered(tabletRanges(table.getTableName()));
+                        BatchWriter writer = mock.createBatchWriter(physicalName, new BatchWriterConfig())) {
+            // the batches of an unordered scan hold consecutive entries, so entries of a row are mostly written as one mutation
+            Mutation mutation = null;
+            Text row = null;
+            while (scan.hasNext()) {
+                Map.Entry<Key,Value> entry = scan.next();
+                Key key = entry.getKey();
+                if (row == null || key.compareRow(row) != 0) {
+                    if (mutation != null) {
+                        writer.addMutation(mutation);
+                    }
+                    row = key.getRow();
+                    mutation = new Mutation(row);
+                }
+                mutation.put(key.getColumnFamily(), key.getColumnQualifier(), key.getColumnVisibilityParsed(), key.getTimestamp(), entry.getValue());
+                entries++;
+            }
+            if (mutation != null) {
+                writer.addMutation(mutation);
+            }
+        }
+        return entries;
+    }
+    
+    /**
+     * @return one range per tablet of the real table, so that the tablets are read in parallel
+     */
+    private List<Range> tabletRanges(String tableName) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+        List<Range> ranges = new ArrayList<>();
+        Text previous = null;
+        for (Text split : real.tableOperations().listSplits(tableName)) {
+            ranges.add(new Range(previous, false, split, true));
+            previous = split;
+        }
+        ranges.add(new Range(previous, false, null, true));
+        return ranges;
+    }
+    
+    private void createEmpty(String tableName) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+        try {
+            // left over from a load that did not finish
+            if (mock.tableOperations().exists(tableName)) {
+                mock.tableOperations().delete(tableName);
+            }
+            int dot = tableName.indexOf('.');
+            if (dot > 0 && !mock.namespaceOperations().exists(tableName.substring(0, dot))) {
+                mock.namespaceOperations().create(tableName.substring(0, dot));
+            }
+            mock.tableOperations().create(tableName);
+        } catch (TableExistsException | NamespaceExistsException e) {
+            throw new IllegalStateException("Concurrent load of " + tableName, e);
+        }
+    }
+    
+    /**
+     * The scanners of the mock instance only return what its user is authorized to see, so the user is granted the authorizations of every mirrored table
+     */
+    private void grantAuthorizations(Collection<Authorizations> authorizations) throws AccumuloException, AccumuloSecurityException {
+        String user = mock.whoami();
+        Authorizations current = mock.securityOperations().getUserAuthorizations(user);
+        List<byte[]> granted = new ArrayList<>(current.getAuthorizations());
+        boolean changed = false;
+        for (Authorizations auths : authorizations) {
+            for (byte[] auth : auths.getAuthorizations()) {
+                if (!current.contains(auth)) {
+                    granted.add(auth);
+                    changed = true;
+                }
+            }
+        }
+        if (changed) {
+            mock.securityOperations().changeUserAuthorizations(user, new Authorizations(granted));
+        }
+    }
+    
+    /**
+     * Delete a previous generation of a table once the grace period has passed
+     */
+    private synchronized void retire(String physicalName) {
+        if (gracePeriodMs <= 0 || closed) {
+            deleteQuietly(physicalName);
+        } else {
+            scheduler().schedule(() -> deleteQuietly(physicalName), gracePeriodMs, TimeUnit.MILLISECONDS);
+        }
+    }
+    
+    private synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("mock-table-loader-%d").setDaemon(true).build());
+        }
+        return scheduler;
+    }
+    
+    private void deleteQuietly(String tableName) {
+        try {
+            mock.tableOperations().delete(tableName);
+        } catch (Exception e) {
+            log.warn("Failed to delete " + tableName + " from the mock instance", e);
+        }
+    }
+    
+    /**
+     * Stop reloading the tables in the background. The loaded tables are kept, and the previous generations that are waiting for their grace period to pass
+     * are still deleted.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (scheduler != null) {
+            // cancels the reloads, but not the deletes that have been scheduled
+            scheduler.shutdown();
+        }
+    }
+    
+    /**
+     * A table of the real instance to mirror into the mock instance
+     */
+    public static class MirroredTable {
+        private final String tableName;
+        private final List<Authorizations> authorizations;
+        private final List<IteratorSetting.Column> columns = new ArrayList<>();
+        private long timeToLiveMs = 0;
+        // the last generation loaded, guarded by the table
+        private long generation = 0;
+        private volatile long loadedEntries = -1;
+        private volatile long loadedMillis = 0;
+        
+        /**
+         * @param tableName
+         *            the table name, which is the same in both instances
+         * @param authorizations
+         *            the authorizations for each entity in the call chain to read the table with. Only the entries visible to all of them are mirrored.
+         */
+        public MirroredTable(String tableName, Collection<Authorizations> authorizations) {
+            if (authorizations.isEmpty()) {
+                throw new IllegalArgumentException("Authorizations must not be empty for " + tableName);
+            }
+            this.tableName = tableName;
+            this.authorizations = new ArrayList<>(authorizations);
+        }
+        
+        public String getTableName() {
+            return tableName;
+        }
+        
+        public List<Authorizations> getAuthorizations() {
+            return Collections.unmodifiableList(authorizations);
+        }
+        
+        /**
+         * Restrict the mirrored entries to a column family
+         *
+         * @param columnFamily
+         *            the column family
+         * @return this table
+         */
+        public MirroredTable fetchColumnFamily(Text columnFamily) {
+            columns.add(new IteratorSetting.Column(columnFamily));
+            return this;
+        }
+        
+        /**
+         * Restrict the mirrored entries to a column
+         *
+         * @param columnFamily
+         *            the column family
+         * @param columnQualifier
+         *            the column qualifier
+         * @return this table
+         */
+        public MirroredTable fetchColumn(Text columnFamily, Text columnQualifier) {
+            columns.add(new IteratorSetting.Column(columnFamily, columnQualifier));
+            return this;
+        }
+        
+        /**
+         * @return the columns to mirror, or an empty list for all columns
+         */
+        public List<IteratorSetting.Column> getColumns() {
+            return Collections.unmodifiableList(columns);
+        }
+        
+        /**
+         * @param timeToLive
+         *            how long a loaded copy is used before it is reloaded, or 0 to load it only once
+         * @param unit
+         *            the unit of {@code timeToLive}
+         * @return this table
+         */
+        public MirroredTable setTimeToLive(long timeToLive, TimeUnit unit) {
+            this.timeToLiveMs = unit.toMillis(timeToLive);
+            return this;
+        }
+        
+        public long getTimeToLiveMs() {
+            return timeToLiveMs;
+        }
+        
+        void loaded(long entries) {
+            this.loadedEntries = entries;
+            this.loadedMillis = System.currentTimeMillis();
+        }
+        
+        /**
+         * @return the number of entries in the current copy, or -1 if the table has not been loaded
+         */
+        public long getLoadedEntries() {
+            return loadedEntries;
+        }
+        
+        /**
+         * @return the time the current copy was loaded, in milliseconds since the epoch, or 0 if the table has not been loaded
+         */
+        public long getLoadedMillis() {
+            return loadedMillis;
+        }
+    }
+}
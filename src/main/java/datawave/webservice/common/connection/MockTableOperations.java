@@ -0,0 +1,93 @@
+package datawave.webservice.common.connection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.admin.TableOperations;
+
+/**
+ * Wraps the client of the in-memory (mock) instance so that its {@link TableOperations} {@link MockTableCache#invalidate() invalidate} the cached table
+ * names whenever a table is created, deleted, renamed, cloned or imported. Every other call is passed straight through.
+ */
+class MockTableOperations {
+    // the table operations that change which tables exist
+    private static final Set<String> INVALIDATING_METHODS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("create", "delete", "rename", "clone",
+                    "importTable")));
+    
+    private MockTableOperations() {}
+    
+    /**
+     * @param mock
+     *            the client of the mock instance
+     * @param mockTables
+     *            the cache to invalidate
+     * @return a client whose table operations invalidate {@code mockTables}
+     */
+    static AccumuloClient wrap(AccumuloClient mock, MockTableCache mockTables) {
+        return proxy(AccumuloClient.class, mock, (target, method, args) -> {
+            Object result = invoke(target, method, args);
+            if (method.getName().equals("tableOperations") && method.getParameterCount() == 0) {
+                return wrap((TableOperations) result, mockTables);
+            }
+            return result;
+        });
+    }
+    
+    /**
+     * @param tableOperations
+     *            the table operations of the mock instance
+     * @param mockTables
+     *            the cache to invalidate
+     * @return table operations that invalidate {@code mockTables}
+     */
+    static TableOperations wrap(TableOperations tableOperations, MockTableCache mockTables) {
+        return proxy(TableOperations.class, tableOperations, (target, method, args) -> {
+            if (!INVALIDATING_METHODS.contains(method.getName())) {
+                return invoke(target, method, args);
+            }
+            try {
+                return invoke(target, method, args);
+            } finally {
+                // also when the operation failed, as it may have been partially applied
+                mockTables.invalidate();
+            }
+        });
+    }
+    
+    private interface Handler<T> {
+        Object handle(T target, Method method, Object[] args) throws Throwable;
+    }
+    
+    private static <T> T proxy(Class<T> type, T target, Handler<T> handler) {
+        InvocationHandler invocationHandler = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                // equals, hashCode and toString refer to the proxy itself
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return type.getSimpleName() + " of the mock instance: " + target;
+                }
+            }
+            return handler.handle(target, method, args);
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, invocationHandler));
+    }
+    
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,333 @@
+package datawave.webservice.common.connection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.ScannerBase;
+import org.apache.accumulo.core.client.sample.SamplerConfiguration;
+import org.apache.accumulo.core.clientImpl.ScannerOptions;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Routes the scan of a table whose copy in the in-memory (mock) instance holds only some of its columns. Which columns a scan fetches is only known once it is
+ * iterated, so a scanner of each instance is configured alike and the scan is read from the mock scanner if the copy has every fetched column, or from the
+ * real scanner otherwise. Should the mock scanner not support a setting, the scan is always read from the real scanner.
+ * <p>
+ * The router keeps its own copy of the configuration as {@link ScannerOptions}, so that {@link ScannerBaseDelegate} can clear its iterators and key its
+ * result cache as for any other scanner. Everything else is answered by the real scanner.
+ *
+ * @param <T>
+ *            the scanner interface
+ */
+abstract class MockTableRouter<T extends ScannerBase> extends ScannerOptions {
+    private static final Logger log = LoggerFactory.getLogger(MockTableRouter.class);
+    
+    protected final T mockScanner;
+    protected final T realScanner;
+    private final MockTableCache.MockTable mockTable;
+    private final List<IteratorSetting.Column> fetchedColumns = new ArrayList<>();
+    private boolean mockSupported = true;
+    
+    MockTableRouter(T mockScanner, T realScanner, MockTableCache.MockTable mockTable) {
+        this.mockScanner = mockScanner;
+        this.realScanner = realScanner;
+        this.mockTable = mockTable;
+    }
+    
+    /**
+     * @param mockScanner
+     *            a scanner of the copy in the mock instance
+     * @param realScanner
+     *            a scanner of the table in the real instance
+     * @param mockTable
+     *            the copy in the mock instance
+     * @param <T>
+     *            the scanner interface, {@link Scanner} or {@link BatchScanner}
+     * @return a scanner that is read from {@code mockScanner} if {@code mockTable} has every fetched column, or from {@code realScanner} otherwise
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends ScannerBase> T route(T mockScanner, T realScanner, MockTableCache.MockTable mockTable) {
+        if (realScanner instanceof BatchScanner) {
+            return (T) new RoutedBatchScanner((BatchScanner) mockScanner, (BatchScanner) realScanner, mockTable);
+        } else if (realScanner instanceof Scanner) {
+            return (T) new RoutedScanner((Scanner) mockScanner, (Scanner) realScanner, mockTable);
+        }
+        throw new IllegalArgumentException("Cannot route a " + realScanner.getClass());
+    }
+    
+    /**
+     * @return true if the scan, as configured so far, would be read from the mock scanner
+     */
+    boolean readsFromMock() {
+        return mockSupported && mockTable.covers(fetchedColumns);
+    }
+    
+    /**
+     * Apply a setting to the mock scanner, which is then read from no more if it does not support the setting
+     */
+    protected void configureMock(String setting, Consumer<? super T> configurer) {
+        try {
+            configurer.accept(mockScanner);
+        } catch (RuntimeException e) {
+            if (mockSupported) {
+                mockSupported = false;
+                if (log.isDebugEnabled()) {
+                    log.debug("Mock scanner of " + mockTable + " failed to " + setting + ", reading from the real instance", e);
+                }
+            }
+        }
+    }
+    
+    @Override
+    public Iterator<Map.Entry<Key,Value>> iterator() {
+        boolean routeToMock = readsFromMock();
+        if (log.isTraceEnabled()) {
+            log.trace("Reading scan of " + fetchedColumns + " from the " + (routeToMock ? "mock" : "real") + " instance");
+        }
+        return routeToMock ? mockScanner.iterator() : realScanner.iterator();
+    }
+    
+    @Override
+    public void addScanIterator(IteratorSetting cfg) {
+        realScanner.addScanIterator(cfg);
+        super.addScanIterator(cfg);
+        configureMock("addScanIterator", scanner -> scanner.addScanIterator(cfg));
+    }
+    
+    @Override
+    public void removeScanIterator(String iteratorName) {
+        realScanner.removeScanIterator(iteratorName);
+        super.removeScanIterator(iteratorName);
+        configureMock("removeScanIterator", scanner -> scanner.removeScanIterator(iteratorName));
+    }
+    
+    @Override
+    public void updateScanIteratorOption(String iteratorName, String key, String value) {
+        realScanner.updateScanIteratorOption(iteratorName, key, value);
+        super.updateScanIteratorOption(iteratorName, key, value);
+        configureMock("updateScanIteratorOption", scanner -> scanner.updateScanIteratorOption(iteratorName, key, value));
+    }
+    
+    @Override
+    public void clearScanIterators() {
+        realScanner.clearScanIterators();
+        super.clearScanIterators();
+        configureMock("clearScanIterators", ScannerBase::clearScanIterators);
+    }
+    
+    @Override
+    public void fetchColumnFamily(Text col) {
+        realScanner.fetchColumnFamily(col);
+        super.fetchColumnFamily(col);
+        fetchedColumns.add(new IteratorSetting.Column(col));
+        configureMock("fetchColumnFamily", scanner -> scanner.fetchColumnFamily(col));
+    }
+    
+    @Override
+    public void fetchColumn(Text colFam, Text colQual) {
+        realScanner.fetchColumn(colFam, colQual);
+        super.fetchColumn(colFam, colQual);
+        fetchedColumns.add(new IteratorSetting.Column(colFam, colQual));
+        configureMock("fetchColumn", scanner -> scanner.fetchColumn(colFam, colQual));
+    }
+    
+    @Override
+    public void fetchColumn(IteratorSetting.Column column) {
+        realScanner.fetchColumn(column);
+        // the implementation in ScannerOptions would call back into fetchColumn(Text, Text) above
+        super.fetchColumn(column.getColumnFamily(), column.getColumnQualifier());
+        fetchedColumns.add(column);
+        configureMock("fetchColumn", scanner -> scanner.fetchColumn(column));
+    }
+    
+    @Override
+    public void clearColumns() {
+        realScanner.clearColumns();
+        super.clearColumns();
+        fetchedColumns.clear();
+        configureMock("clearColumns", ScannerBase::clearColumns);
+    }
+    
+    @Override
+    public void setTimeout(long timeout, TimeUnit timeUnit) {
+        realScanner.setTimeout(timeout, timeUnit);
+        super.setTimeout(timeout, timeUnit);
+        configureMock("setTimeout", scanner -> scanner.setTimeout(timeout, timeUnit));
+    }
+    
+    @Override
+    public long getTimeout(TimeUnit timeUnit) {
+        return realScanner.getTimeout(timeUnit);
+    }
+    
+    @Override
+    public Authorizations getAuthorizations() {
+        return realScanner.getAuthorizations();
+    }
+    
+    @Override
+    public void setSamplerConfiguration(SamplerConfiguration samplerConfig) {
+        realScanner.setSamplerConfiguration(samplerConfig);
+        super.setSamplerConfiguration(samplerConfig);
+        configureMock("setSamplerConfiguration", scanner -> scanner.setSamplerConfiguration(samplerConfig));
+    }
+    
+    @Override
+    public SamplerConfiguration getSamplerConfiguration() {
+        return realScanner.getSamplerConfiguration();
+    }
+    
+    @Override
+    public void clearSamplerConfiguration() {
+        realScanner.clearSamplerConfiguration();
+        super.clearSamplerConfiguration();
+        configureMock("clearSamplerConfiguration", ScannerBase::clearSamplerConfiguration);
+    }
+    
+    @Override
+    public void setBatchTimeout(long timeout, TimeUnit timeUnit) {
+        realScanner.setBatchTimeout(timeout, timeUnit);
+        super.setBatchTimeout(timeout, timeUnit);
+        configureMock("setBatchTimeout", scanner -> scanner.setBatchTimeout(timeout, timeUnit));
+    }
+    
+    @Override
+    public long getBatchTimeout(TimeUnit timeUnit) {
+        return realScanner.getBatchTimeout(timeUnit);
+    }
+    
+    @Override
+    public void setClassLoaderContext(String classLoaderContext) {
+        realScanner.setClassLoaderContext(classLoaderContext);
+        super.setClassLoaderContext(classLoaderContext);
+        configureMock("setClassLoaderContext", scanner -> scanner.setClassLoaderContext(classLoaderContext));
+    }
+    
+    @Override
+    public void clearClassLoaderContext() {
+        realScanner.clearClassLoaderContext();
+        super.clearClassLoaderContext();
+        configureMock("clearClassLoaderContext", ScannerBase::clearClassLoaderContext);
+    }
+    
+    @Override
+    public String getClassLoaderContext() {
+        return realScanner.getClassLoaderContext();
+    }
+    
+    @Override
+    public void setExecutionHints(Map<String,String> hints) {
+        realScanner.setExecutionHints(hints);
+        super.setExecutionHints(hints);
+        configureMock("setExecutionHints", scanner -> scanner.setExecutionHints(hints));
+    }
+    
+    @Override
+    public ConsistencyLevel getConsistencyLevel() {
+        return realScanner.getConsistencyLevel();
+    }
+    
+    @Override
+    public void setConsistencyLevel(ConsistencyLevel level) {
+        realScanner.setConsistencyLevel(level);
+        super.setConsistencyLevel(level);
+        configureMock("setConsistencyLevel", scanner -> scanner.setConsistencyLevel(level));
+    }
+    
+    @Override
+    public void close() {
+        try {
+            realScanner.close();
+        } finally {
+            mockScanner.close();
+        }
+    }
+    
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + " between " + mockTable + " in the mock instance and " + realScanner;
+    }
+    
+    /**
+     * Routes a {@link Scanner}
+     */
+    static class RoutedScanner extends MockTableRouter<Scanner> implements Scanner {
+        RoutedScanner(Scanner mockScanner, Scanner realScanner, MockTableCache.MockTable mockTable) {
+            super(mockScanner, realScanner, mockTable);
+        }
+        
+        @Override
+        public void setRange(Range range) {
+            realScanner.setRange(range);
+            configureMock("setRange", scanner -> scanner.setRange(range));
+        }
+        
+        @Override
+        public Range getRange() {
+            return realScanner.getRange();
+        }
+        
+        @Override
+        public void setBatchSize(int size) {
+            realScanner.setBatchSize(size);
+            configureMock("setBatchSize", scanner -> scanner.setBatchSize(size));
+        }
+        
+        @Override
+        public int getBatchSize() {
+            return realScanner.getBatchSize();
+        }
+        
+        @Override
+        public void enableIsolation() {
+            realScanner.enableIsolation();
+            configureMock("enableIsolation", Scanner::enableIsolation);
+        }
+        
+        @Override
+        public void disableIsolation() {
+            realScanner.disableIsolation();
+            configureMock("disableIsolation", Scanner::disableIsolation);
+        }
+        
+        @Override
+        public long getReadaheadThreshold() {
+            return realScanner.getReadaheadThreshold();
+        }
+        
+        @Override
+        public void setReadaheadThreshold(long batches) {
+            realScanner.setReadaheadThreshold(batches);
+            configureMock("setReadaheadThreshold", scanner -> scanner.setReadaheadThreshold(batches));
+        }
+    }
+    
+    /**
+     * Routes a {@link BatchScanner}
+     */
+    static class RoutedBatchScanner extends MockTableRouter<BatchScanner> implements BatchScanner {
+        RoutedBatchScanner(BatchScanner mockScanner, BatchScanner realScanner, MockTableCache.MockTable mockTable) {
+            super(mockScanner, realScanner, mockTable);
+        }
+        
+        @Override
+        public void setRanges(Collection<Range> ranges) {
+            realScanner.setRanges(ranges);
+            configureMock("setRanges", scanner -> scanner.setRanges(ranges));
+        }
+    }
+}
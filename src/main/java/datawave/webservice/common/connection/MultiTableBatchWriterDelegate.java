@@ -0,0 +1,105 @@
+package datawave.webservice.common.connection;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.MultiTableBatchWriter;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Mutation;
+
+/**
+ * A simple wrapper around a {@link MultiTableBatchWriter} whose per-table writers record their throughput and rejected mutations in {@link ConnectionMetrics}.
+ * Flushes are timed for all tables together, so they are recorded in {@link ConnectionMetrics#getMultiTableFlushes()} rather than per table.
+ */
+public class MultiTableBatchWriterDelegate implements MultiTableBatchWriter {
+    
+    protected final MultiTableBatchWriter delegate;
+    private final ConnectionMetrics metrics;
+    private final LongAdder flushes = new LongAdder();
+    
+    public MultiTableBatchWriterDelegate(MultiTableBatchWriter delegate, ConnectionMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+    
+    @Override
+    public BatchWriter getBatchWriter(String table) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+        // the per-table writers share the buffer of this writer, so they must not record flushes or observe blocking of their own
+        return new TableWriter(delegate.getBatchWriter(table), metrics.forTable(table));
+    }
+    
+    @Override
+    public void flush() throws MutationsRejectedException {
+        long start = System.nanoTime();
+        delegate.flush();
+        metrics.multiTableFlushed(System.nanoTime() - start);
+        flushes.increment();
+    }
+    
+    /**
+     * @return the number of times all tables have been flushed
+     */
+    public long getFlushCount() {
+        return flushes.sum();
+    }
+    
+    @Override
+    public void close() throws MutationsRejectedException {
+        if (delegate.isClosed()) {
+            delegate.close();
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            delegate.close();
+        } finally {
+            metrics.multiTableFlushed(System.nanoTime() - start);
+        }
+    }
+    
+    @Override
+    public boolean isClosed() {
+        return delegate.isClosed();
+    }
+    
+    private static class TableWriter implements BatchWriter {
+        private final BatchWriter delegate;
+        private final ConnectionMetrics.TableMetrics metrics;
+        
+        TableWriter(BatchWriter delegate, ConnectionMetrics.TableMetrics metrics) {
+            this.delegate = delegate;
+            this.metrics = metrics;
+        }
+        
+        @Override
+        public void addMutation(Mutation m) throws MutationsRejectedException {
+            try {
+                delegate.addMutation(m);
+            } catch (MutationsRejectedException e) {
+                metrics.rejected();
+                throw e;
+            }
+            metrics.mutationsAdded(1, m.numBytes());
+        }
+        
+        @Override
+        public void addMutations(Iterable<Mutation> iterable) throws MutationsRejectedException {
+            for (Mutation m : iterable) {
+                addMutation(m);
+            }
+        }
+        
+        @Override
+        public void flush() throws MutationsRejectedException {
+            delegate.flush();
+        }
+        
+        @Override
+        public void close() throws MutationsRejectedException {
+            delegate.close();
+        }
+    }
+}
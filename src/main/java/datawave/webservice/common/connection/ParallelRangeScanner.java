@@ -0,0 +1,401 @@
+package datawave.webservice.common.connection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import datawave.security.util.MinimizedAuthorizations;
+import datawave.security.util.ScannerHelper;
+
+/**
+ * Scans many ranges of a table concurrently, with one {@link Scanner} per range and at most a fixed number of ranges being scanned at once. Every scanner is
+ * created by {@link ScannerHelper#createScanner(AccumuloClient, String, Collection)}, so it carries the system visibility filters for all of the
+ * authorizations.
+ * <p>
+ * Results can be delivered in two ways:
+ * <ul>
+ * <li>{@link #scanInOrder(Collection)} returns the entries of each range in key order, one range after another in the order the ranges were given, while the
+ * following ranges are read ahead</li>
+ * <li>{@link #scanUnordered(Collection)} returns the entries of all ranges as they arrive, in batches of consecutive entries from one range</li>
+ * </ul>
+ * Memory is bounded in both modes: each range being scanned holds at most a few batches that the consumer has not taken yet.
+ */
+public class ParallelRangeScanner {
+    private static final Logger log = LoggerFactory.getLogger(ParallelRangeScanner.class);
+    
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_QUEUE_DEPTH = 2;
+    
+    private static final long OFFER_TIMEOUT_MS = 100;
+    
+    private final AccumuloClient client;
+    private final String tableName;
+    private final MinimizedAuthorizations authorizations;
+    private final int maxConcurrency;
+    private ExecutorService executor = null;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int queueDepth = DEFAULT_QUEUE_DEPTH;
+    private Consumer<? super Scanner> configurer = scanner -> {};
+    private final PrefetchingIterator.Stats stats = new PrefetchingIterator.Stats();
+    
+    /**
+     * @param client
+     *            the client to create scanners with
+     * @param tableName
+     *            the table to scan
+     * @param authorizations
+     *            the authorizations for each entity in the call chain, which must not be empty
+     * @param maxConcurrency
+     *            the maximum number of ranges to scan at once
+     */
+    public ParallelRangeScanner(AccumuloClient client, String tableName, Collection<Authorizations> authorizations, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive, was " + maxConcurrency);
+        }
+        this.client = client;
+        this.tableName = tableName;
+        this.authorizations = MinimizedAuthorizations.of(authorizations);
+        this.maxConcurrency = maxConcurrency;
+    }
+    
+    /**
+     * @param executor
+     *            the executor to scan on, or null for the shared, bounded pool of daemon threads of {@link PrefetchingIterator}. Concurrency is limited by
+     *            this scanner, so the executor need not be bounded.
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+    
+    /**
+     * @param batchSize
+     *            the number of entries handed from a scanning thread to the consumer at a time
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive, was " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+    
+    /**
+     * @param queueDepth
+     *            the number of batches per range being scanned that may wait for the consumer
+     */
+    public void setQueueDepth(int queueDepth) {
+        if (queueDepth < 1) {
+            throw new IllegalArgumentException("Queue depth must be positive, was " + queueDepth);
+        }
+        this.queueDepth = queueDepth;
+    }
+    
+    /**
+     * @param configurer
+     *            applied to each scanner after its range is set, e.g. to fetch columns or add scan iterators. Unordered scans apply it on their scanning
+     *            threads, so it must be thread safe.
+     */
+    public void setScannerConfigurer(Consumer<? super Scanner> configurer) {
+        this.configurer = configurer;
+    }
+    
+    /**
+     * @return the statistics of the batches handed to the consumer
+     */
+    public PrefetchingIterator.Stats getStats() {
+        return stats;
+    }
+    
+    /**
+     * Scan the ranges, returning the entries of each range in key order and the ranges in the order given
+     *
+     * @param ranges
+     *            the ranges to scan
+     * @return the entries, which must be closed if not read to the end
+     */
+    public Scan scanInOrder(Collection<Range> ranges) {
+        return new OrderedScan(ranges);
+    }
+    
+    /**
+     * Scan the ranges, returning the entries as they arrive from any range
+     *
+     * @param ranges
+     *            the ranges to scan
+     * @return the entries, which must be closed if not read to the end
+     */
+    public Scan scanUnordered(Collection<Range> ranges) {
+        return new UnorderedScan(ranges);
+    }
+    
+    private Scanner createScanner(Range range) {
+        Scanner scanner;
+        try {
+            scanner = ScannerHelper.createScanner(client, tableName, authorizations);
+        } catch (TableNotFoundException e) {
+            throw new IllegalStateException("Table " + tableName + " does not exist", e);
+        }
+        try {
+            scanner.setRange(range);
+            configurer.accept(scanner);
+        } catch (RuntimeException | Error e) {
+            scanner.close();
+            throw e;
+        }
+        return scanner;
+    }
+    
+    private ExecutorService executor() {
+        return executor == null ? PrefetchingIterator.defaultExecutor() : executor;
+    }
+    
+    /**
+     * The entries returned by a scan. Closing it stops all of its scanners.
+     */
+    public interface Scan extends Iterator<Map.Entry<Key,Value>>, AutoCloseable {
+        @Override
+        void close();
+    }
+    
+    /**
+     * Keeps a window of the next ranges open, each read ahead by its own {@link PrefetchingIterator}, and consumes them one at a time
+     */
+    private class OrderedScan implements Scan {
+        private final Iterator<Range> pending;
+        private final Deque<ScannerDelegate> window = new ArrayDeque<>();
+        private final Deque<Iterator<Map.Entry<Key,Value>>> iterators = new ArrayDeque<>();
+        private boolean closed = false;
+        
+        OrderedScan(Collection<Range> ranges) {
+            this.pending = new ArrayList<>(ranges).iterator();
+            open();
+        }
+        
+        private void open() {
+            try {
+                while (window.size() < maxConcurrency && pending.hasNext()) {
+                    Scanner created = createScanner(pending.next());
+                    ScannerDelegate scanner = (created instanceof ScannerDelegate) ? (ScannerDelegate) created : new ScannerDelegate(created);
+                    window.add(scanner);
+                    scanner.enablePrefetch(batchSize, queueDepth, executor());
+                    // start reading ahead now, not when the consumer reaches this range
+                    iterators.add(scanner.iterator());
+                }
+            } catch (RuntimeException | Error e) {
+                // nobody would close the scanners already opened
+                close();
+                throw e;
+            }
+        }
+        
+        @Override
+        public boolean hasNext() {
+            if (closed) {
+                throw new IllegalStateException("Scan has been closed");
+            }
+            while (!window.isEmpty()) {
+                if (iterators.peek().hasNext()) {
+                    return true;
+                }
+                iterators.poll();
+                window.poll().close();
+                open();
+            }
+            return false;
+        }
+        
+        @Override
+        public Map.Entry<Key,Value> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return iterators.peek().next();
+        }
+        
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                window.forEach(ScannerDelegate::close);
+                window.clear();
+                iterators.clear();
+            }
+        }
+    }
+    
+    /**
+     * Runs a fixed number of tasks that take ranges from a shared queue and hand batches to the consumer through another
+     */
+    private class UnorderedScan implements Scan {
+        private final Queue<Range> pending;
+        private final BlockingQueue<Object> batches;
+        private final List<Future<?>> tasks = new ArrayList<>();
+        private volatile boolean closed = false;
+        private int running;
+        private Iterator<Map.Entry<Key,Value>> batch = Collections.emptyIterator();
+        
+        UnorderedScan(Collection<Range> ranges) {
+            this.pending = new ConcurrentLinkedQueue<>(ranges);
+            this.running = Math.min(maxConcurrency, ranges.size());
+            this.batches = new ArrayBlockingQueue<>(Math.max(1, running * queueDepth));
+            for (int i = 0; i < running; i++) {
+                tasks.add(executor().submit(this::scan));
+            }
+        }
+        
+        private void scan() {
+            Object last = Done.INSTANCE;
+            try {
+                Range range;
+                while (!closed && (range = pending.poll()) != null) {
+                    Scanner scanner = createScanner(range);
+                    try {
+                        List<Map.Entry<Key,Value>> entries = new ArrayList<>(batchSize);
+                        for (Map.Entry<Key,Value> entry : scanner) {
+                            entries.add(entry);
+                            if (entries.size() == batchSize) {
+                                offer(entries);
+                                entries = new ArrayList<>(batchSize);
+                            }
+                        }
+                        if (!entries.isEmpty()) {
+                            offer(entries);
+                        }
+                    } finally {
+                        scanner.close();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                last = new Done(t);
+            } finally {
+                done(last);
+            }
+        }
+        
+        /**
+         * Tell the consumer that this task has finished, even if it was interrupted, or the consumer would wait for it forever
+         */
+        private void done(Object last) {
+            boolean interrupted = Thread.interrupted();
+            try {
+                offer(last);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        
+        private void offer(Object item) throws InterruptedException {
+            while (!closed) {
+                if (batches.offer(item, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    if (item instanceof List) {
+                        stats.batches.increment();
+                    }
+                    return;
+                }
+            }
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public boolean hasNext() {
+            if (closed) {
+                throw new IllegalStateException("Scan has been closed");
+            }
+            while (!batch.hasNext() && running > 0) {
+                Object item = batches.poll();
+                if (item == null) {
+                    long start = System.nanoTime();
+                    try {
+                        while ((item = batches.poll(OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) == null) {
+                            if (tasks.stream().allMatch(Future::isDone) && batches.isEmpty()) {
+                                close();
+                                throw new IllegalStateException("Scanning tasks of " + tableName + " stopped without finishing");
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for the next batch", e);
+                    } finally {
+                        stats.stalls.increment();
+                        stats.stallNanos.add(System.nanoTime() - start);
+                    }
+                }
+                if (item instanceof Done) {
+                    running--;
+                    Throwable failure = ((Done) item).failure;
+                    if (failure != null) {
+                        close();
+                        if (failure instanceof RuntimeException) {
+                            throw (RuntimeException) failure;
+                        } else if (failure instanceof Error) {
+                            throw (Error) failure;
+                        }
+                        throw new IllegalStateException(failure);
+                    }
+                } else {
+                    batch = ((List<Map.Entry<Key,Value>>) item).iterator();
+                }
+            }
+            return batch.hasNext();
+        }
+        
+        @Override
+        public Map.Entry<Key,Value> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return batch.next();
+        }
+        
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                tasks.forEach(task -> task.cancel(true));
+                batches.clear();
+                if (log.isTraceEnabled()) {
+                    log.trace("Closed unordered scan of " + tableName + ", " + stats);
+                }
+            }
+        }
+    }
+    
+    private static class Done {
+        private static final Done INSTANCE = new Done(null);
+        
+        private final Throwable failure;
+        
+        Done(Throwable failure) {
+            this.failure = failure;
+        }
+    }
+}
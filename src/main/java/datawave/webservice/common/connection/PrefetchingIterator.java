@@ -0,0 +1,332 @@
+package datawave.webservice.common.connection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * An iterator that reads ahead of its consumer. A background task drains the source iterator into batches of entries and puts them on a bounded queue, so the
+ * fetching of the next batches from the tablet servers overlaps with the processing of the current one. When the queue is full the task waits for the consumer
+ * (backpressure), a failure of the source is rethrown to the consumer once the batches read before it have been consumed, and {@link #close()} stops the task.
+ * <p>
+ * An iterator that is abandoned without being closed would keep a thread waiting for room on the queue, so the task gives up once the consumer has not taken
+ * a batch for {@link #IDLE_TIMEOUT_MS}; a consumer that comes back after that gets an {@link IllegalStateException} once it has consumed the queued batches.
+ * <p>
+ * Unless an executor is given, the tasks share a pool of at most {@link #DEFAULT_MAX_THREADS} daemon threads (see {@link #MAX_THREADS_PROPERTY}). When every
+ * thread is busy a new task waits for one to free up, and its consumer waits with it, so iterators that are not closed hold on to a thread until they are
+ * idle for {@link #IDLE_TIMEOUT_MS}.
+ * <p>
+ * Like the iterators of a scanner, this iterator must only be used by one thread at a time.
+ *
+ * @see ScannerBaseDelegate#enablePrefetch(int, int)
+ */
+public class PrefetchingIterator implements Iterator<Map.Entry<Key,Value>>, AutoCloseable {
+    /**
+     * The system property that bounds the number of threads in the shared pool that reads ahead when no executor is given
+     */
+    public static final String MAX_THREADS_PROPERTY = "datawave.scanner.prefetch.maxThreads";
+    public static final int DEFAULT_MAX_THREADS = 32;
+    
+    private static final Logger log = LoggerFactory.getLogger(PrefetchingIterator.class);
+    
+    private static final long OFFER_TIMEOUT_MS = 100;
+    // how long close() waits for the task to stop reading from the source
+    static final long CLOSE_TIMEOUT_MS = 1000;
+    static final long IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final Object END = new Object();
+    
+    private static final ExecutorService DEFAULT_EXECUTOR = newDefaultExecutor(Integer.getInteger(MAX_THREADS_PROPERTY, DEFAULT_MAX_THREADS));
+    
+    private final Iterator<Map.Entry<Key,Value>> source;
+    private final int batchSize;
+    private final BlockingQueue<Object> queue;
+    private final Stats stats;
+    private final Future<?> task;
+    private final long idleTimeoutMs;
+    // claimed by whichever of the task and close() comes first, so close() only waits for a task that has started
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    
+    private volatile boolean closed = false;
+    private volatile boolean idle = false;
+    private Iterator<Map.Entry<Key,Value>> batch = Collections.emptyIterator();
+    private boolean done = false;
+    
+    /**
+     * @param source
+     *            the iterator to read ahead of
+     * @param batchSize
+     *            the number of entries in each batch
+     * @param queueDepth
+     *            the number of batches that may be read ahead
+     * @param executor
+     *            the executor to run the background task on, or null for the shared, bounded pool of daemon threads
+     * @param stats
+     *            the statistics to update
+     */
+    public PrefetchingIterator(Iterator<Map.Entry<Key,Value>> source, int batchSize, int queueDepth, ExecutorService executor, Stats stats) {
+        this(source, batchSize, queueDepth, executor, stats, IDLE_TIMEOUT_MS);
+    }
+    
+    PrefetchingIterator(Iterator<Map.Entry<Key,Value>> source, int batchSize, int queueDepth, ExecutorService executor, Stats stats, long idleTimeoutMs) {
+        if (batchSize < 1 || queueDepth < 1) {
+            throw new IllegalArgumentException("Batch size and queue depth must be positive, were " + batchSize + " and " + queueDepth);
+        }
+        this.source = source;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueDepth);
+        this.stats = stats;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.task = (executor == null ? DEFAULT_EXECUTOR : executor).submit(this::fill);
+    }
+    
+    /**
+     * @return the shared pool of daemon threads that reads ahead when no executor is given
+     */
+    static ExecutorService defaultExecutor() {
+        return DEFAULT_EXECUTOR;
+    }
+    
+    static ThreadPoolExecutor newDefaultExecutor(int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException(MAX_THREADS_PROPERTY + " must be positive, was " + maxThreads);
+        }
+        // tasks beyond maxThreads wait on the queue rather than starting more threads, and idle threads time out
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                        new ThreadFactoryBuilder().setNameFormat("scanner-prefetch-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+    
+    private void fill() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        List<Map.Entry<Key,Value>> entries = null;
+        try {
+            while (!closed) {
+                entries = new ArrayList<>(batchSize);
+                while (!closed && entries.size() < batchSize && source.hasNext()) {
+                    entries.add(source.next());
+                }
+                boolean end = entries.size() < batchSize;
+                if (!entries.isEmpty()) {
+                    if (!offer(entries)) {
+                        return;
+                    }
+                    stats.batches.increment();
+                }
+                entries = null;
+                if (end) {
+                    offer(END);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            try {
+                // hand over the entries read before the failure first
+                if (entries != null && !entries.isEmpty() && offer(entries)) {
+                    stats.batches.increment();
+                }
+                offer(new Failure(t));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            stopped.countDown();
+        }
+    }
+    
+    private boolean offer(Object item) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+        while (!closed && !idle) {
+            if (queue.offer(item, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                idle = true;
+                log.warn("Stopped reading ahead of a consumer that has not taken a batch for " + idleTimeoutMs + "ms, it may have been abandoned");
+            }
+        }
+        return false;
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean hasNext() {
+        while (!batch.hasNext() && !done) {
+            if (closed) {
+                throw new IllegalStateException("Iterator has been closed");
+            }
+            Object item = queue.poll();
+            if (item == null) {
+                long start = System.nanoTime();
+                try {
+                    while ((item = queue.poll(OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) == null) {
+                        if (idle && queue.isEmpty()) {
+                            throw new IllegalStateException("Stopped reading ahead after the iterator was idle for " + idleTimeoutMs + "ms");
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the next batch", e);
+                } finally {
+                    stats.stalls.increment();
+                    stats.stallNanos.add(System.nanoTime() - start);
+                }
+            }
+            if (item == END) {
+                done = true;
+            } else if (item instanceof Failure) {
+                done = true;
+                Throwable cause = ((Failure) item).cause;
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            } else {
+                batch = ((List<Map.Entry<Key,Value>>) item).iterator();
+            }
+        }
+        return batch.hasNext();
+    }
+    
+    @Override
+    public Map.Entry<Key,Value> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return batch.next();
+    }
+    
+    /**
+     * @return the number of batches that have been read ahead and are waiting to be consumed
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+    
+    /**
+     * @return true if this iterator has been closed, or has stopped reading ahead because it reached the end of the source or a failure
+     */
+    public boolean isFinished() {
+        return closed || task.isDone();
+    }
+    
+    /**
+     * Stop reading ahead, discard the batches that have not been consumed and wait up to {@link #CLOSE_TIMEOUT_MS} for the task to stop reading from the source
+     */
+    @Override
+    public void close() {
+        stop();
+        awaitStopped(CLOSE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stop reading ahead and discard the batches that have not been consumed, without waiting for the task
+     */
+    void stop() {
+        if (!closed) {
+            closed = true;
+            task.cancel(true);
+            queue.clear();
+            if (log.isTraceEnabled()) {
+                log.trace("Closed prefetching iterator, " + stats);
+            }
+        }
+    }
+    
+    /**
+     * Wait for the task to stop reading from the source, once it has been {@link #stop() stopped}
+     *
+     * @param timeout
+     *            the maximum time to wait
+     * @param unit
+     *            the unit of {@code timeout}
+     * @return true if the task is no longer reading from the source
+     */
+    boolean awaitStopped(long timeout, TimeUnit unit) {
+        if (started.compareAndSet(false, true)) {
+            // the task never started and now never will
+            return true;
+        }
+        try {
+            if (stopped.await(timeout, unit)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.warn("Prefetching task is still reading from its source after " + unit.toMillis(timeout) + "ms");
+        return false;
+    }
+    
+    private static class Failure {
+        private final Throwable cause;
+        
+        Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+    
+    /**
+     * Statistics for the prefetching iterators of a scanner
+     */
+    public static class Stats {
+        final LongAdder batches = new LongAdder();
+        final LongAdder stalls = new LongAdder();
+        final LongAdder stallNanos = new LongAdder();
+        
+        /**
+         * @return the number of batches that have been read ahead
+         */
+        public long getBatchCount() {
+            return batches.sum();
+        }
+        
+        /**
+         * @return the number of times the consumer found the queue empty and had to wait
+         */
+        public long getStallCount() {
+            return stalls.sum();
+        }
+        
+        /**
+         * @param unit
+         *            the unit of the result
+         * @return the total time the consumer spent waiting for batches
+         */
+        public long getStallTime(TimeUnit unit) {
+            return unit.convert(stallNanos.sum(), TimeUnit.NANOSECONDS);
+        }
+        
+        @Override
+        public String toString() {
+            return "batches: " + getBatchCount() + ", stalls: " + getStallCount() + ", stall time: " + getStallTime(TimeUnit.MILLISECONDS) + "ms";
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package datawave.webservice.common.connection;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.accumulo.core.client.AccumuloException;
+import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.ConditionalWriter;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.MultiTableBatchWriter;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.client.ScannerBase.ConsistencyLevel;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Column;
+import org.apache.accumulo.core.data.ConditionalMutation;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Caches the results of scans of selected tables, so that identical scans repeated shortly after one another are served from memory. Scans are identical if
+ * they have the same {@link ScanKey}: the table, ranges, fetched columns, scan iterators (including the system visibility filters), classloader context,
+ * authorizations and consistency level.
+ * <p>
+ * Only scans that are read to the end are cached, and only if their results are no larger than {@link #getMaxResultBytes()}. Results are evicted by size once
+ * the cache holds {@link #getMaxBytes()} bytes, and expire after the time to live, which bounds how stale a cached result can be: writes to a table are not
+ * seen until then unless the table is {@link #invalidate(String) invalidated}. The writers, conditional writers and deleters that
+ * {@link WrappedAccumuloClient} creates invalidate the tables they write to as they write and when they are closed, so only writes from other clients can be
+ * missed. Nor is the result of a scan that was running while its table was invalidated cached, as it may predate the write.
+ * <p>
+ * Keys and values are mutable, so the cache holds its own copies of them and every scan that is served a cached result gets copies of its own.
+ *
+ * @see WrappedAccumuloClient#setScanResultCache(ScanResultCache)
+ */
+public class ScanResultCache {
+    public static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+    public static final long DEFAULT_TTL_MS = TimeUnit.SECONDS.toMillis(30);
+    
+    // the approximate memory used by an entry beyond its key and value data
+    private static final int ENTRY_OVERHEAD_BYTES = 128;
+    
+    private final long maxBytes;
+    private final long maxResultBytes;
+    private final Set<String> tables = ConcurrentHashMap.newKeySet();
+    // incremented whenever a table is invalidated, so that scans started before then do not cache their results
+    private final Map<String,AtomicLong> generations = new ConcurrentHashMap<>();
+    private final Cache<ScanKey,List<Map.Entry<Key,Value>>> cache;
+    
+    public ScanResultCache() {
+        this(DEFAULT_MAX_BYTES, DEFAULT_TTL_MS, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * @param maxBytes
+     *            the approximate size of all cached results, beyond which the least recently used are evicted
+     * @param ttl
+     *            how long a result is cached
+     * @param unit
+     *            the unit of {@code ttl}
+     */
+    public ScanResultCache(long maxBytes, long ttl, TimeUnit unit) {
+        if (maxBytes < 1 || ttl < 1) {
+            throw new IllegalArgumentException("Max bytes and time to live must be positive, were " + maxBytes + " and " + ttl);
+        }
+        this.maxBytes = maxBytes;
+        // the cache is split into segments, each evicting on its own share of the maximum weight
+        this.maxResultBytes = maxBytes / 16;
+        this.cache = CacheBuilder.newBuilder().maximumWeight(maxBytes).weigher(ScanResultCache::weigh).expireAfterWrite(ttl, unit).recordStats().build();
+    }
+    
+    /**
+     * Cache the scans of a table
+     *
+     * @param tableName
+     *            the table name
+     */
+    public void enable(String tableName) {
+        tables.add(tableName);
+    }
+    
+    /**
+     * Stop caching the scans of a table, and discard its cached results
+     *
+     * @param tableName
+     *            the table name
+     */
+    public void disable(String tableName) {
+        tables.remove(tableName);
+        invalidate(tableName);
+    }
+    
+    public boolean isEnabled(String tableName) {
+        return tables.contains(tableName);
+    }
+    
+    public Set<String> getTables() {
+        return Collections.unmodifiableSet(tables);
+    }
+    
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+    
+    /**
+     * @return the size of the largest result that is cached
+     */
+    public long getMaxResultBytes() {
+        return maxResultBytes;
+    }
+    
+    /**
+     * @return the hits, misses and evictions of the cache across all tables
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+    
+    /**
+     * @return the number of cached results
+     */
+    public long size() {
+        return cache.size();
+    }
+    
+    /**
+     * Discard the cached results of a table, e.g. after writing to it
+     *
+     * @param tableName
+     *            the table name
+     */
+    public void invalidate(String tableName) {
+        counter(tableName).incrementAndGet();
+        cache.asMap().keySet().removeIf(key -> key.tableName.equals(tableName));
+    }
+    
+    public void invalidateAll() {
+        generations.values().forEach(AtomicLong::incrementAndGet);
+        cache.invalidateAll();
+    }
+    
+    /**
+     * Wrap a writer so that it invalidates the cached results of its table whenever it is flushed or closed
+     *
+     * @param writer
+     *            the writer
+     * @param tableName
+     *            the table being written
+     * @return the wrapped writer, or {@code writer} itself if the scans of the table are not cached
+     */
+    BatchWriter invalidating(BatchWriter writer, String tableName) {
+        return isEnabled(tableName) ? new InvalidatingWriter(writer, tableName) : writer;
+    }
+    
+    /**
+     * Wrap a multi-table writer so that it invalidates the cached results of the tables it has written whenever it is flushed or closed
+     *
+     * @param writer
+     *            the writer
+     * @return the wrapped writer
+     */
+    MultiTableBatchWriter invalidating(MultiTableBatchWriter writer) {
+        return new InvalidatingMultiTableWriter(writer);
+    }
+    
+    /**
+     * Wrap a conditional writer so that it invalidates the cached results of its table as it writes and when it is closed
+     *
+     * @param writer
+     *            the writer
+     * @param tableName
+     *            the table being written
+     * @return the wrapped writer, or {@code writer} itself if the scans of the table are not cached
+     */
+    ConditionalWriter invalidating(ConditionalWriter writer, String tableName) {
+        return isEnabled(tableName) ? new InvalidatingConditionalWriter(writer, tableName) : writer;
+    }
+    
+    /**
+     * @param key
+     *            the scan
+     * @return an iterator over the cached result of the scan, or null
+     */
+    CachedIterator get(ScanKey key) {
+        List<Map.Entry<Key,Value>> entries = cache.getIfPresent(key);
+        return (entries == null) ? null : new CachedIterator(entries.iterator());
+    }
+    
+    /**
+     * @param tableName
+     *            the table name
+     * @return the number of times the table has been invalidated, which a scan captures before it starts so that it can be {@link #populate populated}
+     */
+    long generation(String tableName) {
+        return counter(tableName).get();
+    }
+    
+    /**
+     * Wrap the iterator of a scan that missed the cache, so that its result is cached once it has been read to the end, unless its table was invalidated
+     * since the scan started
+     *
+     * @param key
+     *            the scan
+     * @param generation
+     *            the {@link #generation(String) generation} of the table before the scan started
+     * @param source
+     *            the iterator of the scan
+     * @return the wrapped iterator
+     */
+    Iterator<Map.Entry<Key,Value>> populate(ScanKey key, long generation, Iterator<Map.Entry<Key,Value>> source) {
+        return new PopulatingIterator(key, generation, source);
+    }
+    
+    private AtomicLong counter(String tableName) {
+        return generations.computeIfAbsent(tableName, t -> new AtomicLong());
+    }
+    
+    private static int weigh(ScanKey key, List<Map.Entry<Key,Value>> entries) {
+        long bytes = ENTRY_OVERHEAD_BYTES;
+        for (Map.Entry<Key,Value> entry : entries) {
+            bytes += entryBytes(entry);
+        }
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+    
+    private static Map.Entry<Key,Value> copy(Map.Entry<Key,Value> entry) {
+        return new AbstractMap.SimpleImmutableEntry<>(new Key(entry.getKey()), new Value(entry.getValue()));
+    }
+    
+    private static long entryBytes(Map.Entry<Key,Value> entry) {
+        return ENTRY_OVERHEAD_BYTES + entry.getKey().getSize() + entry.getValue().getSize();
+    }
+    
+    /**
+     * An iterator over a cached result
+     */
+    static final class CachedIterator implements Iterator<Map.Entry<Key,Value>> {
+        private final Iterator<Map.Entry<Key,Value>> entries;
+        
+        CachedIterator(Iterator<Map.Entry<Key,Value>> entries) {
+            this.entries = entries;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            return entries.hasNext();
+        }
+        
+        @Override
+        public Map.Entry<Key,Value> next() {
+            return copy(entries.next());
+        }
+    }
+    
+    private class PopulatingIterator implements Iterator<Map.Entry<Key,Value>> {
+        private final ScanKey key;
+        private final Iterator<Map.Entry<Key,Value>> source;
+        private final AtomicLong generation;
+        private final long startGeneration;
+        private List<Map.Entry<Key,Value>> entries = new ArrayList<>();
+        private long bytes = 0;
+        
+        PopulatingIterator(ScanKey key, long startGeneration, Iterator<Map.Entry<Key,Value>> source) {
+            this.key = key;
+            this.source = source;
+            this.generation = counter(key.tableName);
+            this.startGeneration = startGeneration;
+        }
+        
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = source.hasNext();
+            if (!hasNext && entries != null) {
+                // the table may have been written since the scan started, in which case its result may be stale
+                if (generation.get() == startGeneration) {
+                    cache.put(key, Collections.unmodifiableList(entries));
+                    // unless it was invalidated between the check and the put, which may not have seen the new result
+                    if (generation.get() != startGeneration) {
+                        cache.invalidate(key);
+                    }
+                }
+                entries = null;
+            }
+            return hasNext;
+        }
+        
+        @Override
+        public Map.Entry<Key,Value> next() {
+            Map.Entry<Key,Value> entry = source.next();
+            if (entries != null) {
+                bytes += entryBytes(entry);
+                if (bytes > maxResultBytes) {
+                    // too large to cache, so stop collecting
+                    entries = null;
+                } else {
+                    // the scan may modify the entries it is returned
+                    entries.add(copy(entry));
+                }
+            }
+            return entry;
+        }
+    }
+    
+    private class InvalidatingWriter implements BatchWriter {
+        private final BatchWriter delegate;
+        private final String tableName;
+        
+        InvalidatingWriter(BatchWriter delegate, String tableName) {
+            this.delegate = delegate;
+            this.tableName = tableName;
+        }
+        
+        @Override
+        public void addMutation(Mutation m) throws MutationsRejectedException {
+            delegate.addMutation(m);
+        }
+        
+        @Override
+        public void addMutations(Iterable<Mutation> iterable) throws MutationsRejectedException {
+            delegate.addMutations(iterable);
+        }
+        
+        @Override
+        public void flush() throws MutationsRejectedException {
+            try {
+                delegate.flush();
+            } finally {
+                // also when mutations were rejected, as the others have been written
+                invalidate(tableName);
+            }
+        }
+        
+        @Override
+        public void close() throws MutationsRejectedException {
+            try {
+                delegate.close();
+            } finally {
+                invalidate(tableName);
+            }
+        }
+    }
+    
+    private class InvalidatingConditionalWriter implements ConditionalWriter {
+        private final ConditionalWriter delegate;
+        private final String tableName;
+        
+        InvalidatingConditionalWriter(ConditionalWriter delegate, String tableName) {
+            this.delegate = delegate;
+            this.tableName = tableName;
+        }
+        
+        @Override
+        public Iterator<Result> write(Iterator<ConditionalMutation> mutations) {
+            // the mutations are written as their results are read, so invalidate both before and once they have all been read
+            invalidate(tableName);
+            Iterator<Result> results = delegate.write(mutations);
+            return new Iterator<Result>() {
+                @Override
+                public boolean hasNext() {
+                    boolean hasNext = results.hasNext();
+                    if (!hasNext) {
+                        invalidate(tableName);
+                    }
+                    return hasNext;
+                }
+                
+                @Override
+                public Result next() {
+                    return results.next();
+                }
+            };
+        }
+        
+        @Override
+        public Result write(ConditionalMutation mutation) {
+            try {
+                return delegate.write(mutation);
+            } finally {
+                invalidate(tableName);
+            }
+        }
+        
+        @Override
+        public void close() {
+            try {
+                delegate.close();
+            } finally {
+                invalidate(tableName);
+            }
+        }
+    }
+    
+    private class InvalidatingMultiTableWriter implements MultiTableBatchWriter {
+        private final MultiTableBatchWriter delegate;
+        // the tables written whose scans are cached
+        private final Set<String> tableNames = ConcurrentHashMap.newKeySet();
+        
+        InvalidatingMultiTableWriter(MultiTableBatchWriter delegate) {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public BatchWriter getBatchWriter(String table) throws AccumuloException, AccumuloSecurityException, TableNotFoundException {
+            BatchWriter writer = delegate.getBatchWriter(table);
+            if (isEnabled(table)) {
+                tableNames.add(table);
+            }
+            return writer;
+        }
+        
+        @Override
+        public void flush() throws MutationsRejectedException {
+            try {
+                delegate.flush();
+            } finally {
+                tableNames.forEach(ScanResultCache.this::invalidate);
+            }
+        }
+        
+        @Override
+        public void close() throws MutationsRejectedException {
+            try {
+                delegate.close();
+            } finally {
+                tableNames.forEach(ScanResultCache.this::invalidate);
+            }
+        }
+        
+        @Override
+        public boolean isClosed() {
+            return delegate.isClosed();
+        }
+    }
+    
+    /**
+     * Everything that decides the result of a scan
+     */
+    static final class ScanKey {
+        private final String tableName;
+        private final List<Range> ranges;
+        private final List<Column> columns;
+        private final List<IteratorSetting> iterators;
+        private final String context;
+        private final Authorizations authorizations;
+        private final ConsistencyLevel consistencyLevel;
+        private final int hashCode;
+        
+        /**
+         * @param tableName
+         *            the table name
+         * @param ranges
+         *            the ranges, in the order they are returned in
+         * @param columns
+         *            the fetched columns, in a consistent order
+         * @param iterators
+         *            the scan iterators
+         * @param context
+         *            the classloader context, or null
+         * @param authorizations
+         *            the authorizations
+         * @param consistencyLevel
+         *            the consistency level, as an eventually consistent scan may miss recent writes that an immediate one sees
+         */
+        ScanKey(String tableName, Collection<Range> ranges, Collection<Column> columns, Collection<IteratorSetting> iterators, String context,
+                        Authorizations authorizations, ConsistencyLevel consistencyLevel) {
+            this.tableName = tableName;
+            this.ranges = new ArrayList<>(ranges);
+            this.columns = new ArrayList<>(columns);
+            this.iterators = new ArrayList<>(iterators);
+            // the order iterators were added in does not matter, only their priorities
+            this.iterators.sort((a, b) -> a.getPriority() != b.getPriority() ? Integer.compare(a.getPriority(), b.getPriority())
+                            : a.getName().compareTo(b.getName()));
+            this.context = context;
+            this.authorizations = authorizations;
+            this.consistencyLevel = consistencyLevel;
+            this.hashCode = Objects.hash(tableName, this.ranges, this.columns, this.iterators, context, authorizations, consistencyLevel);
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ScanKey)) {
+                return false;
+            }
+            ScanKey other = (ScanKey) o;
+            return hashCode == other.hashCode && tableName.equals(other.tableName) && ranges.equals(other.ranges) && columns.equals(other.columns)
+                            && iterators.equals(other.iterators) && Objects.equals(context, other.context) && authorizations.equals(other.authorizations)
+                            && consistencyLevel == other.consistencyLevel;
+        }
+        
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+        
+        @Override
+        public String toString() {
+            return tableName + " " + ranges + " columns: " + columns + " iterators: " + iterators + " auths: " + authorizations + " consistency: "
+                            + consistencyLevel;
+        }
+    }
+}
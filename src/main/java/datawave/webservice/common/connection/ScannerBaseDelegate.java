@@ -1,8 +1,11 @@
 package datawave.webservice.common.connection;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.accumulo.core.client.IteratorSetting;
@@ -11,6 +14,7 @@ import org.apache.accumulo.core.client.ScannerBase;
 import org.apache.accumulo.core.client.sample.SamplerConfiguration;
 import org.apache.accumulo.core.clientImpl.ScannerOptions;
 import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.dataImpl.thrift.IterInfo;
 import org.apache.accumulo.core.security.Authorizations;
@@ -27,14 +31,153 @@ import com.google.common.collect.Lists;
  */
 public class ScannerBaseDelegate implements ScannerBase {
     private static final Logger log = LoggerFactory.getLogger(ScannerBaseDelegate.class);
-    private static final String SYSTEM_ITERATOR_NAME_PREFIX = "sys_";
+    public static final String SYSTEM_ITERATOR_NAME_PREFIX = "sys_";
     
     protected final ScannerBase delegate;
     
+    private int prefetchBatchSize = 0;
+    private int prefetchQueueDepth = 0;
+    private ExecutorService prefetchExecutor = null;
+    private final PrefetchingIterator.Stats prefetchStats = new PrefetchingIterator.Stats();
+    private final List<PrefetchingIterator> prefetchers = new ArrayList<>();
+    private ConnectionMetrics.TableMetrics metrics = null;
+    // whether the scanner has been counted as a mock or a real one, which a routed scanner only is when first read
+    private boolean routeCounted = false;
+    private ScanResultCache resultCache = null;
+    private String resultCacheTable = null;
+    private boolean closed = false;
+    
     public ScannerBaseDelegate(ScannerBase delegate) {
         this.delegate = delegate;
     }
     
+    /**
+     * Record this scanner, and the entries returned by its iterators, in the metrics of its table
+     *
+     * @param metrics
+     *            the metrics of the table being scanned
+     * @param mock
+     *            whether the scanner reads from the mock instance
+     */
+    public void setMetrics(ConnectionMetrics.TableMetrics metrics, boolean mock) {
+        if (this.metrics == null && metrics != null) {
+            this.metrics = metrics;
+            if (delegate instanceof MockTableRouter) {
+                metrics.scannerCreated();
+            } else {
+                metrics.scannerCreated(mock);
+                routeCounted = true;
+            }
+        }
+    }
+    
+    /**
+     * @return true if the scan, as configured so far, is read from the mock instance by a scanner that routes between the mock and the real instance
+     */
+    protected boolean readsFromMock() {
+        return (delegate instanceof MockTableRouter) && ((MockTableRouter<?>) delegate).readsFromMock();
+    }
+    
+    /**
+     * Serve the scans of this scanner from a cache when possible, and cache the scans read to the end, see {@link ScanResultCache}
+     *
+     * @param cache
+     *            the cache, or null to stop caching
+     * @param tableName
+     *            the table being scanned
+     */
+    public void setResultCache(ScanResultCache cache, String tableName) {
+        this.resultCache = cache;
+        this.resultCacheTable = tableName;
+    }
+    
+    /**
+     * Discard the cached scans of the table being scanned, e.g. after deleting from it
+     */
+    protected void invalidateResultCache() {
+        if (resultCache != null) {
+            resultCache.invalidate(resultCacheTable);
+        }
+    }
+    
+    /**
+     * @return the ranges being scanned, or null if they are not known, in which case scans are not cached
+     */
+    protected Collection<Range> getScanRanges() {
+        return null;
+    }
+    
+    /**
+     * @return the key of the current scan in the result cache, or null if it cannot be cached
+     */
+    private ScanResultCache.ScanKey getScanKey() {
+        Collection<Range> ranges = getScanRanges();
+        // sampling changes the result in ways the key does not capture
+        if (ranges == null || !(delegate instanceof ScannerOptions) || delegate.getSamplerConfiguration() != null) {
+            return null;
+        }
+        ScannerOptions options = (ScannerOptions) delegate;
+        return new ScanResultCache.ScanKey(resultCacheTable, ranges, options.getFetchedColumns(), new ScannerOptionsHelper(options).getIterators(),
+                        delegate.getClassLoaderContext(), delegate.getAuthorizations(), delegate.getConsistencyLevel());
+    }
+    
+    /**
+     * Have {@link #iterator()} read ahead of its consumer on a shared, bounded pool of daemon threads, see {@link PrefetchingIterator}
+     *
+     * @param batchSize
+     *            the number of entries in each batch that is read ahead
+     * @param queueDepth
+     *            the number of batches that may be read ahead
+     */
+    public void enablePrefetch(int batchSize, int queueDepth) {
+        enablePrefetch(batchSize, queueDepth, null);
+    }
+    
+    /**
+     * Have {@link #iterator()} read ahead of its consumer, see {@link PrefetchingIterator}
+     *
+     * @param batchSize
+     *            the number of entries in each batch that is read ahead
+     * @param queueDepth
+     *            the number of batches that may be read ahead
+     * @param executor
+     *            the executor to read ahead on, or null for a shared, bounded pool of daemon threads
+     */
+    public void enablePrefetch(int batchSize, int queueDepth, ExecutorService executor) {
+        if (batchSize < 1 || queueDepth < 1) {
+            throw new IllegalArgumentException("Batch size and queue depth must be positive, were " + batchSize + " and " + queueDepth);
+        }
+        this.prefetchBatchSize = batchSize;
+        this.prefetchQueueDepth = queueDepth;
+        this.prefetchExecutor = executor;
+    }
+    
+    public void disablePrefetch() {
+        this.prefetchBatchSize = 0;
+        this.prefetchQueueDepth = 0;
+        this.prefetchExecutor = null;
+    }
+    
+    public boolean isPrefetchEnabled() {
+        return prefetchQueueDepth > 0;
+    }
+    
+    /**
+     * @return the statistics of the prefetching iterators returned by {@link #iterator()}
+     */
+    public PrefetchingIterator.Stats getPrefetchStats() {
+        return prefetchStats;
+    }
+    
+    /**
+     * @return the number of batches read ahead and waiting to be consumed, across the open prefetching iterators
+     */
+    public int getPrefetchQueueDepth() {
+        synchronized (prefetchers) {
+            return prefetchers.stream().mapToInt(PrefetchingIterator::getQueueDepth).sum();
+        }
+    }
+    
     @Override
     public ConsistencyLevel getConsistencyLevel() {
         return this.delegate.getConsistencyLevel();
@@ -159,9 +302,57 @@ public class ScannerBaseDelegate implements ScannerBase {
         delegate.clearScanIterators();
     }
     
+    /**
+     * Wrap the iterator of the underlying scanner before it is metered, cached or read ahead of, so that the wrapper sees the scan as the tablet servers
+     * deliver it. Not called for scans served from the result cache.
+     *
+     * @param source
+     *            the iterator of the underlying scanner
+     * @return the iterator to read the scan from, {@code source} unless overridden
+     */
+    protected Iterator<Map.Entry<Key,Value>> observe(Iterator<Map.Entry<Key,Value>> source) {
+        return source;
+    }
+    
     @Override
     public Iterator<Map.Entry<Key,Value>> iterator() {
-        return delegate.iterator();
+        boolean fromMock = readsFromMock();
+        if (metrics != null && !routeCounted) {
+            metrics.scannerRouted(fromMock);
+            routeCounted = true;
+        }
+        // the mock instance is in memory already
+        ScanResultCache.ScanKey cacheKey = (resultCache == null || fromMock) ? null : getScanKey();
+        if (cacheKey != null) {
+            Iterator<Map.Entry<Key,Value>> cached = resultCache.get(cacheKey);
+            if (metrics != null) {
+                metrics.cacheAccessed(cached != null);
+            }
+            if (cached != null) {
+                if (log.isTraceEnabled()) {
+                    log.trace("Serving cached result of " + cacheKey);
+                }
+                return cached;
+            }
+        }
+        // captured before the scan starts, so that a write to the table while it runs keeps its result out of the cache
+        long generation = (cacheKey == null) ? 0 : resultCache.generation(resultCacheTable);
+        Iterator<Map.Entry<Key,Value>> iterator = observe(delegate.iterator());
+        if (metrics != null) {
+            iterator = metrics.meter(iterator);
+        }
+        if (cacheKey != null) {
+            iterator = resultCache.populate(cacheKey, generation, iterator);
+        }
+        if (!isPrefetchEnabled()) {
+            return iterator;
+        }
+        PrefetchingIterator prefetcher = new PrefetchingIterator(iterator, prefetchBatchSize, prefetchQueueDepth, prefetchExecutor, prefetchStats);
+        synchronized (prefetchers) {
+            prefetchers.removeIf(PrefetchingIterator::isFinished);
+            prefetchers.add(prefetcher);
+        }
+        return prefetcher;
     }
     
     @Override
@@ -176,6 +367,19 @@ public class ScannerBaseDelegate implements ScannerBase {
     
     @Override
     public void close() {
+        // stop reading ahead, and give the tasks a moment to stop reading, before the underlying scanner is closed
+        synchronized (prefetchers) {
+            prefetchers.forEach(PrefetchingIterator::stop);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PrefetchingIterator.CLOSE_TIMEOUT_MS);
+            for (PrefetchingIterator prefetcher : prefetchers) {
+                prefetcher.awaitStopped(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            prefetchers.clear();
+        }
+        if (metrics != null && !closed) {
+            metrics.scannerClosed();
+        }
+        closed = true;
         delegate.close();
     }
     
@@ -1,16 +1,103 @@
 package datawave.webservice.common.connection;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Supplier;
+
 import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A simple wrapper around a {@link Scanner} that overrides the methods that configure iterators.
  */
 public class ScannerDelegate extends ScannerBaseDelegate implements Scanner {
+    private static final Logger log = LoggerFactory.getLogger(ScannerDelegate.class);
+    
+    private Supplier<AccumuloClientConfiguration> tuningConfig = null;
+    private String tuningTable = null;
+    private AdaptiveScanTuning.Settings settings = null;
+    private boolean batchSizeSet = false;
+    private boolean readaheadThresholdSet = false;
+    
     public ScannerDelegate(Scanner delegate) {
         super(delegate);
     }
     
+    /**
+     * Adapt the batch size and readahead threshold to the table being scanned. The settings learned from earlier scans of the table are applied now, and
+     * each scan read to the end updates them for the next, within the bounds of {@link AccumuloClientConfiguration#getAdaptiveScanTuning()}. A batch size or
+     * readahead threshold set explicitly on this scanner is left alone. Does nothing if the configuration does not enable adaptive tuning.
+     *
+     * @param config
+     *            the configuration holding the bounds and the learned settings
+     * @param tableName
+     *            the table being scanned
+     */
+    public void enableAdaptiveTuning(AccumuloClientConfiguration config, String tableName) {
+        enableAdaptiveTuning(() -> config, tableName);
+    }
+    
+    /**
+     * Adapt the batch size and readahead threshold to the table being scanned, like {@link #enableAdaptiveTuning(AccumuloClientConfiguration, String)}, with a
+     * configuration that may be replaced while this scanner is in use. What a scan learns is kept in the configuration current when the scan ends.
+     *
+     * @param config
+     *            supplies the current configuration holding the bounds and the learned settings
+     * @param tableName
+     *            the table being scanned
+     */
+    public void enableAdaptiveTuning(Supplier<AccumuloClientConfiguration> config, String tableName) {
+        AdaptiveScanTuning.Settings current = config.get().getScanSettings(tableName);
+        if (current != null) {
+            this.tuningConfig = config;
+            this.tuningTable = tableName;
+            this.settings = current;
+            if (!batchSizeSet) {
+                ((Scanner) delegate).setBatchSize(current.getBatchSize());
+            }
+            if (!readaheadThresholdSet) {
+                ((Scanner) delegate).setReadaheadThreshold(current.getReadaheadThreshold());
+            }
+        }
+    }
+    
+    @Override
+    protected Iterator<Map.Entry<Key,Value>> observe(Iterator<Map.Entry<Key,Value>> source) {
+        // observed below any prefetching, which would otherwise be taken for the tablet servers, and only when reading from them
+        if (tuningConfig != null && !(batchSizeSet && readaheadThresholdSet) && !readsFromMock()) {
+            AdaptiveScanTuning.Settings observed = settings;
+            return new AdaptiveScanTuning.ObservingIterator(source, observation -> learn(observed, observation));
+        }
+        return source;
+    }
+    
+    private void learn(AdaptiveScanTuning.Settings observed, AdaptiveScanTuning.Observation observation) {
+        AccumuloClientConfiguration config = tuningConfig.get();
+        AdaptiveScanTuning tuning = config.getAdaptiveScanTuning();
+        if (tuning != null) {
+            AdaptiveScanTuning.Settings learned = tuning.adjust(observed, observation);
+            // keep what was learned before for anything set explicitly on this scanner
+            AdaptiveScanTuning.Settings previous = config.getScanSettings(tuningTable);
+            learned = new AdaptiveScanTuning.Settings(batchSizeSet ? previous.getBatchSize() : learned.getBatchSize(),
+                            readaheadThresholdSet ? previous.getReadaheadThreshold() : learned.getReadaheadThreshold());
+            if (log.isTraceEnabled()) {
+                log.trace("Scan of " + tuningTable + " observed " + observation + ", next scan uses " + learned);
+            }
+            config.putScanSettings(tuningTable, learned);
+        }
+    }
+    
+    @Override
+    protected Collection<Range> getScanRanges() {
+        return Collections.singletonList(getRange());
+    }
+    
     @Override
     public final void setRange(Range range) {
         ((Scanner) delegate).setRange(range);
@@ -23,6 +110,7 @@ public class ScannerDelegate extends ScannerBaseDelegate implements Scanner {
     
     @Override
     public final void setBatchSize(int size) {
+        batchSizeSet = true;
         ((Scanner) delegate).setBatchSize(size);
     }
     
@@ -48,6 +136,7 @@ public class ScannerDelegate extends ScannerBaseDelegate implements Scanner {
     
     @Override
     public final void setReadaheadThreshold(long batches) {
+        readaheadThresholdSet = true;
         ((Scanner) delegate).setReadaheadThreshold(batches);
     }
 }
@@ -2,6 +2,7 @@ package datawave.webservice.common.connection;
 
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import org.apache.accumulo.core.client.AccumuloClient;
 import org.apache.accumulo.core.client.AccumuloException;
@@ -14,45 +15,130 @@ import org.apache.accumulo.core.client.ConditionalWriter;
 import org.apache.accumulo.core.client.ConditionalWriterConfig;
 import org.apache.accumulo.core.client.MultiTableBatchWriter;
 import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.ScannerBase;
 import org.apache.accumulo.core.client.TableNotFoundException;
 import org.apache.accumulo.core.client.admin.InstanceOperations;
 import org.apache.accumulo.core.client.admin.NamespaceOperations;
 import org.apache.accumulo.core.client.admin.ReplicationOperations;
 import org.apache.accumulo.core.client.admin.SecurityOperations;
 import org.apache.accumulo.core.client.admin.TableOperations;
+import org.apache.accumulo.core.clientImpl.ClientContext;
 import org.apache.accumulo.core.security.Authorizations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.codahale.metrics.MetricRegistry;
+
 @SuppressWarnings("deprecation")
 public class WrappedAccumuloClient implements AccumuloClient {
     private static final Logger log = LoggerFactory.getLogger(WrappedAccumuloClient.class);
     
     private AccumuloClient mock = null;
+    // the view of the mock client handed out by getInvalidatingMock(), whose table operations keep mockTables current
+    private AccumuloClient invalidatingMock = null;
     private AccumuloClient real = null;
     private String scannerClassLoaderContext = null;
     private long scanBatchTimeoutSeconds = Long.MAX_VALUE;
-    private AccumuloClientConfiguration clientConfig = new AccumuloClientConfiguration();
+    private final MockTableCache mockTables;
+    private ConnectionMetrics metrics = null;
+    private ScanResultCache scanResultCache = null;
+    // replaced as a whole when updated, so read once per scanner
+    private volatile AccumuloClientConfiguration clientConfig = new AccumuloClientConfiguration();
+    // the configuration set and updated through this client, and the one reloaded from a file that is laid over it, which together make clientConfig
+    private AccumuloClientConfiguration baseClientConfig = clientConfig;
+    private AccumuloClientConfiguration reloadedClientConfig = null;
     
     public WrappedAccumuloClient(AccumuloClient real, AccumuloClient mock) {
         this.real = real;
         this.mock = mock;
+        this.mockTables = new MockTableCache(() -> this.mock.tableOperations().list());
+        this.invalidatingMock = MockTableOperations.wrap(mock, mockTables);
+    }
+    
+    public WrappedAccumuloClient(AccumuloClient real, AccumuloClient mock, MetricRegistry metricRegistry) {
+        this(real, mock);
+        setMetricRegistry(metricRegistry);
+    }
+    
+    /**
+     * Record metrics for the scanners and writers created from now on, see {@link ConnectionMetrics}
+     *
+     * @param metricRegistry
+     *            the registry to record metrics in, or null to stop recording metrics
+     */
+    public void setMetricRegistry(MetricRegistry metricRegistry) {
+        this.metrics = (metricRegistry == null) ? null : new ConnectionMetrics(metricRegistry);
+    }
+    
+    public ConnectionMetrics getMetrics() {
+        return metrics;
     }
     
-    public void setClientConfig(AccumuloClientConfiguration clientConfig) {
-        this.clientConfig = clientConfig;
+    /**
+     * Serve repeated scans of the tables enabled in the cache from memory, for the scanners of the real instance created from now on
+     *
+     * @param scanResultCache
+     *            the cache, or null to stop caching
+     */
+    public void setScanResultCache(ScanResultCache scanResultCache) {
+        this.scanResultCache = scanResultCache;
+    }
+    
+    public ScanResultCache getScanResultCache() {
+        return scanResultCache;
+    }
+    
+    public synchronized void setClientConfig(AccumuloClientConfiguration clientConfig) {
+        this.baseClientConfig = clientConfig;
+        this.clientConfig = layerClientConfig();
+    }
+    
+    public AccumuloClientConfiguration getClientConfig() {
+        return clientConfig;
     }
     
     /**
-     * This will update the client configuration with overrides
+     * This will update the client configuration with overrides, replacing it as a whole with the current configuration overlaid by {@code clientConfig}, below
+     * any configuration {@link #reloadClientConfig reloaded} from a file. The settings learned by adaptive tuning are carried over.
      * 
      * @param clientConfig
      */
-    public void updateClientConfig(AccumuloClientConfiguration clientConfig) {
+    public synchronized void updateClientConfig(AccumuloClientConfiguration clientConfig) {
         AccumuloClientConfiguration merged = new AccumuloClientConfiguration();
-        merged.applyOverrides(this.clientConfig);
+        merged.applyOverrides(this.baseClientConfig);
         merged.applyOverrides(clientConfig);
-        this.clientConfig = merged;
+        this.baseClientConfig = merged;
+        replaceClientConfig();
+    }
+    
+    /**
+     * Replace the configuration reloaded from a file, see {@link ClientConfigurationReloader}. It is laid over the configuration set and updated through this
+     * client in place of the one previously reloaded, so that a setting removed from the file no longer applies. The settings learned by adaptive tuning are
+     * carried over.
+     * 
+     * @param reloadedConfig
+     *            the configuration reloaded from the file
+     */
+    public synchronized void reloadClientConfig(AccumuloClientConfiguration reloadedConfig) {
+        this.reloadedClientConfig = reloadedConfig;
+        replaceClientConfig();
+    }
+    
+    private void replaceClientConfig() {
+        AccumuloClientConfiguration replacement = layerClientConfig();
+        // learned into the configuration being replaced since it was built
+        replacement.inheritLearnedSettings(this.clientConfig);
+        this.clientConfig = replacement;
+    }
+    
+    private AccumuloClientConfiguration layerClientConfig() {
+        if (reloadedClientConfig == null) {
+            return baseClientConfig;
+        }
+        AccumuloClientConfiguration layered = new AccumuloClientConfiguration();
+        layered.applyOverrides(baseClientConfig);
+        layered.applyOverrides(reloadedClientConfig);
+        return layered;
     }
     
     @Override
@@ -62,27 +148,8 @@ public class WrappedAccumuloClient implements AccumuloClient {
     
     public BatchScanner createBatchScanner(String tableName, Authorizations authorizations, int numQueryThreads, boolean skipCache)
                     throws TableNotFoundException {
-        BatchScannerDelegate delegate;
-        if (!skipCache && mock.tableOperations().list().contains(tableName)) {
-            if (log.isTraceEnabled()) {
-                log.trace("Creating mock batch scanner for table: " + tableName);
-            }
-            BatchScanner batchScanner = mock.createBatchScanner(tableName, authorizations, numQueryThreads);
-            delegate = new BatchScannerDelegate(batchScanner);
-        } else {
-            if (log.isTraceEnabled()) {
-                log.trace("Creating real batch scanner for table: " + tableName);
-            }
-            BatchScanner batchScanner = real.createBatchScanner(tableName, authorizations, numQueryThreads);
-            clientConfig.apply(batchScanner, tableName);
-            delegate = new BatchScannerDelegate(batchScanner);
-            if (scannerClassLoaderContext != null && !"".equals(scannerClassLoaderContext.trim())) {
-                log.trace("Setting " + scannerClassLoaderContext + " classpath context on a new batch scanner.");
-                delegate.setContext(scannerClassLoaderContext);
-            }
-            delegate.setBatchTimeout(scanBatchTimeoutSeconds, TimeUnit.SECONDS);
-        }
-        return delegate;
+        return createDelegate(tableName, authorizations, skipCache, (client, table) -> client.createBatchScanner(table, authorizations, numQueryThreads),
+                        BatchScannerDelegate::new, "batch scanner", true);
     }
     
     @Override
@@ -91,27 +158,8 @@ public class WrappedAccumuloClient implements AccumuloClient {
     }
     
     public BatchScanner createBatchScanner(String tableName, Authorizations authorizations, boolean skipCache) throws TableNotFoundException {
-        BatchScannerDelegate delegate;
-        if (!skipCache && mock.tableOperations().list().contains(tableName)) {
-            if (log.isTraceEnabled()) {
-                log.trace("Creating mock batch scanner for table: " + tableName);
-            }
-            BatchScanner batchScanner = mock.createBatchScanner(tableName, authorizations);
-            delegate = new BatchScannerDelegate(batchScanner);
-        } else {
-            if (log.isTraceEnabled()) {
-                log.trace("Creating real batch scanner for table: " + tableName);
-            }
-            BatchScanner batchScanner = real.createBatchScanner(tableName, authorizations);
-            clientConfig.apply(batchScanner, tableName);
-            delegate = new BatchScannerDelegate(batchScanner);
-            if (scannerClassLoaderContext != null && !"".equals(scannerClassLoaderContext.trim())) {
-                log.trace("Setting " + scannerClassLoaderContext + " classpath context on a new batch scanner.");
-                delegate.setContext(scannerClassLoaderContext);
-            }
-            delegate.setBatchTimeout(scanBatchTimeoutSeconds, TimeUnit.SECONDS);
-        }
-        return delegate;
+        return createDelegate(tableName, authorizations, skipCache, (client, table) -> client.createBatchScanner(table, authorizations),
+                        BatchScannerDelegate::new, "batch scanner", true);
     }
     
     @Override
@@ -120,74 +168,81 @@ public class WrappedAccumuloClient implements AccumuloClient {
     }
     
     public BatchScanner createBatchScanner(String tableName, boolean skipCache) throws TableNotFoundException, AccumuloSecurityException, AccumuloException {
-        BatchScannerDelegate delegate;
-        if (!skipCache && mock.tableOperations().list().contains(tableName)) {
-            if (log.isTraceEnabled()) {
-                log.trace("Creating mock batch scanner for table: " + tableName);
-            }
-            BatchScanner batchScanner = mock.createBatchScanner(tableName);
-            delegate = new BatchScannerDelegate(batchScanner);
-        } else {
-            if (log.isTraceEnabled()) {
-                log.trace("Creating real batch scanner for table: " + tableName);
-            }
-            BatchScanner batchScanner = real.createBatchScanner(tableName);
-            clientConfig.apply(batchScanner, tableName);
-            delegate = new BatchScannerDelegate(batchScanner);
-            if (scannerClassLoaderContext != null && !"".equals(scannerClassLoaderContext.trim())) {
-                log.trace("Setting " + scannerClassLoaderContext + " classpath context on a new batch scanner.");
-                delegate.setContext(scannerClassLoaderContext);
-            }
-            delegate.setBatchTimeout(scanBatchTimeoutSeconds, TimeUnit.SECONDS);
-        }
-        return delegate;
+        return this.<BatchScanner,BatchScannerDelegate,AccumuloSecurityException,AccumuloException> createDelegate(tableName, null, skipCache,
+                        AccumuloClient::createBatchScanner, BatchScannerDelegate::new, "batch scanner", true);
     }
     
     @Override
     public BatchDeleter createBatchDeleter(String tableName, Authorizations authorizations, int numQueryThreads) throws TableNotFoundException {
-        return real.createBatchDeleter(tableName, authorizations, numQueryThreads);
+        return instrument(real.createBatchDeleter(tableName, authorizations, numQueryThreads), tableName);
     }
     
     @Override
     public BatchWriter createBatchWriter(String tableName) throws TableNotFoundException {
-        return real.createBatchWriter(tableName);
+        if (clientConfig.getAdaptiveWriterTuning() != null) {
+            return createBatchWriter(tableName, clientBatchWriterConfig());
+        }
+        return instrument(real.createBatchWriter(tableName), tableName);
     }
     
     @Override
     public MultiTableBatchWriter createMultiTableBatchWriter() {
-        return real.createMultiTableBatchWriter();
+        return instrument(real.createMultiTableBatchWriter());
     }
     
     @Override
     public BatchDeleter createBatchDeleter(String tableName, Authorizations authorizations, int numQueryThreads, BatchWriterConfig config)
                     throws TableNotFoundException {
-        BatchDeleter deleter = real.createBatchDeleter(tableName, authorizations, numQueryThreads, config);
-        BatchDeleterDelegate delegate = new BatchDeleterDelegate(deleter);
-        if (scannerClassLoaderContext != null && !"".equals(scannerClassLoaderContext.trim())) {
-            log.trace("Setting " + scannerClassLoaderContext + " classpath context on a new batch deleter.");
-            delegate.setContext(scannerClassLoaderContext);
-        }
-        return delegate;
+        return instrument(real.createBatchDeleter(tableName, authorizations, numQueryThreads, config), tableName);
     }
     
     @Override
     public BatchWriter createBatchWriter(String tableName, BatchWriterConfig config) throws TableNotFoundException {
-        return real.createBatchWriter(tableName, config);
+        if (config == null) {
+            // the adaptive tuning starts from, and adjusts, the given configuration
+            config = clientBatchWriterConfig();
+        }
+        AccumuloClientConfiguration current = clientConfig;
+        AdaptiveWriterTuning tuning = current.getAdaptiveWriterTuning();
+        AdaptiveWriterTuning.Settings settings = current.getWriterSettings(tableName, config);
+        if (tuning == null || settings == null) {
+            return instrument(real.createBatchWriter(tableName, config), tableName);
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Creating batch writer for table: " + tableName + " with " + settings);
+        }
+        BatchWriter writer = real.createBatchWriter(tableName, settings.apply(config));
+        return invalidating(new BatchWriterDelegate(writer, tableMetrics(tableName), observation -> {
+            AdaptiveWriterTuning.Settings next = tuning.adjust(settings, observation);
+            if (log.isTraceEnabled()) {
+                log.trace("Observed batch writer for table: " + tableName + ", " + observation + ", next writer will use " + next);
+            }
+            // the configuration may have been replaced while writing
+            clientConfig.putWriterSettings(tableName, next);
+        }), tableName);
+    }
+    
+    /**
+     * @return the batch writer configuration of the real client's properties, which is what the real client writes with when given no configuration
+     */
+    private BatchWriterConfig clientBatchWriterConfig() {
+        Properties properties = real.properties();
+        return (properties == null) ? new BatchWriterConfig() : ClientContext.getBatchWriterConfig(properties);
     }
     
     @Override
     public MultiTableBatchWriter createMultiTableBatchWriter(BatchWriterConfig config) {
-        return real.createMultiTableBatchWriter(config);
+        return instrument(real.createMultiTableBatchWriter(config));
     }
     
     @Override
     public ConditionalWriter createConditionalWriter(String tableName, ConditionalWriterConfig config) throws TableNotFoundException {
-        return real.createConditionalWriter(tableName, config);
+        return invalidating(real.createConditionalWriter(tableName, config), tableName);
     }
     
     @Override
     public ConditionalWriter createConditionalWriter(String tableName) throws TableNotFoundException {
-        return real.createConditionalWriter(tableName);
+        return invalidating(real.createConditionalWriter(tableName), tableName);
     }
     
     @Override
@@ -196,50 +251,174 @@ public class WrappedAccumuloClient implements AccumuloClient {
     }
     
     public Scanner createScanner(String tableName, Authorizations authorizations, boolean skipCache) throws TableNotFoundException {
-        ScannerDelegate delegate;
-        if (!skipCache && mock.tableOperations().list().contains(tableName)) {
+        return createDelegate(tableName, authorizations, skipCache, (client, table) -> client.createScanner(table, authorizations), ScannerDelegate::new,
+                        "scanner", false);
+    }
+    
+    @Override
+    public Scanner createScanner(String tableName) throws TableNotFoundException, AccumuloSecurityException, AccumuloException {
+        return createScanner(tableName, false);
+    }
+    
+    public Scanner createScanner(String tableName, boolean skipCache) throws TableNotFoundException, AccumuloSecurityException, AccumuloException {
+        return this.<Scanner,ScannerDelegate,AccumuloSecurityException,AccumuloException> createDelegate(tableName, null, skipCache,
+                        AccumuloClient::createScanner, ScannerDelegate::new, "scanner", true);
+    }
+    
+    /**
+     * Creates a scanner of a table with one of the clients
+     */
+    @FunctionalInterface
+    private interface ScannerFactory<T extends ScannerBase,E1 extends Exception,E2 extends Exception> {
+        T create(AccumuloClient client, String tableName) throws TableNotFoundException, E1, E2;
+    }
+    
+    /**
+     * Create a scanner of the copy of a table in the mock instance if the copy holds everything the scan can see, of the table in the real instance
+     * otherwise, or of both if the copy only has some of the columns, see {@link MockTableRouter}
+     *
+     * @param tableName
+     *            the table to scan
+     * @param authorizations
+     *            the authorizations of the scan, or null for those of the user
+     * @param skipCache
+     *            whether to scan the real instance even if the mock instance has a copy
+     * @param factory
+     *            creates a scanner with the mock or the real client
+     * @param wrapper
+     *            wraps the created scanner
+     * @param kind
+     *            the kind of scanner, for logging
+     * @param setBatchTimeout
+     *            whether to set the batch timeout of the scanners of the real instance
+     * @return the wrapped scanner
+     */
+    private <T extends ScannerBase,D extends ScannerBaseDelegate,E1 extends Exception,E2 extends Exception> D createDelegate(String tableName,
+                    Authorizations authorizations, boolean skipCache, ScannerFactory<T,E1,E2> factory, Function<T,D> wrapper, String kind,
+                    boolean setBatchTimeout) throws TableNotFoundException, E1, E2 {
+        D delegate = null;
+        T mockScanner = null;
+        MockTableCache.MockTable mockTable = skipCache ? null : mockTables.route(tableName, authorizations);
+        if (mockTable != null) {
             if (log.isTraceEnabled()) {
-                log.trace("Creating mock scanner for table: " + tableName);
+                log.trace("Creating mock " + kind + " for table: " + tableName);
             }
-            Scanner scanner = mock.createScanner(tableName, authorizations);
-            delegate = new ScannerDelegate(scanner);
-        } else {
+            try {
+                T scanner = factory.create(mock, mockTable.getPhysicalName());
+                if (mockTable.hasAllColumns()) {
+                    delegate = wrapper.apply(scanner);
+                    instrument(delegate, tableName, true);
+                } else {
+                    // the mock table only has some of the columns, so the scan is routed once its columns have been fetched
+                    mockScanner = scanner;
+                }
+            } catch (TableNotFoundException e) {
+                mockTableMissing(tableName);
+            }
+        }
+        if (delegate == null) {
             if (log.isTraceEnabled()) {
-                log.trace("Creating real scanner for table: " + tableName);
+                log.trace("Creating real " + kind + " for table: " + tableName);
             }
-            Scanner scanner = real.createScanner(tableName, authorizations);
-            clientConfig.apply(scanner, tableName);
-            delegate = new ScannerDelegate(scanner);
+            AccumuloClientConfiguration config = clientConfig;
+            T scanner;
+            try {
+                scanner = factory.create(real, tableName);
+            } catch (Exception e) {
+                if (mockScanner != null) {
+                    mockScanner.close();
+                }
+                throw e;
+            }
+            if (mockScanner != null) {
+                scanner = MockTableRouter.route(mockScanner, scanner, mockTable);
+            }
+            config.apply(scanner, tableName);
+            delegate = wrapper.apply(scanner);
+            if (delegate instanceof ScannerDelegate) {
+                ((ScannerDelegate) delegate).enableAdaptiveTuning(this::getClientConfig, tableName);
+            }
+            instrument(delegate, tableName, false);
             if (scannerClassLoaderContext != null && !"".equals(scannerClassLoaderContext.trim())) {
-                log.trace("Setting " + scannerClassLoaderContext + " classpath context on a new scanner.");
+                log.trace("Setting " + scannerClassLoaderContext + " classpath context on a new " + kind + ".");
                 delegate.setContext(scannerClassLoaderContext);
             }
+            if (setBatchTimeout) {
+                delegate.setBatchTimeout(scanBatchTimeoutSeconds, TimeUnit.SECONDS);
+            }
         }
         return delegate;
     }
     
-    @Override
-    public Scanner createScanner(String tableName) throws TableNotFoundException, AccumuloSecurityException, AccumuloException {
-        return createScanner(tableName, false);
+    /**
+     * The table was deleted from the mock instance since its tables were last listed, e.g. directly rather than through {@link #getInvalidatingMock()}, so
+     * list them again and scan the real instance instead
+     */
+    private void mockTableMissing(String tableName) {
+        if (log.isDebugEnabled()) {
+            log.debug("Table " + tableName + " is no longer in the mock instance, creating a real scanner instead");
+        }
+        mockTables.invalidate();
     }
     
-    public Scanner createScanner(String tableName, boolean skipCache) throws TableNotFoundException, AccumuloSecurityException, AccumuloException {
-        Scanner delegate;
-        if (!skipCache && mock.tableOperations().list().contains(tableName)) {
-            if (log.isTraceEnabled()) {
-                log.trace("Creating mock batch scanner for table: " + tableName);
-            }
-            delegate = mock.createScanner(tableName);
-        } else {
-            if (log.isTraceEnabled()) {
-                log.trace("Creating real batch scanner for table: " + tableName);
-            }
-            delegate = mock.createScanner(tableName);
-            delegate.setBatchTimeout(scanBatchTimeoutSeconds, TimeUnit.SECONDS);
+    private void instrument(ScannerBaseDelegate delegate, String tableName, boolean mockScanner) {
+        ConnectionMetrics current = metrics;
+        if (current != null) {
+            delegate.setMetrics(current.forTable(tableName), mockScanner);
+        }
+        // the mock instance is in memory already
+        ScanResultCache cache = scanResultCache;
+        if (!mockScanner && cache != null && cache.isEnabled(tableName)) {
+            delegate.setResultCache(cache, tableName);
+        }
+    }
+    
+    /**
+     * Wrap a deleter so that its scans are instrumented and its deletes invalidate the cached scans of its table
+     */
+    private BatchDeleter instrument(BatchDeleter deleter, String tableName) {
+        BatchDeleterDelegate delegate = new BatchDeleterDelegate(deleter);
+        instrument(delegate, tableName, false);
+        if (scannerClassLoaderContext != null && !"".equals(scannerClassLoaderContext.trim())) {
+            log.trace("Setting " + scannerClassLoaderContext + " classpath context on a new batch deleter.");
+            delegate.setContext(scannerClassLoaderContext);
         }
         return delegate;
     }
     
+    private BatchWriter instrument(BatchWriter writer, String tableName) {
+        ConnectionMetrics.TableMetrics tableMetrics = tableMetrics(tableName);
+        return invalidating((tableMetrics == null) ? writer : new BatchWriterDelegate(writer, tableMetrics), tableName);
+    }
+    
+    /**
+     * Have a writer invalidate the cached scans of its table when it is flushed or closed, so that the scans of this client see its own writes
+     */
+    private BatchWriter invalidating(BatchWriter writer, String tableName) {
+        ScanResultCache cache = scanResultCache;
+        return (cache == null) ? writer : cache.invalidating(writer, tableName);
+    }
+    
+    /**
+     * Have a conditional writer invalidate the cached scans of its table as it writes, so that the scans of this client see its own writes
+     */
+    private ConditionalWriter invalidating(ConditionalWriter writer, String tableName) {
+        ScanResultCache cache = scanResultCache;
+        return (cache == null) ? writer : cache.invalidating(writer, tableName);
+    }
+    
+    private ConnectionMetrics.TableMetrics tableMetrics(String tableName) {
+        ConnectionMetrics current = metrics;
+        return (current == null) ? null : current.forTable(tableName);
+    }
+    
+    private MultiTableBatchWriter instrument(MultiTableBatchWriter writer) {
+        ConnectionMetrics current = metrics;
+        MultiTableBatchWriter instrumented = (current == null) ? writer : new MultiTableBatchWriterDelegate(writer, current);
+        ScanResultCache cache = scanResultCache;
+        return (cache == null) ? instrumented : cache.invalidating(instrumented);
+    }
+    
     @Override
     public String whoami() {
         return real.whoami();
@@ -284,6 +463,29 @@ public class WrappedAccumuloClient implements AccumuloClient {
         return mock;
     }
     
+    /**
+     * @return a view of the client of the mock instance. Creating, deleting, renaming, cloning or importing tables through its table operations invalidates
+     *         the cached names of the mock tables.
+     */
+    public AccumuloClient getInvalidatingMock() {
+        return invalidatingMock;
+    }
+    
+    /**
+     * @return the cached names of the mock tables, which decide whether scanners are created against the mock or the real instance
+     */
+    public MockTableCache getMockTableCache() {
+        return mockTables;
+    }
+    
+    /**
+     * Discard the cached names of the mock tables. This is done automatically for changes made through {@link #getInvalidatingMock()}; call this after
+     * creating, deleting or renaming tables in the mock instance by other means.
+     */
+    public void invalidateMockTables() {
+        mockTables.invalidate();
+    }
+    
     public AccumuloClient getReal() {
         return real;
     }
@@ -1,6 +1,7 @@
 package datawave.webservice.common.connection;
 
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 import org.apache.accumulo.core.client.BatchDeleter;
 import org.apache.accumulo.core.client.BatchScanner;
@@ -12,6 +13,7 @@ import org.apache.accumulo.core.client.Connector;
 import org.apache.accumulo.core.client.Instance;
 import org.apache.accumulo.core.client.MultiTableBatchWriter;
 import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.ScannerBase;
 import org.apache.accumulo.core.client.TableNotFoundException;
 import org.apache.accumulo.core.client.admin.InstanceOperations;
 import org.apache.accumulo.core.client.admin.NamespaceOperations;
@@ -30,34 +32,18 @@ public class WrappedConnector extends Connector {
     private Connector real = null;
     private String scannerClassLoaderContext = null;
     private long scanBatchTimeoutSeconds = Long.MAX_VALUE;
+    private final MockTableCache mockTables;
     
     public WrappedConnector(Connector real, Connector mock) {
         this.real = real;
         this.mock = mock;
+        this.mockTables = new MockTableCache(() -> this.mock.tableOperations().list());
     }
     
     @Override
     public BatchScanner createBatchScanner(String tableName, Authorizations authorizations, int numQueryThreads) throws TableNotFoundException {
-        BatchScannerDelegate delegate;
-        if (mock.tableOperations().list().contains(tableName)) {
-            if (log.isTraceEnabled()) {
-                log.trace("Creating mock batch scanner for table: " + tableName);
-            }
-            BatchScanner batchScanner = mock.createBatchScanner(tableName, authorizations, numQueryThreads);
-            delegate = new BatchScannerDelegate(batchScanner);
-        } else {
-            if (log.isTraceEnabled()) {
-                log.trace("Creating real batch scanner for table: " + tableName);
-            }
-            BatchScanner batchScanner = real.createBatchScanner(tableName, authorizations, numQueryThreads);
-            delegate = new BatchScannerDelegate(batchScanner);
-            if (scannerClassLoaderContext != null && !"".equals(scannerClassLoaderContext.trim())) {
-                log.trace("Setting " + scannerClassLoaderContext + " classpath context on a new batch scanner.");
-                delegate.setContext(scannerClassLoaderContext);
-            }
-            delegate.setBatchTimeout(scanBatchTimeoutSeconds, TimeUnit.SECONDS);
-        }
-        return delegate;
+        return createDelegate(tableName, authorizations, (connector, table) -> connector.createBatchScanner(table, authorizations, numQueryThreads),
+                        BatchScannerDelegate::new, "batch scanner", true);
     }
     
     @Override
@@ -105,27 +91,95 @@ public class WrappedConnector extends Connector {
     
     @Override
     public Scanner createScanner(String tableName, Authorizations authorizations) throws TableNotFoundException {
-        ScannerDelegate delegate;
-        if (mock.tableOperations().list().contains(tableName)) {
+        return createDelegate(tableName, authorizations, (connector, table) -> connector.createScanner(table, authorizations), ScannerDelegate::new, "scanner",
+                        false);
+    }
+    
+    /**
+     * Creates a scanner of a table with one of the connectors
+     */
+    @FunctionalInterface
+    private interface ScannerFactory<T extends ScannerBase> {
+        T create(Connector connector, String tableName) throws TableNotFoundException;
+    }
+    
+    /**
+     * Create a scanner of the copy of a table in the mock instance if the copy holds everything the scan can see, of the table in the real instance
+     * otherwise, or of both if the copy only has some of the columns, see {@link MockTableRouter}
+     *
+     * @param tableName
+     *            the table to scan
+     * @param authorizations
+     *            the authorizations of the scan
+     * @param factory
+     *            creates a scanner with the mock or the real connector
+     * @param wrapper
+     *            wraps the created scanner
+     * @param kind
+     *            the kind of scanner, for logging
+     * @param setBatchTimeout
+     *            whether to set the batch timeout of the scanners of the real instance
+     * @return the wrapped scanner
+     */
+    private <T extends ScannerBase,D extends ScannerBaseDelegate> D createDelegate(String tableName, Authorizations authorizations, ScannerFactory<T> factory,
+                    Function<T,D> wrapper, String kind, boolean setBatchTimeout) throws TableNotFoundException {
+        D delegate = null;
+        T mockScanner = null;
+        MockTableCache.MockTable mockTable = mockTables.route(tableName, authorizations);
+        if (mockTable != null) {
             if (log.isTraceEnabled()) {
-                log.trace("Creating mock scanner for table: " + tableName);
+                log.trace("Creating mock " + kind + " for table: " + tableName);
             }
-            Scanner scanner = mock.createScanner(tableName, authorizations);
-            delegate = new ScannerDelegate(scanner);
-        } else {
+            try {
+                T scanner = factory.create(mock, mockTable.getPhysicalName());
+                if (mockTable.hasAllColumns()) {
+                    delegate = wrapper.apply(scanner);
+                } else {
+                    // the mock table only has some of the columns, so the scan is routed once its columns have been fetched
+                    mockScanner = scanner;
+                }
+            } catch (TableNotFoundException e) {
+                mockTableMissing(tableName);
+            }
+        }
+        if (delegate == null) {
             if (log.isTraceEnabled()) {
-                log.trace("Creating real scanner for table: " + tableName);
+                log.trace("Creating real " + kind + " for table: " + tableName);
+            }
+            T scanner;
+            try {
+                scanner = factory.create(real, tableName);
+            } catch (TableNotFoundException | RuntimeException e) {
+                if (mockScanner != null) {
+                    mockScanner.close();
+                }
+                throw e;
             }
-            Scanner scanner = real.createScanner(tableName, authorizations);
-            delegate = new ScannerDelegate(scanner);
+            if (mockScanner != null) {
+                scanner = MockTableRouter.route(mockScanner, scanner, mockTable);
+            }
+            delegate = wrapper.apply(scanner);
             if (scannerClassLoaderContext != null && !"".equals(scannerClassLoaderContext.trim())) {
-                log.trace("Setting " + scannerClassLoaderContext + " classpath context on a new scanner.");
+                log.trace("Setting " + scannerClassLoaderContext + " classpath context on a new " + kind + ".");
                 delegate.setContext(scannerClassLoaderContext);
             }
+            if (setBatchTimeout) {
+                delegate.setBatchTimeout(scanBatchTimeoutSeconds, TimeUnit.SECONDS);
+            }
         }
         return delegate;
     }
     
+    /**
+     * The table was deleted from the mock instance since its tables were last listed, so list them again and scan the real instance instead
+     */
+    private void mockTableMissing(String tableName) {
+        if (log.isDebugEnabled()) {
+            log.debug("Table " + tableName + " is no longer in the mock instance, creating a real scanner instead");
+        }
+        mockTables.invalidate();
+    }
+    
     @Override
     public Instance getInstance() {
         return real.getInstance();
@@ -165,6 +219,21 @@ public class WrappedConnector extends Connector {
         return mock;
     }
     
+    /**
+     * @return the cached names of the mock tables, which decide whether scanners are created against the mock or the real instance
+     */
+    public MockTableCache getMockTableCache() {
+        return mockTables;
+    }
+    
+    /**
+     * Discard the cached names of the mock tables. Call this after creating or renaming tables in the mock instance; a deleted table is noticed by the first
+     * scanner created for it.
+     */
+    public void invalidateMockTables() {
+        mockTables.invalidate();
+    }
+    
     public Connector getReal() {
         return real;
     }
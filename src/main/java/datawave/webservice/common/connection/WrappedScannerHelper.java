@@ -1,14 +1,13 @@
 package datawave.webservice.common.connection;
 
 import java.util.Collection;
-import java.util.Iterator;
 
 import org.apache.accumulo.core.client.BatchScanner;
 import org.apache.accumulo.core.client.Scanner;
 import org.apache.accumulo.core.client.TableNotFoundException;
 import org.apache.accumulo.core.security.Authorizations;
 
-import datawave.security.util.AuthorizationsMinimizer;
+import datawave.security.util.MinimizedAuthorizations;
 import datawave.security.util.ScannerHelper;
 
 /**
@@ -21,9 +20,9 @@ public class WrappedScannerHelper extends ScannerHelper {
         if (authorizations == null || authorizations.isEmpty()) {
             throw new IllegalArgumentException("Authorizations must not be empty.");
         }
-        Iterator<Authorizations> iter = AuthorizationsMinimizer.minimize(authorizations).iterator();
-        Scanner scanner = connector.createScanner(tableName, iter.next(), skipCache);
-        addVisibilityFilters(iter, scanner);
+        MinimizedAuthorizations minimized = MinimizedAuthorizations.of(authorizations);
+        Scanner scanner = connector.createScanner(tableName, minimized.getScanAuthorizations(), skipCache);
+        addVisibilityFilters(minimized, scanner);
         return scanner;
     }
     
@@ -32,9 +31,9 @@ public class WrappedScannerHelper extends ScannerHelper {
         if (authorizations == null || authorizations.isEmpty()) {
             throw new IllegalArgumentException("Authorizations must not be empty.");
         }
-        Iterator<Authorizations> iter = AuthorizationsMinimizer.minimize(authorizations).iterator();
-        BatchScanner batchScanner = connector.createBatchScanner(tableName, iter.next(), numQueryThreads, skipCache);
-        addVisibilityFilters(iter, batchScanner);
+        MinimizedAuthorizations minimized = MinimizedAuthorizations.of(authorizations);
+        BatchScanner batchScanner = connector.createBatchScanner(tableName, minimized.getScanAuthorizations(), numQueryThreads, skipCache);
+        addVisibilityFilters(minimized, batchScanner);
         return batchScanner;
     }
 }
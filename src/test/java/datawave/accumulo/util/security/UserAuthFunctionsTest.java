@@ -1,10 +1,12 @@
 package datawave.accumulo.util.security;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.apache.accumulo.core.security.Authorizations;
@@ -17,6 +19,7 @@ import com.google.common.collect.Sets;
 import datawave.security.authorization.AuthorizationException;
 import datawave.security.authorization.DatawaveUser;
 import datawave.security.authorization.SubjectIssuerDNPair;
+import datawave.security.util.MinimizedAuthorizations;
 
 public class UserAuthFunctionsTest {
     
@@ -109,4 +112,52 @@ public class UserAuthFunctionsTest {
         assertEquals(new Authorizations("A", "C", "D"), UAF.getRequestedAuthorizations(null, user));
         assertEquals(new Authorizations("A", "C", "D"), UAF.getRequestedAuthorizations("", user));
     }
+    
+    @Test
+    public void testRequestedAuthsParsing() {
+        assertEquals(new Authorizations("A", "C"), UAF.getRequestedAuthorizations(" A ,, C,", user));
+        assertEquals(new Authorizations("A", "C"), UAF.getRequestedAuthorizations("A,C,A", user));
+        assertEquals(Authorizations.EMPTY, UAF.getRequestedAuthorizations(" , ", user));
+        // a cached resolution must still throw, and must still give the intersection when not throwing
+        assertThrows(IllegalArgumentException.class, () -> UAF.getRequestedAuthorizations("A,X", user, true));
+        assertEquals(new Authorizations("A"), UAF.getRequestedAuthorizations("A,X", user, false));
+        assertThrows(IllegalArgumentException.class, () -> UAF.getRequestedAuthorizations("A,X", user, true));
+    }
+    
+    @Test
+    public void testRequestedAuthsSharedIndex() {
+        DatawaveUser other = new DatawaveUser(SubjectIssuerDNPair.of("otherDN", ISSUER_DN), DatawaveUser.UserType.USER, Sets.newHashSet("D", "C", "A"), null,
+                        null, System.currentTimeMillis());
+        assertSame(UserAuthIndex.forUser(user), UserAuthIndex.forUser(other));
+        assertSame(UAF.getRequestedAuthorizations(requestedAuths, user), UAF.getRequestedAuthorizations(requestedAuths, other));
+        assertEquals(new Authorizations("A", "C"), UserAuthFunctions.getRequestedAuthorizations(requestedAuths, () -> Lists.newArrayList("A", "C", "D"), true));
+        
+        Set<String> many = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            many.add("AUTH" + i);
+        }
+        assertEquals(new Authorizations("AUTH7", "AUTH99"), UserAuthFunctions.getRequestedAuthorizations("AUTH99, AUTH7", () -> many, false));
+        assertEquals(new Authorizations(many.toArray(new String[0])), UserAuthFunctions.getRequestedAuthorizations(null, () -> many, false));
+        assertEquals(Authorizations.EMPTY, UserAuthFunctions.getRequestedAuthorizations("A", () -> new HashSet<>(), false));
+        assertThrows(IllegalArgumentException.class, () -> UserAuthFunctions.getRequestedAuthorizations("A", () -> new HashSet<>(), true));
+    }
+    
+    @Test
+    public void testMergeAuthorizationsBatch() {
+        Authorizations requested = UAF.getRequestedAuthorizations(requestedAuths, user);
+        List<UserAuthFunctions.MergeRequest> requests = Lists.newArrayList(new UserAuthFunctions.MergeRequest(requested, proxyChain, u -> u != user),
+                        new UserAuthFunctions.MergeRequest(requested, Lists.newArrayList(user, p2, p1), u -> u != user),
+                        new UserAuthFunctions.MergeRequest(requested, proxyChain, u -> u != user),
+                        new UserAuthFunctions.MergeRequest(null, proxyChain, u -> u != user));
+        
+        List<MinimizedAuthorizations> merged = UAF.mergeAuthorizations(requests);
+        assertEquals(4, merged.size());
+        assertEquals(MinimizedAuthorizations.of(UAF.mergeAuthorizations(requested, proxyChain, u -> u != user)), merged.get(0));
+        assertEquals(new Authorizations("A", "C"), merged.get(0).getScanAuthorizations());
+        assertEquals(3, merged.get(1).size());
+        assertSame(merged.get(0), merged.get(2));
+        assertEquals(Sets.newHashSet(Authorizations.EMPTY), merged.get(3));
+        // a minimized collection is consumed as is
+        assertSame(merged.get(0), MinimizedAuthorizations.of(merged.get(0)));
+    }
 }
@@ -0,0 +1,70 @@
+package datawave.marking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.jupiter.api.Test;
+
+public class AuthorizationsEvaluatorTest {
+    
+    @Test
+    public void testEvaluate() {
+        AuthorizationsEvaluator evaluator = new AuthorizationsEvaluator(Arrays.asList(new Authorizations("A", "B", "C"), new Authorizations("A", "D")));
+        assertTrue(evaluator.evaluate(new ColumnVisibility("A")));
+        assertTrue(evaluator.evaluate(new ColumnVisibility("A&(B|D)")));
+        assertTrue(evaluator.evaluate(new ColumnVisibility("")));
+        assertFalse(evaluator.evaluate(new ColumnVisibility("A&B")));
+        assertFalse(evaluator.evaluate(new ColumnVisibility("B|C")));
+        assertFalse(evaluator.evaluate(new ColumnVisibility("E")));
+    }
+    
+    @Test
+    public void testEvaluateManyAuthorizations() {
+        List<Authorizations> authorizations = new ArrayList<>();
+        for (int i = 0; i < 130; i++) {
+            authorizations.add(new Authorizations("A", "X" + i));
+        }
+        AuthorizationsEvaluator evaluator = new AuthorizationsEvaluator(authorizations);
+        assertTrue(evaluator.evaluate(new ColumnVisibility("A")));
+        assertFalse(evaluator.evaluate(new ColumnVisibility("A&X129")));
+        
+        authorizations.add(new Authorizations("B"));
+        evaluator = new AuthorizationsEvaluator(authorizations);
+        assertFalse(evaluator.evaluate(new ColumnVisibility("A")));
+        assertTrue(evaluator.evaluate(new ColumnVisibility("A|B")));
+    }
+    
+    @Test
+    public void testEvaluatorsAreCached() {
+        List<Authorizations> authorizations = new ArrayList<>(Arrays.asList(new Authorizations("A", "B"), new Authorizations("C")));
+        AuthorizationsEvaluator evaluator = AuthorizationsEvaluator.forAuthorizations(authorizations);
+        assertSame(evaluator, AuthorizationsEvaluator.forAuthorizations(new ArrayList<>(authorizations)));
+        
+        // modifying the caller's collection must not affect the cached evaluator
+        authorizations.add(new Authorizations("D"));
+        assertSame(evaluator, AuthorizationsEvaluator.forAuthorizations(Arrays.asList(new Authorizations("A", "B"), new Authorizations("C"))));
+        AuthorizationsEvaluator modified = AuthorizationsEvaluator.forAuthorizations(authorizations);
+        assertNotSame(evaluator, modified);
+        assertTrue(evaluator.evaluate(new ColumnVisibility("A|C")));
+        assertFalse(modified.evaluate(new ColumnVisibility("A|C")));
+    }
+    
+    @Test
+    public void testFingerprintIsMinimized() {
+        AuthorizationsEvaluator evaluator = new AuthorizationsEvaluator(Arrays.asList(new Authorizations("A", "B", "C"), new Authorizations("A", "D"),
+                        new Authorizations("D", "A"), new Authorizations("A", "B")));
+        assertEquals(new HashSet<>(Arrays.asList(new Authorizations("A", "B"), new Authorizations("A", "D"))), evaluator.getFingerprint());
+        assertEquals(evaluator.getFingerprint(), AuthorizationsEvaluator.forAuthorizations(Arrays.asList(new Authorizations("A", "D"),
+                        new Authorizations("A", "B"))).getFingerprint());
+    }
+}
@@ -0,0 +1,76 @@
+package datawave.marking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class ColumnVisibilityCacheTest {
+    
+    @AfterEach
+    public void tearDown() {
+        System.clearProperty(ColumnVisibilityCache.MAX_SIZE_PROPERTY);
+        ColumnVisibilityCache.setMaximumSize(ColumnVisibilityCache.DEFAULT_MAX_SIZE);
+    }
+    
+    private static ColumnVisibility get(String expression) {
+        return ColumnVisibilityCache.get(new ArrayByteSequence(expression));
+    }
+    
+    @Test
+    public void testRepeatedGetIsCached() {
+        ColumnVisibilityCache.setMaximumSize(2);
+        assertArrayEquals(new ColumnVisibility("A&B").getExpression(), get("A&B").getExpression());
+        assertArrayEquals(new ColumnVisibility("A&B").getExpression(), get("A&B").getExpression());
+        
+        assertEquals(1, ColumnVisibilityCache.size());
+        assertEquals(1, ColumnVisibilityCache.getStats().missCount());
+        assertEquals(1, ColumnVisibilityCache.getStats().hitCount());
+    }
+    
+    @Test
+    public void testEvictsAtMaximumSize() {
+        ColumnVisibilityCache.setMaximumSize(2);
+        get("A");
+        get("B");
+        get("C");
+        
+        assertEquals(2, ColumnVisibilityCache.size());
+        assertEquals(1, ColumnVisibilityCache.getStats().evictionCount());
+        
+        // the least recently used was evicted
+        get("B");
+        get("C");
+        assertEquals(2, ColumnVisibilityCache.getStats().hitCount());
+        get("A");
+        assertEquals(4, ColumnVisibilityCache.getStats().missCount());
+    }
+    
+    @Test
+    public void testResize() {
+        ColumnVisibilityCache.setMaximumSize(4);
+        get("A");
+        get("B");
+        get("C");
+        assertEquals(3, ColumnVisibilityCache.size());
+        
+        // resizing starts over with an empty cache
+        ColumnVisibilityCache.setMaximumSize(1);
+        assertEquals(0, ColumnVisibilityCache.size());
+        assertEquals(0, ColumnVisibilityCache.getStats().requestCount());
+        get("A");
+        get("B");
+        assertEquals(1, ColumnVisibilityCache.size());
+        assertEquals(1, ColumnVisibilityCache.getStats().evictionCount());
+    }
+    
+    @Test
+    public void testMaximumSizeProperty() {
+        assertEquals(ColumnVisibilityCache.DEFAULT_MAX_SIZE, ColumnVisibilityCache.configuredMaximumSize());
+        System.setProperty(ColumnVisibilityCache.MAX_SIZE_PROPERTY, "16");
+        assertEquals(16, ColumnVisibilityCache.configuredMaximumSize());
+    }
+}
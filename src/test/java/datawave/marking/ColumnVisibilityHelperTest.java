@@ -0,0 +1,72 @@
+package datawave.marking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.Sets;
+
+public class ColumnVisibilityHelperTest {
+    
+    @Test
+    public void testSimplifyRemovesUnsatisfiedBranches() throws MarkingFunctions.Exception {
+        ColumnVisibility vis = new ColumnVisibility("(A&B)|(C&D)|E");
+        ColumnVisibility simplified = ColumnVisibilityHelper.simplifyColumnVisibilityForAuthorizations(vis,
+                        Arrays.asList(new Authorizations("A", "B", "E"), new Authorizations("A", "B")));
+        assertEquals(new ColumnVisibility("A&B"), simplified);
+        
+        simplified = ColumnVisibilityHelper.simplifyColumnVisibilityForAuthorizations(vis, Collections.singleton(new Authorizations("C", "D", "E")));
+        assertEquals(new ColumnVisibility("E|(C&D)"), simplified);
+    }
+    
+    @Test
+    public void testSimplifyDoesNotModifyInput() throws MarkingFunctions.Exception {
+        ColumnVisibility vis = new ColumnVisibility("(A&B)|(C&D)|E");
+        ColumnVisibilityHelper.simplifyColumnVisibilityForAuthorizations(vis, Collections.singleton(new Authorizations("E")));
+        assertEquals(3, vis.getParseTree().getChildren().size());
+    }
+    
+    @Test
+    public void testSimplifyWithQuotedTerms() throws MarkingFunctions.Exception {
+        ColumnVisibility vis = new ColumnVisibility("\"A\\\\B\"|\"C\"");
+        ColumnVisibility simplified = ColumnVisibilityHelper.simplifyColumnVisibilityForAuthorizations(vis,
+                        Collections.singleton(new Authorizations("A\\B")));
+        assertEquals(new ColumnVisibility("\"A\\\\B\""), simplified);
+    }
+    
+    @Test
+    public void testSimplifyLeavesTopLevelAnd() throws MarkingFunctions.Exception {
+        ColumnVisibility vis = new ColumnVisibility("A&(B|C)");
+        assertSame(vis, ColumnVisibilityHelper.simplifyColumnVisibilityForAuthorizations(vis, Collections.singleton(new Authorizations("A", "B"))));
+    }
+    
+    @Test
+    public void testRemoveUndisplayedVisibilities() throws MarkingFunctions.Exception {
+        ColumnVisibility vis = new ColumnVisibility("A&B&(C|D|E)");
+        ColumnVisibility displayed = ColumnVisibilityHelper.removeUndisplayedVisibilities(vis, Sets.newHashSet("B", "D"));
+        assertEquals(new ColumnVisibility("A&(C|E)"), displayed);
+        assertEquals(3, vis.getParseTree().getChildren().size());
+    }
+    
+    @Test
+    public void testSimplificationIsMemoized() throws MarkingFunctions.Exception {
+        ColumnVisibility vis = new ColumnVisibility("(F&G)|(H&I)");
+        ColumnVisibility first = ColumnVisibilityHelper.simplifyColumnVisibilityForAuthorizations(vis,
+                        Arrays.asList(new Authorizations("F", "G"), new Authorizations("F", "G", "H")));
+        long hits = VisibilitySimplificationCache.getStats().hitCount();
+        
+        // the same authorizations in a different order, plus a redundant superset, share the memoized result
+        ColumnVisibility second = ColumnVisibilityHelper.simplifyColumnVisibilityForAuthorizations(new ColumnVisibility("(F&G)|(H&I)"),
+                        Arrays.asList(new Authorizations("F", "G", "H", "I"), new Authorizations("F", "G")));
+        assertEquals(first, second);
+        assertEquals(hits + 1, VisibilitySimplificationCache.getStats().hitCount());
+        // callers share the canonical visibility
+        assertSame(first, second);
+    }
+}
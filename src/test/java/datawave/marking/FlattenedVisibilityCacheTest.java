@@ -0,0 +1,52 @@
+package datawave.marking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class FlattenedVisibilityCacheTest {
+    
+    @AfterEach
+    public void tearDown() {
+        FlattenedVisibilityCache.configure(0, FlattenedVisibilityCache.DEFAULT_MAX_WEIGHT, 0, TimeUnit.MILLISECONDS);
+    }
+    
+    @Test
+    public void testFlattenIsCached() {
+        FlattenedVisibilityCache.configure(0, FlattenedVisibilityCache.DEFAULT_MAX_WEIGHT, 0, TimeUnit.MILLISECONDS);
+        ColumnVisibility vis = new ColumnVisibility("B&A&(D|C)");
+        
+        assertArrayEquals(new ColumnVisibility("B&A&(D|C)").flatten(), FlattenedVisibilityCache.flatten(vis));
+        assertArrayEquals(new ColumnVisibility("B&A&(D|C)").flatten(), FlattenedVisibilityCache.flatten(vis));
+        assertEquals(1, FlattenedVisibilityCache.getStats().missCount());
+        assertEquals(1, FlattenedVisibilityCache.getStats().hitCount());
+    }
+    
+    @Test
+    public void testSizeBoundEvicts() {
+        FlattenedVisibilityCache.configure(1, 0, 0, TimeUnit.MILLISECONDS);
+        FlattenedVisibilityCache.flatten(new ColumnVisibility("A&B"));
+        FlattenedVisibilityCache.flatten(new ColumnVisibility("C&D"));
+        
+        assertEquals(1, FlattenedVisibilityCache.size());
+        assertEquals(1, FlattenedVisibilityCache.getStats().evictionCount());
+    }
+    
+    @Test
+    public void testWeightBoundEvicts() {
+        ColumnVisibility vis = new ColumnVisibility("A&B");
+        int weight = FlattenedVisibilityCache.weigh(vis, vis.flatten());
+        FlattenedVisibilityCache.configure(0, weight, 0, TimeUnit.MILLISECONDS);
+        FlattenedVisibilityCache.flatten(new ColumnVisibility("A&B"));
+        FlattenedVisibilityCache.flatten(new ColumnVisibility("C&D"));
+        
+        assertTrue(FlattenedVisibilityCache.size() <= 1);
+        assertTrue(FlattenedVisibilityCache.getStats().evictionCount() >= 1);
+    }
+}
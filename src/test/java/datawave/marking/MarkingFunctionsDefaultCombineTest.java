@@ -2,9 +2,15 @@ package datawave.marking;
 
 import static datawave.marking.MarkingFunctions.Default.COLUMN_VISIBILITY;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
+import org.apache.accumulo.core.data.ArrayByteSequence;
 import org.apache.accumulo.core.security.ColumnVisibility;
 import org.junit.jupiter.api.Test;
 
@@ -58,4 +64,54 @@ public class MarkingFunctionsDefaultCombineTest {
         
         assertEquals(expected, markingFunctions.combine(mapOne, mapTwo));
     }
+    
+    @Test
+    public void testCombineAll() throws MarkingFunctions.Exception {
+        MarkingFunctions markingFunctions = new MarkingFunctions.Default();
+        
+        List<Collection<ColumnVisibility>> groups = Arrays.asList(Arrays.asList(new ColumnVisibility("A&B"), new ColumnVisibility("A&C")),
+                        Arrays.asList(new ColumnVisibility("A|B"), new ColumnVisibility("B|A"), new ColumnVisibility("A|C")),
+                        Arrays.asList(new ColumnVisibility("C&(B|A)"), new ColumnVisibility(""), new ColumnVisibility("A&\"D\"")),
+                        Collections.singletonList(new ColumnVisibility("B|A")), Collections.singletonList(new ColumnVisibility("")));
+        List<ColumnVisibility> expected = Arrays.asList(new ColumnVisibility("A&B&C"), new ColumnVisibility("(A|B)&(A|C)"),
+                        new ColumnVisibility("\"D\"&A&C&(A|B)"), new ColumnVisibility("A|B"), new ColumnVisibility(""));
+        
+        assertEquals(expected, markingFunctions.combineAll(groups));
+        assertEquals(expected, markingFunctions.combineAll(groups, true));
+    }
+    
+    @Test
+    public void testStreamingCombiner() throws MarkingFunctions.Exception {
+        MarkingFunctions markingFunctions = new MarkingFunctions.Default();
+        List<ColumnVisibility> visibilities = Arrays.asList(new ColumnVisibility("A|B"), new ColumnVisibility("C&(B|A)"), new ColumnVisibility(""),
+                        new ColumnVisibility("A&C"));
+        
+        VisibilityCombiner combiner = new VisibilityCombiner();
+        for (int i = 0; i < 1000; i++) {
+            combiner.add(visibilities.get(i % visibilities.size()));
+            combiner.add(new ArrayByteSequence("C&A"));
+        }
+        assertEquals(3, combiner.getClauseCount());
+        assertEquals(markingFunctions.combine(visibilities), combiner.getCombined());
+        assertSame(combiner.getCombined(), combiner.getCombined());
+        
+        combiner.add(new ArrayByteSequence("D"));
+        assertEquals(new ColumnVisibility("A&C&D&(A|B)"), combiner.getCombined());
+        
+        combiner.reset();
+        assertEquals(new ColumnVisibility(""), combiner.getCombined());
+    }
+    
+    @Test
+    public void testResultsAreCanonical() throws MarkingFunctions.Exception {
+        MarkingFunctions markingFunctions = new MarkingFunctions.Default();
+        Map<String,String> markings = ImmutableMap.of(COLUMN_VISIBILITY, "(C|B)&A");
+        
+        ColumnVisibility first = markingFunctions.translateToColumnVisibility(markings);
+        ColumnVisibility second = markingFunctions.translateToColumnVisibility(markings);
+        assertSame(first, second);
+        
+        List<ColumnVisibility> visibilities = Arrays.asList(new ColumnVisibility("A|B"), new ColumnVisibility("C"));
+        assertSame(markingFunctions.combine(visibilities), markingFunctions.combine(visibilities));
+    }
 }
@@ -0,0 +1,42 @@
+package datawave.marking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+public class MarkingFunctionsEncodingTest {
+    
+    private static Map<String,String> markings() {
+        Map<String,String> markings = new LinkedHashMap<>();
+        markings.put(MarkingFunctions.Default.COLUMN_VISIBILITY, "A&(B|C)");
+        markings.put("description", "café ✓");
+        markings.put("empty", "");
+        return markings;
+    }
+    
+    @Test
+    public void testStringRoundTrip() {
+        Map<String,String> markings = markings();
+        assertEquals(markings, MarkingFunctions.Encoding.fromString(MarkingFunctions.Encoding.toString(markings)));
+    }
+    
+    @Test
+    public void testBytesRoundTrip() {
+        Map<String,String> markings = markings();
+        markings.put("nothing", null);
+        Map<String,String> decoded = MarkingFunctions.Encoding.fromBytes(MarkingFunctions.Encoding.toBytes(markings));
+        assertEquals(markings, decoded);
+        assertEquals(Arrays.asList(markings.keySet().toArray()), Arrays.asList(decoded.keySet().toArray()));
+    }
+    
+    @Test
+    public void testTruncatedBytes() {
+        byte[] encoded = MarkingFunctions.Encoding.toBytes(markings());
+        assertTrue(MarkingFunctions.Encoding.fromBytes(Arrays.copyOf(encoded, encoded.length - 3)).isEmpty());
+    }
+}
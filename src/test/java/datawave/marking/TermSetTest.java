@@ -0,0 +1,38 @@
+package datawave.marking;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.collect.Sets;
+
+public class TermSetTest {
+    
+    private static ByteSequence bytes(String term) {
+        return new ArrayByteSequence(term.getBytes(UTF_8));
+    }
+    
+    @Test
+    public void testContains() {
+        TermSet terms = new TermSet(Sets.newHashSet("termSetA", "termSetB"));
+        assertTrue(terms.contains(bytes("termSetA")));
+        assertTrue(terms.contains(bytes("termSetB")));
+        assertFalse(terms.contains(bytes("termSetC")));
+        
+        // a term within a larger expression is found by its bytes
+        byte[] expression = "A&termSetB".getBytes(UTF_8);
+        assertTrue(terms.contains(new ArrayByteSequence(expression, 2, expression.length - 2)));
+        assertFalse(terms.contains(new ArrayByteSequence(expression, 0, 1)));
+    }
+    
+    @Test
+    public void testEquals() {
+        assertEquals(new TermSet(Sets.newHashSet("termSetA", "termSetB")), new TermSet(Sets.newHashSet("termSetB", "termSetA")));
+        assertEquals(new TermSet(Sets.newHashSet("termSetA")).hashCode(), new TermSet(Sets.newHashSet("termSetA")).hashCode());
+    }
+}
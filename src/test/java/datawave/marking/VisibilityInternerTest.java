@@ -0,0 +1,31 @@
+package datawave.marking;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.junit.jupiter.api.Test;
+
+public class VisibilityInternerTest {
+    
+    @Test
+    public void testParseReturnsCanonicalVisibility() {
+        ColumnVisibility canonical = VisibilityInterner.parse("internA&internB".getBytes(UTF_8));
+        assertSame(canonical, VisibilityInterner.parse("internA&internB".getBytes(UTF_8)));
+        assertNotEquals(canonical, VisibilityInterner.parse("internA&internC".getBytes(UTF_8)));
+    }
+    
+    @Test
+    public void testFlattenDoesNotModifyCanonicalVisibility() {
+        ColumnVisibility canonical = VisibilityInterner.parse("(internB|internA)&internC".getBytes(UTF_8));
+        assertArrayEquals(new ColumnVisibility("(internB|internA)&internC").flatten(), canonical.flatten());
+        
+        // the shared parse tree is still in its original order
+        assertSame(canonical, VisibilityInterner.parse("(internB|internA)&internC".getBytes(UTF_8)));
+        assertEquals("internB",
+                        new String(canonical.getParseTree().getChildren().get(0).getChildren().get(0).getTerm(canonical.getExpression()).toArray(), UTF_8));
+    }
+}
@@ -0,0 +1,93 @@
+package datawave.security.iterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iteratorsImpl.system.SortedMapIterator;
+import org.apache.accumulo.core.security.Authorizations;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MultiAuthorizationsVisibilityFilterTest {
+    
+    private static final List<String> VISIBILITIES = Arrays.asList("A", "B", "C", "D", "A&B", "A|B", "A&(B|C)", "A&(B|C|D)", "(A&B)|(A&C)|(A&D)", "",
+                    "B&C&D", "E");
+    
+    private final TreeMap<Key,Value> data = new TreeMap<>();
+    
+    @BeforeEach
+    public void setUp() {
+        VisibilityVerdictCache.clear();
+        int row = 0;
+        for (String visibility : VISIBILITIES) {
+            data.put(new Key(String.format("row%02d", row++), "cf", "cq", visibility), new Value(new byte[0]));
+        }
+    }
+    
+    @Test
+    public void testEverySetMustSatisfyTheVisibility() throws IOException {
+        List<Authorizations> authorizations = Arrays.asList(new Authorizations("A", "B"), new Authorizations("A", "C"), new Authorizations("A", "D"));
+        assertEquals(Arrays.asList("A", "A|B", "A&(B|C|D)", "(A&B)|(A&C)|(A&D)", ""), scan(filter(authorizations)));
+        
+        // the same keys as a stack of one visibility filter per set
+        SortedKeyValueIterator<Key,Value> stacked = new SortedMapIterator(data);
+        for (Authorizations auths : authorizations) {
+            ConfigurableVisibilityFilter filter = new ConfigurableVisibilityFilter();
+            filter.init(stacked, Collections.singletonMap(ConfigurableVisibilityFilter.AUTHORIZATIONS_OPT, auths.toString()), null);
+            stacked = filter;
+        }
+        assertEquals(scan(stacked), scan(filter(authorizations)));
+    }
+    
+    @Test
+    public void testRedundantSetsDoNotChangeTheResult() throws IOException {
+        List<Authorizations> minimal = Arrays.asList(new Authorizations("A", "B"), new Authorizations("A", "C"));
+        List<Authorizations> redundant = Arrays.asList(new Authorizations("A", "B", "C", "D"), new Authorizations("A", "B"), new Authorizations("A", "C"),
+                        new Authorizations("C", "A"));
+        assertEquals(Arrays.asList("A", "A|B", "A&(B|C)", "A&(B|C|D)", "(A&B)|(A&C)|(A&D)", ""), scan(filter(minimal)));
+        assertEquals(scan(filter(minimal)), scan(filter(redundant)));
+    }
+    
+    @Test
+    public void testSingleSet() throws IOException {
+        assertEquals(Arrays.asList("A", "B", "A&B", "A|B", "A&(B|C)", "A&(B|C|D)", "(A&B)|(A&C)|(A&D)", ""),
+                        scan(filter(Collections.singletonList(new Authorizations("A", "B")))));
+    }
+    
+    @Test
+    public void testValidateOptions() {
+        MultiAuthorizationsVisibilityFilter filter = new MultiAuthorizationsVisibilityFilter();
+        String encoded = MultiAuthorizationsVisibilityFilter.encodeAuthorizations(Arrays.asList(new Authorizations("A"), new Authorizations("B", "C")));
+        assertTrue(filter.validateOptions(Collections.singletonMap(MultiAuthorizationsVisibilityFilter.AUTHORIZATIONS_OPT, encoded)));
+        assertFalse(filter.validateOptions(Collections.emptyMap()));
+    }
+    
+    private MultiAuthorizationsVisibilityFilter filter(List<Authorizations> authorizations) throws IOException {
+        MultiAuthorizationsVisibilityFilter filter = new MultiAuthorizationsVisibilityFilter();
+        String encoded = MultiAuthorizationsVisibilityFilter.encodeAuthorizations(authorizations);
+        filter.init(new SortedMapIterator(data), Collections.singletonMap(MultiAuthorizationsVisibilityFilter.AUTHORIZATIONS_OPT, encoded), null);
+        return filter;
+    }
+    
+    private static List<String> scan(SortedKeyValueIterator<Key,Value> iterator) throws IOException {
+        iterator.seek(new Range(), Collections.emptyList(), false);
+        List<String> visibilities = new ArrayList<>();
+        while (iterator.hasTop()) {
+            visibilities.add(iterator.getTopKey().getColumnVisibility().toString());
+            iterator.next();
+        }
+        return visibilities;
+    }
+}
@@ -0,0 +1,75 @@
+package datawave.security.iterator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iteratorsImpl.system.SortedMapIterator;
+import org.apache.accumulo.core.security.Authorizations;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class VisibilityVerdictCacheTest {
+    
+    private final TreeMap<Key,Value> data = new TreeMap<>();
+    
+    @BeforeEach
+    public void setUp() {
+        VisibilityVerdictCache.clear();
+        int row = 0;
+        for (String visibility : Arrays.asList("A", "B", "A&B", "A|C", "", "A&(B|C)", "A", "B")) {
+            data.put(new Key("row" + row++, "cf", "cq", visibility), new Value(new byte[0]));
+        }
+    }
+    
+    @Test
+    public void testConfigurableFiltersShareVerdicts() throws IOException {
+        assertEquals(Arrays.asList("A", "A|C", "", "A&(B|C)", "A"), scan(configurableFilter("A,C")));
+        assertEquals(1, VisibilityVerdictCache.size());
+        double coldHitRate = VisibilityVerdictCache.hitRate();
+        
+        // a new filter for the same authorizations, in a different order, starts with the verdicts of the first one
+        assertEquals(Arrays.asList("A", "A|C", "", "A&(B|C)", "A"), scan(configurableFilter("C,A")));
+        assertEquals(1, VisibilityVerdictCache.size());
+        assertTrue(VisibilityVerdictCache.hitRate() > coldHitRate);
+        assertSame(VisibilityVerdictCache.forAuthorizations("A,C"), VisibilityVerdictCache.forAuthorizations("C,A"));
+    }
+    
+    @Test
+    public void testMultiAuthorizationsFilter() throws IOException {
+        List<Authorizations> authorizations = Arrays.asList(new Authorizations("A", "B"), new Authorizations("A", "C"));
+        MultiAuthorizationsVisibilityFilter filter = new MultiAuthorizationsVisibilityFilter();
+        String encoded = MultiAuthorizationsVisibilityFilter.encodeAuthorizations(authorizations);
+        filter.init(new SortedMapIterator(data), Collections.singletonMap(MultiAuthorizationsVisibilityFilter.AUTHORIZATIONS_OPT, encoded), null);
+        assertEquals(Arrays.asList("A", "A|C", "", "A&(B|C)", "A"), scan(filter));
+        assertEquals(Arrays.asList("A", "A|C", "", "A&(B|C)", "A"), scan(filter.deepCopy(null)));
+        assertEquals(authorizations, MultiAuthorizationsVisibilityFilter.decodeAuthorizations(encoded));
+    }
+    
+    private SortedKeyValueIterator<Key,Value> configurableFilter(String auths) throws IOException {
+        ConfigurableVisibilityFilter filter = new ConfigurableVisibilityFilter();
+        filter.init(new SortedMapIterator(data), Collections.singletonMap(ConfigurableVisibilityFilter.AUTHORIZATIONS_OPT, auths), null);
+        return filter;
+    }
+    
+    private static List<String> scan(SortedKeyValueIterator<Key,Value> iterator) throws IOException {
+        iterator.seek(new Range(), Collections.emptyList(), false);
+        List<String> visibilities = new ArrayList<>();
+        while (iterator.hasTop()) {
+            visibilities.add(iterator.getTopKey().getColumnVisibility().toString());
+            iterator.next();
+        }
+        return visibilities;
+    }
+}
@@ -2,10 +2,17 @@ package datawave.security.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.apache.accumulo.core.security.Authorizations;
 import org.junit.jupiter.api.Test;
@@ -69,4 +76,55 @@ public class AuthorizationsMinimizerTest {
         Collection<Authorizations> actual = AuthorizationsMinimizer.minimize(toMinimize);
         assertEquals(expected, actual);
     }
+    
+    @Test
+    public void testWithEmptySet() {
+        Collection<Authorizations> toMinimize = Lists.newArrayList(new Authorizations("A", "B"), new Authorizations(), new Authorizations("C"));
+        LinkedHashSet<Authorizations> expected = new LinkedHashSet<>(Collections.singleton(new Authorizations()));
+        assertEquals(expected, AuthorizationsMinimizer.minimize(toMinimize));
+    }
+    
+    @Test
+    public void testMatchesSubsetScan() {
+        Random random = new Random(42);
+        for (int trial = 0; trial < 200; trial++) {
+            // large vocabularies so that the bitsets span several words
+            int vocabulary = 1 + random.nextInt(300);
+            List<Authorizations> toMinimize = new ArrayList<>();
+            int chainLength = 1 + random.nextInt(12);
+            for (int i = 0; i < chainLength; i++) {
+                List<String> auths = new ArrayList<>();
+                if (!toMinimize.isEmpty() && random.nextBoolean()) {
+                    // a superset of an earlier entity, like a server proxying for a user
+                    toMinimize.get(random.nextInt(toMinimize.size())).forEach(a -> auths.add(new String(a)));
+                }
+                int size = random.nextInt(100);
+                for (int j = 0; j < size; j++) {
+                    auths.add("A" + random.nextInt(vocabulary));
+                }
+                toMinimize.add(new Authorizations(auths.toArray(new String[0])));
+            }
+            assertEquals(minimizeBySubsetScan(toMinimize), AuthorizationsMinimizer.minimize(toMinimize));
+        }
+    }
+    
+    /**
+     * The original quadratic implementation, used as a reference
+     */
+    private static Collection<Authorizations> minimizeBySubsetScan(Collection<Authorizations> authorizations) {
+        if (authorizations.size() > 1) {
+            final LinkedHashSet<Set<String>> allAuths = authorizations.stream()
+                            .map(a -> a.getAuthorizations().stream().map(String::new).collect(Collectors.toCollection(HashSet::new)))
+                            .collect(Collectors.toCollection(LinkedHashSet::new));
+            for (Iterator<Set<String>> it = allAuths.iterator(); it.hasNext(); /* empty */) {
+                Set<String> currentSet = it.next();
+                if (allAuths.stream().filter(a -> a != currentSet && a.size() <= currentSet.size()).anyMatch(currentSet::containsAll))
+                    it.remove();
+            }
+            if (allAuths.size() < authorizations.size()) {
+                authorizations = allAuths.stream().map(a -> new Authorizations(a.toArray(new String[0]))).collect(Collectors.toCollection(LinkedHashSet::new));
+            }
+        }
+        return authorizations;
+    }
 }
@@ -2,6 +2,7 @@ package datawave.security.util;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -186,4 +187,32 @@ public class ScannerHelperTest {
         IteratorSetting cfg = new IteratorSetting(10, "dwSystem_mySystemIterator", ConfigurableVisibilityFilter.class);
         assertThrows(IllegalArgumentException.class, () -> scanner.addScanIterator(cfg));
     }
+    
+    @Test
+    public void testMinimizedAuthorizationsReused() throws Exception {
+        Authorizations a1 = new Authorizations("A", "B", "C");
+        Authorizations a2 = new Authorizations("A", "D", "E");
+        Authorizations a3 = new Authorizations("A", "B", "C", "D");
+        
+        MinimizedAuthorizations minimized = MinimizedAuthorizations.of(Arrays.asList(a1, a2, a3));
+        assertSame(minimized, MinimizedAuthorizations.of(Lists.newArrayList(a1, a2, a3)));
+        assertSame(minimized, MinimizedAuthorizations.of(minimized));
+        assertEquals(a1, minimized.getScanAuthorizations());
+        assertEquals(1, minimized.getSystemVisibilityFilters().size());
+        assertEquals("sys_visibilityFilter10", minimized.getSystemVisibilityFilters().get(0).getName());
+        assertEquals("visibilityFilter10", minimized.getVisibilityFilters().get(0).getName());
+        
+        WrappedAccumuloClient client = new WrappedAccumuloClient(mockConnector, mockConnector);
+        for (int i = 0; i < 2; i++) {
+            List<Key> expectedKeys = Lists.newArrayList(new Key("row", "cf2", "cq1", "A", 1L));
+            Scanner scanner = ScannerHelper.createScanner(client, TABLE_NAME, Arrays.asList(a1, a2, a3));
+            for (Entry<Key,Value> entry : scanner) {
+                assertFalse(expectedKeys.isEmpty(), "Ran out of expected keys but got: " + entry.getKey());
+                assertEquals(expectedKeys.remove(0), entry.getKey());
+            }
+            assertTrue(expectedKeys.isEmpty(), "Scanner did not return all expected keys: " + expectedKeys);
+        }
+        // the shared settings must not have been renamed or modified by the scanners
+        assertEquals("sys_visibilityFilter10", minimized.getSystemVisibilityFilters().get(0).getName());
+    }
 }
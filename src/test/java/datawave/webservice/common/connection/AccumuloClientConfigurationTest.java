@@ -0,0 +1,170 @@
+package datawave.webservice.common.connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.ScannerBase;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import datawave.accumulo.inmemory.InMemoryAccumuloClient;
+import datawave.accumulo.inmemory.InMemoryInstance;
+
+public class AccumuloClientConfigurationTest {
+    
+    @TempDir
+    Path tempDir;
+    
+    private static Map<String,String> hints(String... keysAndValues) {
+        Map<String,String> hints = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            hints.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return hints;
+    }
+    
+    @Test
+    public void testTableRulePrecedence() {
+        AccumuloClientConfiguration config = new AccumuloClientConfiguration();
+        config.putHints("datawave.shardIndex", hints("priority", "1"));
+        config.setConsistency("datawave.shardIndex", ScannerBase.ConsistencyLevel.IMMEDIATE);
+        config.putHints("/.*Index/", hints("priority", "2", "scan_type", "index"));
+        config.setConsistency("/.*Index/", ScannerBase.ConsistencyLevel.EVENTUAL);
+        config.putHints("datawave.*", hints("priority", "3", "executor", "datawave"));
+        config.putHints("*", hints("priority", "4", "executor", "default", "other", "x"));
+        
+        AccumuloClientConfiguration.TableSettings exact = config.getTableSettings("datawave.shardIndex");
+        assertEquals(hints("priority", "1", "scan_type", "index", "executor", "datawave", "other", "x"), exact.getHints());
+        assertEquals(ScannerBase.ConsistencyLevel.IMMEDIATE, exact.getConsistency());
+        
+        AccumuloClientConfiguration.TableSettings regex = config.getTableSettings("datawave.shardReverseIndex");
+        assertEquals(hints("priority", "2", "scan_type", "index", "executor", "datawave", "other", "x"), regex.getHints());
+        assertEquals(ScannerBase.ConsistencyLevel.EVENTUAL, regex.getConsistency());
+        
+        AccumuloClientConfiguration.TableSettings namespace = config.getTableSettings("datawave.shard");
+        assertEquals(hints("priority", "3", "executor", "datawave", "other", "x"), namespace.getHints());
+        assertNull(namespace.getConsistency());
+        
+        assertEquals(hints("priority", "4", "executor", "default", "other", "x"), config.getTableSettings("metadata").getHints());
+    }
+    
+    @Test
+    public void testSettingsResolvedOncePerChange() {
+        AccumuloClientConfiguration config = new AccumuloClientConfiguration(Collections.singletonMap("shard", hints("priority", "1")));
+        AccumuloClientConfiguration.TableSettings settings = config.getTableSettings("shard");
+        assertSame(settings, config.getTableSettings("shard"));
+        assertTrue(config.getTableSettings("other").getHints().isEmpty());
+        
+        config.addHint("shard", "executor", "fast");
+        AccumuloClientConfiguration.TableSettings changed = config.getTableSettings("shard");
+        assertEquals(hints("priority", "1", "executor", "fast"), changed.getHints());
+        // the settings handed out before are not changed
+        assertEquals(hints("priority", "1"), settings.getHints());
+        
+        config.putHints("shard", null);
+        assertTrue(config.getTableSettings("shard").getHints().isEmpty());
+    }
+    
+    @Test
+    public void testApplyOverrides() {
+        AccumuloClientConfiguration config = new AccumuloClientConfiguration(Collections.singletonMap("shard", hints("priority", "1")),
+                        Collections.singletonMap("shard", ScannerBase.ConsistencyLevel.EVENTUAL));
+        AccumuloClientConfiguration overrides = new AccumuloClientConfiguration(Collections.singletonMap("shard", hints("executor", "fast")));
+        overrides.putHints("*", hints("priority", "5"));
+        config.getTableSettings("shard");
+        config.applyOverrides(overrides);
+        
+        AccumuloClientConfiguration.TableSettings settings = config.getTableSettings("shard");
+        assertEquals(hints("priority", "5", "executor", "fast"), settings.getHints());
+        assertEquals(ScannerBase.ConsistencyLevel.EVENTUAL, settings.getConsistency());
+        assertEquals(hints("priority", "5"), config.getTableSettings("metadata").getHints());
+    }
+    
+    @Test
+    public void testInvalidRegex() {
+        AccumuloClientConfiguration config = new AccumuloClientConfiguration();
+        assertThrows(IllegalArgumentException.class, () -> config.putHints("/shard[/", hints("priority", "1")));
+        assertThrows(IllegalArgumentException.class, () -> config.setConsistency("", ScannerBase.ConsistencyLevel.EVENTUAL));
+    }
+    
+    @Test
+    public void testFromProperties() {
+        Properties properties = new Properties();
+        properties.setProperty("table.datawave.*.hint.executor", "datawave");
+        properties.setProperty("table.datawave.shard.hint.priority", " 2 ");
+        properties.setProperty("table./.*Index/.consistency", "eventual");
+        properties.setProperty("unrelated", "value");
+        AccumuloClientConfiguration config = AccumuloClientConfiguration.fromProperties(properties);
+        
+        assertEquals(hints("executor", "datawave", "priority", "2"), config.getTableSettings("datawave.shard").getHints());
+        assertEquals(ScannerBase.ConsistencyLevel.EVENTUAL, config.getTableSettings("datawave.shardIndex").getConsistency());
+        
+        Properties invalid = new Properties();
+        invalid.setProperty("table.shard.priority", "1");
+        assertThrows(IllegalArgumentException.class, () -> AccumuloClientConfiguration.fromProperties(invalid));
+        Properties level = new Properties();
+        level.setProperty("table.shard.consistency", "sometimes");
+        assertThrows(IllegalArgumentException.class, () -> AccumuloClientConfiguration.fromProperties(level));
+    }
+    
+    @Test
+    public void testReloader() throws Exception {
+        AccumuloClient mock = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        WrappedAccumuloClient client = new WrappedAccumuloClient(mock, mock);
+        AccumuloClientConfiguration base = new AccumuloClientConfiguration(Collections.singletonMap("metadata", hints("priority", "1")));
+        base.setAdaptiveScanTuning(new AdaptiveScanTuning());
+        client.setClientConfig(base);
+        
+        Path file = tempDir.resolve("client.properties");
+        Files.write(file, "table.shard.hint.priority=2\n".getBytes(StandardCharsets.UTF_8));
+        ClientConfigurationReloader reloader = new ClientConfigurationReloader(client, file);
+        assertTrue(reloader.reload());
+        assertFalse(reloader.reload());
+        assertEquals(hints("priority", "1"), client.getClientConfig().getTableSettings("metadata").getHints());
+        assertEquals(hints("priority", "2"), client.getClientConfig().getTableSettings("shard").getHints());
+        
+        AdaptiveScanTuning.Settings learned = new AdaptiveScanTuning.Settings(5000, 4);
+        client.getClientConfig().putScanSettings("shard", learned);
+        // updated after the file was loaded, so kept by later reloads
+        client.updateClientConfig(new AccumuloClientConfiguration(Collections.singletonMap("shardIndex", hints("priority", "4"))));
+        
+        // an edit that leaves the modification time unchanged is noticed too
+        FileTime modified = Files.getLastModifiedTime(file);
+        Files.write(file, "table.shard.hint.priority=3\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, modified);
+        assertTrue(reloader.reload());
+        assertEquals(hints("priority", "3"), client.getClientConfig().getTableSettings("shard").getHints());
+        assertEquals(hints("priority", "4"), client.getClientConfig().getTableSettings("shardIndex").getHints());
+        assertEquals(hints("priority", "1"), client.getClientConfig().getTableSettings("metadata").getHints());
+        assertEquals(learned, client.getClientConfig().getScanSettings("shard"));
+        
+        // a setting removed from the file no longer applies
+        Files.write(file, "table.shardIndex.consistency=eventual\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(reloader.reload());
+        assertTrue(client.getClientConfig().getTableSettings("shard").getHints().isEmpty());
+        assertEquals(ScannerBase.ConsistencyLevel.EVENTUAL, client.getClientConfig().getTableSettings("shardIndex").getConsistency());
+        assertEquals(hints("priority", "4"), client.getClientConfig().getTableSettings("shardIndex").getHints());
+        assertEquals(learned, client.getClientConfig().getScanSettings("shard"));
+        
+        // a malformed file keeps the current configuration
+        AccumuloClientConfiguration current = client.getClientConfig();
+        Files.write(file, "table.shard=3\n".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalArgumentException.class, reloader::reload);
+        assertSame(current, client.getClientConfig());
+        reloader.close();
+    }
+}
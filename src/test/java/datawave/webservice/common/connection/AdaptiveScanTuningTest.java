@@ -0,0 +1,129 @@
+package datawave.webservice.common.connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.junit.jupiter.api.Test;
+
+import datawave.accumulo.inmemory.InMemoryAccumuloClient;
+import datawave.accumulo.inmemory.InMemoryInstance;
+
+public class AdaptiveScanTuningTest {
+    
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final AdaptiveScanTuning tuning = new AdaptiveScanTuning(100, 10000, 100000, 1, 8);
+    
+    @Test
+    public void testBatchSizeFollowsEntrySize() {
+        AdaptiveScanTuning.Settings initial = tuning.initial();
+        assertEquals(new AdaptiveScanTuning.Settings(1000, 3), initial);
+        
+        // 10 byte entries want batches of 10000, moving halfway there
+        AdaptiveScanTuning.Settings narrow = tuning.adjust(initial, new AdaptiveScanTuning.Observation(5000, 50000, 20 * MS, 80 * MS));
+        assertEquals(5500, narrow.getBatchSize());
+        
+        // 10000 byte entries want batches of 10, bounded by 100
+        AdaptiveScanTuning.Settings wide = tuning.adjust(initial, new AdaptiveScanTuning.Observation(5000, 50000000, 20 * MS, 80 * MS));
+        assertEquals(550, wide.getBatchSize());
+        assertEquals(3, wide.getReadaheadThreshold());
+    }
+    
+    @Test
+    public void testReadaheadFollowsWaiting() {
+        AdaptiveScanTuning.Settings initial = tuning.initial();
+        AdaptiveScanTuning.Settings waiting = tuning.adjust(initial, new AdaptiveScanTuning.Observation(1000, 100000, 90 * MS, 10 * MS));
+        assertEquals(1, waiting.getReadaheadThreshold());
+        assertEquals(1, tuning.adjust(waiting, new AdaptiveScanTuning.Observation(1000, 100000, 90 * MS, 10 * MS)).getReadaheadThreshold());
+        
+        AdaptiveScanTuning.Settings idle = tuning.adjust(initial, new AdaptiveScanTuning.Observation(1000, 100000, 1 * MS, 99 * MS));
+        assertEquals(6, idle.getReadaheadThreshold());
+        assertEquals(8, tuning.adjust(idle, new AdaptiveScanTuning.Observation(1000, 100000, 1 * MS, 99 * MS)).getReadaheadThreshold());
+    }
+    
+    @Test
+    public void testTooLittleObserved() {
+        AdaptiveScanTuning.Settings initial = tuning.initial();
+        assertSame(initial, tuning.adjust(initial, new AdaptiveScanTuning.Observation(999, 999, 0, 0)));
+    }
+    
+    @Test
+    public void testInvalidBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveScanTuning(100, 10, 1000, 1, 8));
+    }
+    
+    @Test
+    public void testLearnedPerTable() throws Exception {
+        AccumuloClient mock = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        mock.tableOperations().create("narrow");
+        try (BatchWriter writer = mock.createBatchWriter("narrow", new BatchWriterConfig())) {
+            for (int i = 0; i < 2000; i++) {
+                Mutation m = new Mutation(String.format("%04d", i));
+                m.put("", "", new Value());
+                writer.addMutation(m);
+            }
+        }
+        WrappedAccumuloClient client = new WrappedAccumuloClient(mock, mock);
+        AccumuloClientConfiguration config = new AccumuloClientConfiguration();
+        client.setClientConfig(config);
+        assertNull(config.getScanSettings("narrow"));
+        config.setAdaptiveScanTuning(tuning);
+        
+        Scanner scanner = client.createScanner("narrow", Authorizations.EMPTY, true);
+        assertEquals(1000, scanner.getBatchSize());
+        scanner.forEach(entry -> {});
+        AdaptiveScanTuning.Settings learned = config.getScanSettings("narrow");
+        assertNotEquals(1000, learned.getBatchSize());
+        assertEquals(tuning.initial(), config.getScanSettings("other"));
+        
+        scanner = client.createScanner("narrow", Authorizations.EMPTY, true);
+        assertEquals(learned.getBatchSize(), scanner.getBatchSize());
+        
+        // an explicit batch size is neither replaced nor learned from
+        scanner.setBatchSize(500);
+        scanner.forEach(entry -> {});
+        assertEquals(500, scanner.getBatchSize());
+        assertEquals(learned.getBatchSize(), config.getScanSettings("narrow").getBatchSize());
+    }
+    
+    @Test
+    public void testLearnedAcrossConfigurationChanges() throws Exception {
+        AccumuloClient mock = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        mock.tableOperations().create("narrow");
+        try (BatchWriter writer = mock.createBatchWriter("narrow", new BatchWriterConfig())) {
+            for (int i = 0; i < 2000; i++) {
+                Mutation m = new Mutation(String.format("%04d", i));
+                m.put("", "", new Value());
+                writer.addMutation(m);
+            }
+        }
+        WrappedAccumuloClient client = new WrappedAccumuloClient(mock, mock);
+        AccumuloClientConfiguration config = new AccumuloClientConfiguration();
+        config.setAdaptiveScanTuning(tuning);
+        client.setClientConfig(config);
+        
+        // the configuration is replaced while the scan is in progress, and read ahead of
+        ScannerDelegate scanner = (ScannerDelegate) client.createScanner("narrow", Authorizations.EMPTY, true);
+        scanner.enablePrefetch(100, 2);
+        client.updateClientConfig(new AccumuloClientConfiguration());
+        assertNotSame(config, client.getClientConfig());
+        scanner.forEach(entry -> {});
+        scanner.close();
+        
+        assertEquals(tuning.initial(), config.getScanSettings("narrow"));
+        assertNotEquals(1000, client.getClientConfig().getScanSettings("narrow").getBatchSize());
+    }
+}
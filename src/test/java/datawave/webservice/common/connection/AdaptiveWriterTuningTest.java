@@ -0,0 +1,149 @@
+package datawave.webservice.common.connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.junit.jupiter.api.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import datawave.accumulo.inmemory.InMemoryAccumuloClient;
+import datawave.accumulo.inmemory.InMemoryInstance;
+
+public class AdaptiveWriterTuningTest {
+    
+    private static final long MB = 1024 * 1024;
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    
+    private final AdaptiveWriterTuning tuning = new AdaptiveWriterTuning();
+    
+    @Test
+    public void testInitialWithinBounds() {
+        assertEquals(new AdaptiveWriterTuning.Settings(50 * MB, 120000), tuning.initial(new BatchWriterConfig()));
+        BatchWriterConfig config = new BatchWriterConfig().setMaxMemory(1024).setMaxLatency(10, TimeUnit.MINUTES);
+        assertEquals(new AdaptiveWriterTuning.Settings(MB, 120000), tuning.initial(config));
+    }
+    
+    @Test
+    public void testBlockedGrowsBuffer() {
+        AdaptiveWriterTuning.Settings initial = new AdaptiveWriterTuning.Settings(50 * MB, 60000);
+        AdaptiveWriterTuning.Settings blocked = tuning.adjust(initial, new AdaptiveWriterTuning.Observation(1000, 100 * MS, 50 * MS, 50 * MB));
+        assertEquals(new AdaptiveWriterTuning.Settings(100 * MB, 30000), blocked);
+        
+        AdaptiveWriterTuning.Settings bounded = new AdaptiveWriterTuning.Settings(200 * MB, 150);
+        assertEquals(new AdaptiveWriterTuning.Settings(256 * MB, 100),
+                        tuning.adjust(bounded, new AdaptiveWriterTuning.Observation(1000, 100 * MS, 50 * MS, 200 * MB)));
+    }
+    
+    @Test
+    public void testUnderusedShrinksBuffer() {
+        AdaptiveWriterTuning.Settings initial = new AdaptiveWriterTuning.Settings(50 * MB, 30000);
+        AdaptiveWriterTuning.Settings underused = tuning.adjust(initial, new AdaptiveWriterTuning.Observation(1000, 100 * MS, 0, MB));
+        assertEquals(new AdaptiveWriterTuning.Settings(25 * MB, 60000), underused);
+        
+        // never below twice what was buffered
+        AdaptiveWriterTuning.Settings small = new AdaptiveWriterTuning.Settings(4 * MB, 30000);
+        assertEquals(new AdaptiveWriterTuning.Settings(2 * MB, 60000), tuning.adjust(small, new AdaptiveWriterTuning.Observation(1000, 100 * MS, 0, 512)));
+        
+        AdaptiveWriterTuning.Settings used = tuning.adjust(initial, new AdaptiveWriterTuning.Observation(1000, 100 * MS, 0, 20 * MB));
+        assertEquals(initial, used);
+    }
+    
+    @Test
+    public void testNothingWritten() {
+        AdaptiveWriterTuning.Settings initial = tuning.initial(new BatchWriterConfig());
+        assertSame(initial, tuning.adjust(initial, new AdaptiveWriterTuning.Observation(0, 100 * MS, 0, 0)));
+    }
+    
+    @Test
+    public void testInvalidBounds() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveWriterTuning(MB, 1024, 100, 1000));
+    }
+    
+    @Test
+    public void testLearnedPerTable() throws Exception {
+        AccumuloClient mock = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        mock.tableOperations().create("shard");
+        // load the writer classes first, so that the first mutation below is not mistaken for a blocked one
+        try (BatchWriter writer = mock.createBatchWriter("shard", new BatchWriterConfig())) {
+            writer.addMutation(mutation(-1));
+        }
+        MetricRegistry registry = new MetricRegistry();
+        WrappedAccumuloClient client = new WrappedAccumuloClient(mock, mock, registry);
+        AccumuloClientConfiguration config = new AccumuloClientConfiguration();
+        client.setClientConfig(config);
+        assertNull(config.getWriterSettings("shard", new BatchWriterConfig()));
+        config.setAdaptiveWriterTuning(tuning);
+        
+        try (BatchWriter writer = client.createBatchWriter("shard")) {
+            for (int i = 0; i < 100; i++) {
+                writer.addMutation(mutation(i));
+            }
+            writer.flush();
+        }
+        
+        // a few kilobytes in a 50MB buffer
+        assertEquals(new AdaptiveWriterTuning.Settings(25 * MB, 120000), config.getWriterSettings("shard", new BatchWriterConfig()));
+        assertEquals(tuning.initial(new BatchWriterConfig()), config.getWriterSettings("other", new BatchWriterConfig()));
+        
+        ConnectionMetrics.TableMetrics metrics = client.getMetrics().forTable("shard");
+        assertEquals(100, metrics.getMutations());
+        assertTrue(metrics.getMutationBytes() > 0);
+        assertEquals(2, metrics.getFlushes());
+        assertEquals(0, metrics.getRejected());
+        assertEquals(2, registry.histogram(MetricRegistry.name(ConnectionMetrics.PREFIX, "shard", "bufferHighWater")).getCount());
+    }
+    
+    @Test
+    public void testNullConfig() throws Exception {
+        AccumuloClient mock = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        mock.tableOperations().create("shard");
+        WrappedAccumuloClient client = new WrappedAccumuloClient(mock, mock);
+        AccumuloClientConfiguration config = new AccumuloClientConfiguration();
+        config.setAdaptiveWriterTuning(tuning);
+        client.setClientConfig(config);
+        
+        try (BatchWriter writer = client.createBatchWriter("shard", null)) {
+            writer.addMutation(mutation(0));
+        }
+        assertNotNull(config.getWriterSettings("shard", new BatchWriterConfig()));
+    }
+    
+    @Test
+    public void testLearnedAcrossConfigurationChanges() throws Exception {
+        AccumuloClient mock = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        mock.tableOperations().create("shard");
+        try (BatchWriter writer = mock.createBatchWriter("shard", new BatchWriterConfig())) {
+            writer.addMutation(mutation(-1));
+        }
+        WrappedAccumuloClient client = new WrappedAccumuloClient(mock, mock);
+        AccumuloClientConfiguration config = new AccumuloClientConfiguration();
+        config.setAdaptiveWriterTuning(tuning);
+        client.setClientConfig(config);
+        
+        try (BatchWriter writer = client.createBatchWriter("shard")) {
+            writer.addMutation(mutation(0));
+            // replaced while the writer is open, so what it learns goes to the new configuration
+            client.updateClientConfig(new AccumuloClientConfiguration());
+        }
+        assertEquals(tuning.initial(new BatchWriterConfig()), config.getWriterSettings("shard", new BatchWriterConfig()));
+        assertEquals(new AdaptiveWriterTuning.Settings(25 * MB, 120000), client.getClientConfig().getWriterSettings("shard", new BatchWriterConfig()));
+    }
+    
+    private static Mutation mutation(int row) {
+        Mutation m = new Mutation(String.format("%04d", row));
+        m.put("", "", new Value());
+        return m;
+    }
+}
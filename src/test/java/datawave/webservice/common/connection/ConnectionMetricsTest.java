@@ -0,0 +1,114 @@
+package datawave.webservice.common.connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Map;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.MultiTableBatchWriter;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import datawave.accumulo.inmemory.InMemoryAccumuloClient;
+import datawave.accumulo.inmemory.InMemoryInstance;
+
+public class ConnectionMetricsTest {
+    
+    private static final String TABLE_NAME = "DATA";
+    
+    private MetricRegistry registry;
+    private WrappedAccumuloClient client;
+    
+    @BeforeEach
+    public void setUp() throws Exception {
+        AccumuloClient mock = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        mock.tableOperations().create(TABLE_NAME);
+        registry = new MetricRegistry();
+        client = new WrappedAccumuloClient(mock, mock, registry);
+    }
+    
+    @Test
+    public void testScannerAndWriterMetrics() throws Exception {
+        try (BatchWriter writer = client.createBatchWriter(TABLE_NAME, new BatchWriterConfig())) {
+            for (int i = 0; i < 10; i++) {
+                Mutation m = new Mutation("row" + i);
+                m.put("cf", "cq", new Value("value"));
+                writer.addMutation(m);
+            }
+        }
+        
+        Scanner scanner = client.createScanner(TABLE_NAME, Authorizations.EMPTY);
+        ConnectionMetrics.TableMetrics metrics = client.getMetrics().forTable(TABLE_NAME);
+        assertEquals(1, metrics.getScanners(true));
+        assertEquals(0, metrics.getScanners(false));
+        assertEquals(1, metrics.getLiveScanners());
+        
+        long bytes = 0;
+        for (Map.Entry<Key,Value> entry : scanner) {
+            bytes += entry.getKey().getSize() + entry.getValue().getSize();
+        }
+        scanner.close();
+        scanner.close();
+        
+        assertEquals(0, metrics.getLiveScanners());
+        assertEquals(10, metrics.getEntries());
+        assertEquals(bytes, metrics.getBytes());
+        assertEquals(10, metrics.getMutations());
+        assertEquals(1, registry.timer(MetricRegistry.name(ConnectionMetrics.PREFIX, TABLE_NAME, "firstEntry")).getCount());
+        
+        client.createBatchScanner(TABLE_NAME, Authorizations.EMPTY, 1, true);
+        assertEquals(1, metrics.getScanners(false));
+    }
+    
+    @Test
+    public void testScannerWithoutAuthorizations() throws Exception {
+        Scanner scanner = client.createScanner(TABLE_NAME);
+        assertTrue(scanner instanceof ScannerDelegate);
+        scanner.close();
+        scanner = client.createScanner(TABLE_NAME, true);
+        assertTrue(scanner instanceof ScannerDelegate);
+        scanner.close();
+        
+        ConnectionMetrics.TableMetrics metrics = client.getMetrics().forTable(TABLE_NAME);
+        assertEquals(1, metrics.getScanners(true));
+        assertEquals(1, metrics.getScanners(false));
+        assertEquals(0, metrics.getLiveScanners());
+    }
+    
+    @Test
+    public void testMultiTableWriterMetrics() throws Exception {
+        MultiTableBatchWriter writer = client.createMultiTableBatchWriter(new BatchWriterConfig());
+        Mutation m = new Mutation("row");
+        m.put("cf", "cq", new Value("value"));
+        writer.getBatchWriter(TABLE_NAME).addMutation(m);
+        writer.flush();
+        writer.close();
+        assertEquals(1, client.getMetrics().forTable(TABLE_NAME).getMutations());
+        assertEquals(2, client.getMetrics().getMultiTableFlushes());
+        assertEquals(1, ((MultiTableBatchWriterDelegate) writer).getFlushCount());
+        assertTrue(registry.getMeters().containsKey(MetricRegistry.name(ConnectionMetrics.PREFIX, TABLE_NAME, "mutations")));
+    }
+    
+    @Test
+    public void testDisabled() throws Exception {
+        client.setMetricRegistry(null);
+        assertNull(client.getMetrics());
+        Scanner scanner = client.createScanner(TABLE_NAME, Authorizations.EMPTY);
+        assertTrue(scanner instanceof ScannerDelegate);
+        BatchWriter writer = client.createBatchWriter(TABLE_NAME, new BatchWriterConfig());
+        assertFalse(writer instanceof BatchWriterDelegate);
+        writer.close();
+    }
+}
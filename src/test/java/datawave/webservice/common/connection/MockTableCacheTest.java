@@ -0,0 +1,201 @@
+package datawave.webservice.common.connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.hadoop.io.Text;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Iterables;
+
+import datawave.accumulo.inmemory.InMemoryAccumuloClient;
+import datawave.accumulo.inmemory.InMemoryInstance;
+
+public class MockTableCacheTest {
+    
+    private final Set<String> tables = new TreeSet<>();
+    private final AtomicInteger listings = new AtomicInteger();
+    private final AtomicLong nanos = new AtomicLong();
+    private MockTableCache cache;
+    
+    @BeforeEach
+    public void setup() {
+        tables.add("shard");
+        cache = new MockTableCache(() -> {
+            listings.incrementAndGet();
+            return new TreeSet<>(tables);
+        }, 1000, new Ticker() {
+            @Override
+            public long read() {
+                return nanos.get();
+            }
+        });
+    }
+    
+    @Test
+    public void testListedOncePerInterval() {
+        assertTrue(cache.contains("shard"));
+        assertFalse(cache.contains("shardIndex"));
+        assertEquals(1, listings.get());
+        
+        tables.add("shardIndex");
+        assertFalse(cache.contains("shardIndex"));
+        assertEquals(1, listings.get());
+        
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(cache.contains("shardIndex"));
+        assertEquals(2, listings.get());
+    }
+    
+    @Test
+    public void testInvalidate() {
+        assertFalse(cache.contains("shardIndex"));
+        tables.add("shardIndex");
+        cache.invalidate();
+        assertTrue(cache.contains("shardIndex"));
+        assertEquals(2, listings.get());
+    }
+    
+    @Test
+    public void testMappedTables() {
+        assertEquals("shard", cache.resolve("shard"));
+        assertNull(cache.resolve("metadata"));
+        
+        assertNull(cache.map("metadata", "metadata_g1"));
+        assertEquals("metadata_g1", cache.resolve("metadata"));
+        assertEquals("metadata_g1", cache.map("metadata", "metadata_g2"));
+        assertEquals("metadata_g2", cache.resolve("metadata"));
+        // a mapping takes precedence over a table of the same name
+        cache.map("shard", "shard_g1");
+        assertEquals("shard_g1", cache.resolve("shard"));
+        
+        assertEquals("shard_g1", cache.unmap("shard"));
+        assertEquals("shard", cache.resolve("shard"));
+        assertEquals("metadata_g2", cache.unmap("metadata"));
+        assertFalse(cache.contains("metadata"));
+        assertNull(cache.unmap("metadata"));
+    }
+    
+    @Test
+    public void testRouteByAuthorizationsAndColumns() {
+        MockTableCache.MockTable shard = cache.route("shard", null);
+        assertEquals("shard", shard.getPhysicalName());
+        assertTrue(shard.hasAllColumns());
+        assertTrue(shard.covers(Collections.emptyList()));
+        
+        cache.map("metadata", "metadata_g1", Arrays.asList(new Authorizations("A", "B"), new Authorizations("A", "C")),
+                        Arrays.asList(new IteratorSetting.Column(new Text("f")), new IteratorSetting.Column(new Text("g"), new Text("q"))));
+        // only the entries visible to both authorizations were copied
+        assertNotNull(cache.route("metadata", new Authorizations("A")));
+        assertNotNull(cache.route("metadata", Authorizations.EMPTY));
+        assertNull(cache.route("metadata", new Authorizations("A", "B")));
+        assertNull(cache.route("metadata", new Authorizations("C")));
+        assertNull(cache.route("metadata", null));
+        
+        MockTableCache.MockTable metadata = cache.route("metadata", new Authorizations("A"));
+        assertEquals("metadata_g1", metadata.getPhysicalName());
+        assertFalse(metadata.hasAllColumns());
+        assertFalse(metadata.covers(Collections.emptyList()));
+        assertTrue(metadata.covers(Collections.singletonList(new IteratorSetting.Column(new Text("f")))));
+        assertTrue(metadata.covers(Collections.singletonList(new IteratorSetting.Column(new Text("f"), new Text("x")))));
+        assertTrue(metadata.covers(Collections.singletonList(new IteratorSetting.Column(new Text("g"), new Text("q")))));
+        assertFalse(metadata.covers(Collections.singletonList(new IteratorSetting.Column(new Text("g")))));
+        assertFalse(metadata.covers(Arrays.asList(new IteratorSetting.Column(new Text("f")), new IteratorSetting.Column(new Text("h")))));
+    }
+    
+    @Test
+    public void testFailedRefreshKeepsTableNames() {
+        MockTableCache failing = new MockTableCache(() -> {
+            if (listings.incrementAndGet() > 1) {
+                throw new IllegalStateException("listing failed");
+            }
+            return tables;
+        }, 0);
+        assertTrue(failing.contains("shard"));
+        assertTrue(failing.contains("shard"));
+        assertEquals(2, listings.get());
+    }
+    
+    @Test
+    public void testChangesThroughTheMockClientInvalidate() throws Exception {
+        AccumuloClient real = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        real.tableOperations().create("shard");
+        try (BatchWriter writer = real.createBatchWriter("shard", new BatchWriterConfig())) {
+            Mutation m = new Mutation("row");
+            m.put("f", "q", new Value("real"));
+            writer.addMutation(m);
+        }
+        AccumuloClient mock = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        WrappedAccumuloClient client = new WrappedAccumuloClient(real, mock);
+        assertFalse(client.getMockTableCache().contains("shard"));
+        
+        client.getInvalidatingMock().tableOperations().create("shard");
+        assertTrue(client.getMockTableCache().contains("shard"));
+        try (Scanner scanner = client.createScanner("shard", Authorizations.EMPTY)) {
+            assertEquals(0, Iterables.size(scanner));
+        }
+        
+        client.getInvalidatingMock().tableOperations().rename("shard", "shardIndex");
+        assertFalse(client.getMockTableCache().contains("shard"));
+        assertTrue(client.getMockTableCache().contains("shardIndex"));
+        
+        // a table deleted without going through the wrapped client is scanned in the real instance instead
+        client.getInvalidatingMock().tableOperations().rename("shardIndex", "shard");
+        assertTrue(client.getMockTableCache().contains("shard"));
+        mock.tableOperations().delete("shard");
+        try (Scanner scanner = client.createScanner("shard", Authorizations.EMPTY)) {
+            assertEquals(1, Iterables.size(scanner));
+        }
+        assertFalse(client.getMockTableCache().contains("shard"));
+        
+        // the plain mock client is still the mock instance's own client
+        assertSame(mock, client.getMock());
+    }
+    
+    @Test
+    public void testScannerWithoutAuthorizationsReadsTheRealInstance() throws Exception {
+        AccumuloClient real = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        real.tableOperations().create("shard");
+        try (BatchWriter writer = real.createBatchWriter("shard", new BatchWriterConfig())) {
+            Mutation m = new Mutation("row");
+            m.put("f", "q", new Value("real"));
+            writer.addMutation(m);
+        }
+        AccumuloClient mock = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        WrappedAccumuloClient client = new WrappedAccumuloClient(real, mock);
+        try (Scanner scanner = client.createScanner("shard")) {
+            assertEquals(new Value("real"), Iterables.getOnlyElement(scanner).getValue());
+        }
+        
+        // skipping the mock instance reads the real one, not the mock copy
+        client.getInvalidatingMock().tableOperations().create("shard");
+        try (Scanner scanner = client.createScanner("shard")) {
+            assertEquals(0, Iterables.size(scanner));
+        }
+        try (Scanner scanner = client.createScanner("shard", true)) {
+            assertEquals(new Value("real"), Iterables.getOnlyElement(scanner).getValue());
+        }
+    }
+}
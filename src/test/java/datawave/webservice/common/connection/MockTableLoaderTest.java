@@ -0,0 +1,235 @@
+package datawave.webservice.common.connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.IteratorSetting;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.ScannerBase;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.user.VersioningIterator;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Iterables;
+
+import datawave.accumulo.inmemory.InMemoryAccumuloClient;
+import datawave.accumulo.inmemory.InMemoryInstance;
+
+public class MockTableLoaderTest {
+    
+    private static final String TABLE_NAME = "metadata";
+    private static final Authorizations AUTHS = new Authorizations("A");
+    
+    private AccumuloClient real;
+    private AccumuloClient mock;
+    private WrappedAccumuloClient client;
+    private MockTableLoader loader;
+    
+    @BeforeEach
+    public void setUp() throws Exception {
+        real = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        real.securityOperations().changeUserAuthorizations("root", new Authorizations("A", "B"));
+        real.tableOperations().create(TABLE_NAME);
+        write(0, 10);
+        mock = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        client = new WrappedAccumuloClient(real, mock);
+        loader = new MockTableLoader(client);
+        loader.setGracePeriod(0, TimeUnit.MILLISECONDS);
+        loader.mirror(new MockTableLoader.MirroredTable(TABLE_NAME, Collections.singleton(AUTHS)).fetchColumnFamily(new Text("f")));
+    }
+    
+    @AfterEach
+    public void tearDown() {
+        loader.close();
+    }
+    
+    private void write(int from, int to) throws Exception {
+        try (BatchWriter writer = real.createBatchWriter(TABLE_NAME, new BatchWriterConfig())) {
+            for (int i = from; i < to; i++) {
+                Mutation m = new Mutation(String.format("row%03d", i));
+                m.put("f", "a", new ColumnVisibility("A"), new Value("value" + i));
+                m.put("f", "b", new ColumnVisibility("A"), new Value("value" + i));
+                // neither visible to the mirrored authorizations nor in the mirrored columns
+                m.put("f", "c", new ColumnVisibility("B"), new Value("value" + i));
+                m.put("g", "a", new ColumnVisibility("A"), new Value("value" + i));
+                writer.addMutation(m);
+            }
+        }
+    }
+    
+    private List<Map.Entry<Key,Value>> scanMock() throws Exception {
+        List<Map.Entry<Key,Value>> entries = new ArrayList<>();
+        try (Scanner scanner = mock.createScanner(client.getMockTableCache().resolve(TABLE_NAME), AUTHS)) {
+            scanner.forEach(entries::add);
+        }
+        return entries;
+    }
+    
+    @Test
+    public void testLoad() throws Exception {
+        assertFalse(client.getMockTableCache().contains(TABLE_NAME));
+        assertEquals(20, loader.load(TABLE_NAME));
+        assertTrue(client.getMockTableCache().contains(TABLE_NAME));
+        
+        List<Map.Entry<Key,Value>> entries = scanMock();
+        assertEquals(20, entries.size());
+        for (Map.Entry<Key,Value> entry : entries) {
+            assertEquals(new Text("f"), entry.getKey().getColumnFamily());
+            assertEquals(new Text("A"), entry.getKey().getColumnVisibility());
+        }
+        assertEquals(20, loader.getMirroredTables().iterator().next().getLoadedEntries());
+    }
+    
+    @Test
+    public void testReloadReplacesCopy() throws Exception {
+        loader.load(TABLE_NAME);
+        String first = client.getMockTableCache().resolve(TABLE_NAME);
+        assertEquals(TABLE_NAME + MockTableLoader.GENERATION_SEPARATOR + 1, first);
+        write(10, 15);
+        assertEquals(30, loader.load(TABLE_NAME));
+        assertEquals(TABLE_NAME + MockTableLoader.GENERATION_SEPARATOR + 2, client.getMockTableCache().resolve(TABLE_NAME));
+        assertEquals(30, scanMock().size());
+        // without a grace period the previous generation is deleted at once
+        assertEquals(Collections.singleton(TABLE_NAME + MockTableLoader.GENERATION_SEPARATOR + 2), mock.tableOperations().list());
+    }
+    
+    @Test
+    public void testPreviousGenerationKeptForGracePeriod() throws Exception {
+        loader.setGracePeriod(200, TimeUnit.MILLISECONDS);
+        loader.load(TABLE_NAME);
+        String first = client.getMockTableCache().resolve(TABLE_NAME);
+        try (Scanner scanner = mock.createScanner(first, AUTHS)) {
+            Iterator<Map.Entry<Key,Value>> reading = scanner.iterator();
+            reading.next();
+            loader.load(TABLE_NAME);
+            assertTrue(mock.tableOperations().exists(first));
+            
+            // a scanner created before the switch keeps reading the previous generation
+            int entries = 1;
+            while (reading.hasNext()) {
+                reading.next();
+                entries++;
+            }
+            assertEquals(20, entries);
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (mock.tableOperations().exists(first) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(mock.tableOperations().exists(first));
+        assertTrue(mock.tableOperations().exists(client.getMockTableCache().resolve(TABLE_NAME)));
+    }
+    
+    @Test
+    public void testRoutesOnlyMirroredScans() throws Exception {
+        loader.load(TABLE_NAME);
+        // the mock instance holds 10 rows, the real instance 15
+        write(10, 15);
+        
+        assertEquals(20, count(client.createScanner(TABLE_NAME, AUTHS), "f"));
+        assertEquals(10, count(client.createScanner(TABLE_NAME, AUTHS), "f", "a"));
+        BatchScanner batchScanner = client.createBatchScanner(TABLE_NAME, AUTHS, 2);
+        batchScanner.setRanges(Collections.singleton(new Range()));
+        assertEquals(20, count(batchScanner, "f"));
+        
+        // columns that were not mirrored
+        assertEquals(45, count(client.createScanner(TABLE_NAME, AUTHS)));
+        assertEquals(15, count(client.createScanner(TABLE_NAME, AUTHS), "g"));
+        // authorizations that were not mirrored, or are not known
+        assertEquals(45, count(client.createScanner(TABLE_NAME, new Authorizations("A", "B")), "f"));
+        assertEquals(45, count(client.createScanner(TABLE_NAME), "f"));
+        
+        // the columns of a scanner may change between scans
+        Scanner scanner = client.createScanner(TABLE_NAME, AUTHS);
+        scanner.fetchColumnFamily(new Text("f"));
+        assertEquals(20, Iterables.size(scanner));
+        scanner.clearColumns();
+        assertEquals(45, Iterables.size(scanner));
+        scanner.close();
+    }
+    
+    @Test
+    public void testRoutedScannerIsCountedWhenRead() throws Exception {
+        loader.load(TABLE_NAME);
+        client.setMetricRegistry(new MetricRegistry());
+        ConnectionMetrics.TableMetrics metrics = client.getMetrics().forTable(TABLE_NAME);
+        
+        Scanner scanner = client.createScanner(TABLE_NAME, AUTHS);
+        assertEquals(1, metrics.getLiveScanners());
+        assertEquals(0, metrics.getScanners(true) + metrics.getScanners(false));
+        
+        // the iterators of a routed scanner are cleared like those of any other
+        scanner.addScanIterator(new IteratorSetting(50, "versions", VersioningIterator.class));
+        scanner.clearScanIterators();
+        scanner.fetchColumnFamily(new Text("f"));
+        assertEquals(20, Iterables.size(scanner));
+        scanner.clearColumns();
+        assertEquals(30, Iterables.size(scanner));
+        assertEquals(1, metrics.getScanners(true));
+        assertEquals(0, metrics.getScanners(false));
+        
+        scanner.close();
+        assertEquals(0, metrics.getLiveScanners());
+    }
+    
+    private static int count(ScannerBase scanner, String... column) {
+        try {
+            if (column.length == 1) {
+                scanner.fetchColumnFamily(new Text(column[0]));
+            } else if (column.length == 2) {
+                scanner.fetchColumn(new Text(column[0]), new Text(column[1]));
+            }
+            return Iterables.size(scanner);
+        } finally {
+            scanner.close();
+        }
+    }
+    
+    @Test
+    public void testFailedLoad() throws Exception {
+        loader.mirror(new MockTableLoader.MirroredTable("missing", Collections.singleton(AUTHS)));
+        assertThrows(TableNotFoundException.class, () -> loader.load("missing"));
+        assertTrue(mock.tableOperations().list().stream().noneMatch(t -> t.startsWith("missing")));
+        assertFalse(client.getMockTableCache().contains("missing"));
+        assertThrows(IllegalArgumentException.class, () -> loader.load("unknown"));
+    }
+    
+    @Test
+    public void testBackgroundRefresh() throws Exception {
+        MockTableLoader.MirroredTable table = loader.getMirroredTables().iterator().next();
+        table.setTimeToLive(50, TimeUnit.MILLISECONDS);
+        loader.start();
+        assertEquals(20, table.getLoadedEntries());
+        assertTrue(client.getMockTableCache().contains(TABLE_NAME));
+        
+        write(10, 15);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (table.getLoadedEntries() != 30 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(30, table.getLoadedEntries());
+    }
+}
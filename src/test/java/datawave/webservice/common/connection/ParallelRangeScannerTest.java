@@ -0,0 +1,138 @@
+package datawave.webservice.common.connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import datawave.accumulo.inmemory.InMemoryAccumuloClient;
+import datawave.accumulo.inmemory.InMemoryInstance;
+
+public class ParallelRangeScannerTest {
+    
+    private static final String TABLE_NAME = "DATA";
+    private static final List<Authorizations> AUTHS = Arrays.asList(new Authorizations("A", "B"), new Authorizations("A", "C"));
+    
+    private WrappedAccumuloClient client;
+    private List<Range> ranges;
+    
+    @BeforeEach
+    public void setUp() throws Exception {
+        AccumuloClient mock = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        mock.securityOperations().changeUserAuthorizations("root", new Authorizations("A", "B", "C"));
+        mock.tableOperations().create(TABLE_NAME);
+        try (BatchWriter bw = mock.createBatchWriter(TABLE_NAME, new BatchWriterConfig())) {
+            for (int i = 0; i < 100; i++) {
+                Mutation m = new Mutation(String.format("row%03d", i));
+                m.put("cf", "a", new ColumnVisibility("A"), new Value(new byte[0]));
+                // only visible to the first authorizations set, so always filtered out
+                m.put("cf", "b", new ColumnVisibility("B"), new Value(new byte[0]));
+                bw.addMutation(m);
+            }
+        }
+        client = new WrappedAccumuloClient(mock, mock);
+        
+        ranges = new ArrayList<>();
+        for (int i = 90; i >= 0; i -= 10) {
+            ranges.add(new Range(String.format("row%03d", i), true, String.format("row%03d", i + 10), false));
+        }
+    }
+    
+    @Test
+    public void testScanInOrder() {
+        ParallelRangeScanner scanner = new ParallelRangeScanner(client, TABLE_NAME, AUTHS, 3);
+        scanner.setBatchSize(3);
+        List<String> rows = new ArrayList<>();
+        try (ParallelRangeScanner.Scan scan = scanner.scanInOrder(ranges)) {
+            scan.forEachRemaining(entry -> {
+                assertEquals(new Text("a"), entry.getKey().getColumnQualifier());
+                rows.add(entry.getKey().getRow().toString());
+            });
+        }
+        
+        List<String> expected = new ArrayList<>();
+        for (int i = 90; i >= 0; i -= 10) {
+            for (int j = i; j < i + 10; j++) {
+                expected.add(String.format("row%03d", j));
+            }
+        }
+        assertEquals(expected, rows);
+    }
+    
+    @Test
+    public void testScanUnordered() {
+        ParallelRangeScanner scanner = new ParallelRangeScanner(client, TABLE_NAME, AUTHS, 4);
+        scanner.setBatchSize(4);
+        scanner.setQueueDepth(1);
+        scanner.setScannerConfigurer(s -> s.fetchColumn(new Text("cf"), new Text("a")));
+        List<String> rows = new ArrayList<>();
+        try (ParallelRangeScanner.Scan scan = scanner.scanUnordered(ranges)) {
+            scan.forEachRemaining(entry -> rows.add(entry.getKey().getRow().toString()));
+        }
+        
+        assertEquals(100, rows.size());
+        Collections.sort(rows);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(String.format("row%03d", i), rows.get(i));
+        }
+        assertTrue(scanner.getStats().getBatchCount() >= 30);
+    }
+    
+    @Test
+    public void testCloseEarly() {
+        ParallelRangeScanner scanner = new ParallelRangeScanner(client, TABLE_NAME, AUTHS, 2);
+        scanner.setBatchSize(1);
+        scanner.setQueueDepth(1);
+        for (ParallelRangeScanner.Scan scan : Arrays.asList(scanner.scanInOrder(ranges), scanner.scanUnordered(ranges))) {
+            Map.Entry<Key,Value> first = scan.next();
+            assertTrue(first.getKey().getRow().toString().startsWith("row"));
+            scan.close();
+            assertThrows(IllegalStateException.class, scan::hasNext);
+        }
+    }
+    
+    @Test
+    public void testMissingTable() {
+        ParallelRangeScanner scanner = new ParallelRangeScanner(client, "missing", AUTHS, 2);
+        try (ParallelRangeScanner.Scan scan = scanner.scanUnordered(ranges)) {
+            assertThrows(IllegalStateException.class, scan::hasNext);
+        }
+        assertThrows(IllegalStateException.class, () -> scanner.scanInOrder(ranges));
+    }
+    
+    @Test
+    public void testFailedOpenClosesScanners() {
+        client.setMetricRegistry(new MetricRegistry());
+        AtomicInteger configured = new AtomicInteger();
+        ParallelRangeScanner scanner = new ParallelRangeScanner(client, TABLE_NAME, AUTHS, 3);
+        scanner.setScannerConfigurer(s -> {
+            if (configured.incrementAndGet() == 3) {
+                throw new IllegalArgumentException("bad column");
+            }
+        });
+        assertThrows(IllegalArgumentException.class, () -> scanner.scanInOrder(ranges));
+        assertEquals(3, configured.get());
+        assertEquals(0, client.getMetrics().forTable(TABLE_NAME).getLiveScanners());
+    }
+}
@@ -0,0 +1,219 @@
+package datawave.webservice.common.connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.junit.jupiter.api.Test;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+public class PrefetchingIteratorTest {
+    
+    @Test
+    public void testReadsAheadInOrder() {
+        List<Map.Entry<Key,Value>> entries = entries(1000);
+        PrefetchingIterator.Stats stats = new PrefetchingIterator.Stats();
+        List<Map.Entry<Key,Value>> read = new ArrayList<>();
+        try (PrefetchingIterator iterator = new PrefetchingIterator(entries.iterator(), 7, 2, null, stats)) {
+            iterator.forEachRemaining(read::add);
+            assertFalse(iterator.hasNext());
+        }
+        assertEquals(entries, read);
+        assertEquals(143, stats.getBatchCount());
+    }
+    
+    @Test
+    public void testEmptySource() {
+        try (PrefetchingIterator iterator = new PrefetchingIterator(entries(0).iterator(), 10, 1, null, new PrefetchingIterator.Stats())) {
+            assertFalse(iterator.hasNext());
+        }
+    }
+    
+    @Test
+    public void testFailureFollowsEarlierEntries() {
+        Iterator<Map.Entry<Key,Value>> source = entries(5).iterator();
+        Iterator<Map.Entry<Key,Value>> failing = new Iterator<Map.Entry<Key,Value>>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+            
+            @Override
+            public Map.Entry<Key,Value> next() {
+                if (source.hasNext()) {
+                    return source.next();
+                }
+                throw new IllegalStateException("tablet server failed");
+            }
+        };
+        try (PrefetchingIterator iterator = new PrefetchingIterator(failing, 2, 4, null, new PrefetchingIterator.Stats())) {
+            for (int i = 0; i < 5; i++) {
+                iterator.next();
+            }
+            IllegalStateException e = assertThrows(IllegalStateException.class, iterator::hasNext);
+            assertEquals("tablet server failed", e.getMessage());
+        }
+    }
+    
+    @Test
+    public void testCloseStopsReadingAhead() throws InterruptedException {
+        AtomicInteger read = new AtomicInteger();
+        Iterator<Map.Entry<Key,Value>> endless = new Iterator<Map.Entry<Key,Value>>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+            
+            @Override
+            public Map.Entry<Key,Value> next() {
+                return entry(read.incrementAndGet());
+            }
+        };
+        PrefetchingIterator iterator = new PrefetchingIterator(endless, 2, 3, null, new PrefetchingIterator.Stats());
+        // three batches are queued and a fourth is waiting for room, so the source is not read any further
+        awaitCondition(() -> iterator.getQueueDepth() == 3 && read.get() == 8);
+        assertEquals(8, read.get());
+        
+        // taking a batch makes room for the waiting one, and the next batch read waits in its place
+        assertEquals(entry(1), iterator.next());
+        assertEquals(entry(2), iterator.next());
+        awaitCondition(() -> iterator.getQueueDepth() == 3 && read.get() == 10);
+        assertEquals(10, read.get());
+        
+        iterator.close();
+        assertEquals(0, iterator.getQueueDepth());
+        assertThrows(IllegalStateException.class, iterator::hasNext);
+    }
+    
+    @Test
+    public void testCloseWaitsForTheTask() throws InterruptedException {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean stillReading = new AtomicBoolean();
+        Iterator<Map.Entry<Key,Value>> blocked = new Iterator<Map.Entry<Key,Value>>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+            
+            @Override
+            public Map.Entry<Key,Value> next() {
+                stillReading.set(true);
+                reading.countDown();
+                // like a tablet server read, does not respond to the interrupt
+                Uninterruptibles.awaitUninterruptibly(release);
+                stillReading.set(false);
+                return entry(0);
+            }
+        };
+        PrefetchingIterator iterator = new PrefetchingIterator(blocked, 1000, 1, null, new PrefetchingIterator.Stats());
+        assertTrue(reading.await(10, TimeUnit.SECONDS));
+        iterator.stop();
+        assertTrue(iterator.isFinished());
+        assertFalse(iterator.awaitStopped(0, TimeUnit.MILLISECONDS));
+        assertTrue(stillReading.get());
+        
+        release.countDown();
+        assertTrue(iterator.awaitStopped(10, TimeUnit.SECONDS));
+        assertFalse(stillReading.get());
+        iterator.close();
+    }
+    
+    @Test
+    public void testCloseBeforeTheTaskStarts() {
+        ThreadPoolExecutor executor = PrefetchingIterator.newDefaultExecutor(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // occupy the only thread, so the prefetching task waits for it
+            executor.submit(() -> Uninterruptibles.awaitUninterruptibly(release));
+            Iterator<Map.Entry<Key,Value>> source = entries(10).iterator();
+            PrefetchingIterator iterator = new PrefetchingIterator(source, 2, 1, executor, new PrefetchingIterator.Stats());
+            assertEquals(1, executor.getQueue().size());
+            // the task never started, so there is nothing to wait for
+            iterator.stop();
+            assertTrue(iterator.awaitStopped(0, TimeUnit.MILLISECONDS));
+            iterator.close();
+            assertTrue(iterator.isFinished());
+            assertEquals(entry(0), source.next());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+    }
+    
+    @Test
+    public void testDefaultExecutorIsBounded() {
+        ThreadPoolExecutor executor = PrefetchingIterator.newDefaultExecutor(PrefetchingIterator.DEFAULT_MAX_THREADS);
+        try {
+            assertEquals(PrefetchingIterator.DEFAULT_MAX_THREADS, executor.getMaximumPoolSize());
+            assertTrue(executor.allowsCoreThreadTimeOut());
+        } finally {
+            executor.shutdown();
+        }
+        assertThrows(IllegalArgumentException.class, () -> PrefetchingIterator.newDefaultExecutor(0));
+    }
+    
+    @Test
+    public void testAbandonedIteratorStopsReadingAhead() throws InterruptedException {
+        AtomicInteger read = new AtomicInteger();
+        Iterator<Map.Entry<Key,Value>> endless = new Iterator<Map.Entry<Key,Value>>() {
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+            
+            @Override
+            public Map.Entry<Key,Value> next() {
+                return entry(read.incrementAndGet());
+            }
+        };
+        PrefetchingIterator iterator = new PrefetchingIterator(endless, 2, 1, null, new PrefetchingIterator.Stats(), 300);
+        awaitCondition(iterator::isFinished);
+        assertEquals(4, read.get());
+        
+        // the batch queued before giving up is still served, then the consumer learns that the iterator stopped
+        assertEquals(entry(1), iterator.next());
+        assertEquals(entry(2), iterator.next());
+        assertThrows(IllegalStateException.class, iterator::hasNext);
+        iterator.close();
+    }
+    
+    /**
+     * Wait for the background task to reach a state, failing if it does not within a generous deadline
+     */
+    private static void awaitCondition(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for the prefetching task");
+            Thread.sleep(10);
+        }
+    }
+    
+    private static List<Map.Entry<Key,Value>> entries(int count) {
+        List<Map.Entry<Key,Value>> entries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            entries.add(entry(i));
+        }
+        return entries;
+    }
+    
+    private static Map.Entry<Key,Value> entry(int i) {
+        return new AbstractMap.SimpleImmutableEntry<>(new Key(String.format("row%05d", i)), new Value(Integer.toString(i)));
+    }
+}
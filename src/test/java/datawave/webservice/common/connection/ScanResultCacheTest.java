@@ -0,0 +1,305 @@
+package datawave.webservice.common.connection;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.client.AccumuloClient;
+import org.apache.accumulo.core.client.BatchDeleter;
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.ConditionalWriter;
+import org.apache.accumulo.core.client.MultiTableBatchWriter;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.ScannerBase;
+import org.apache.accumulo.core.data.ConditionalMutation;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.Authorizations;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+import datawave.accumulo.inmemory.InMemoryAccumuloClient;
+import datawave.accumulo.inmemory.InMemoryInstance;
+
+public class ScanResultCacheTest {
+    
+    private static final String TABLE_NAME = "metadata";
+    private static final String UNCACHED_TABLE_NAME = "shard";
+    private static final Authorizations AUTHS = new Authorizations("A", "B");
+    
+    private AccumuloClient real;
+    private WrappedAccumuloClient client;
+    private ScanResultCache cache;
+    
+    @BeforeEach
+    public void setUp() throws Exception {
+        real = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        real.securityOperations().changeUserAuthorizations("root", AUTHS);
+        real.tableOperations().create(TABLE_NAME);
+        real.tableOperations().create(UNCACHED_TABLE_NAME);
+        write(TABLE_NAME, 0, 10);
+        write(UNCACHED_TABLE_NAME, 0, 10);
+        
+        // the table only exists in the real instance, so scanners are not routed to the mock
+        AccumuloClient mock = new InMemoryAccumuloClient("root", new InMemoryInstance());
+        client = new WrappedAccumuloClient(real, mock, new MetricRegistry());
+        cache = new ScanResultCache(1024 * 1024, 1, TimeUnit.MINUTES);
+        cache.enable(TABLE_NAME);
+        client.setScanResultCache(cache);
+    }
+    
+    private void write(String tableName, int from, int to) throws Exception {
+        try (BatchWriter writer = real.createBatchWriter(tableName, new BatchWriterConfig())) {
+            for (int i = from; i < to; i++) {
+                Mutation m = new Mutation(String.format("row%03d", i));
+                m.put("f", "a", new ColumnVisibility("A"), new Value("value" + i));
+                m.put("g", "b", new ColumnVisibility("B"), new Value("value" + i));
+                writer.addMutation(m);
+            }
+        }
+    }
+    
+    private static List<Key> keys(ScannerBase scanner) {
+        List<Key> keys = new ArrayList<>();
+        for (Map.Entry<Key,Value> entry : scanner) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+    
+    private ConnectionMetrics.TableMetrics metrics(String tableName) {
+        return client.getMetrics().forTable(tableName);
+    }
+    
+    @Test
+    public void testRepeatedScanIsServedFromCache() throws Exception {
+        List<Key> first = keys(client.createScanner(TABLE_NAME, AUTHS));
+        assertEquals(20, first.size());
+        assertEquals(1, cache.size());
+        
+        write(TABLE_NAME, 10, 20);
+        // not seen until the cached result expires or is invalidated
+        assertEquals(first, keys(client.createScanner(TABLE_NAME, AUTHS)));
+        assertEquals(1, metrics(TABLE_NAME).getCacheHits());
+        assertEquals(1, metrics(TABLE_NAME).getCacheMisses());
+        assertEquals(20, metrics(TABLE_NAME).getEntries());
+        
+        cache.invalidate(TABLE_NAME);
+        assertEquals(0, cache.size());
+        assertEquals(40, keys(client.createScanner(TABLE_NAME, AUTHS)).size());
+    }
+    
+    @Test
+    public void testScansDifferingInAnyOptionAreCachedSeparately() throws Exception {
+        keys(client.createScanner(TABLE_NAME, AUTHS));
+        
+        Scanner scanner = client.createScanner(TABLE_NAME, AUTHS);
+        scanner.setRange(new Range("row000", "row004"));
+        assertEquals(10, keys(scanner).size());
+        
+        scanner = client.createScanner(TABLE_NAME, AUTHS);
+        scanner.fetchColumnFamily(new Text("f"));
+        assertEquals(10, keys(scanner).size());
+        
+        assertEquals(10, keys(client.createScanner(TABLE_NAME, new Authorizations("A"))).size());
+        
+        assertEquals(4, cache.size());
+        assertEquals(0, metrics(TABLE_NAME).getCacheHits());
+        assertEquals(4, metrics(TABLE_NAME).getCacheMisses());
+    }
+    
+    @Test
+    public void testBatchScanner() throws Exception {
+        List<Range> ranges = Arrays.asList(new Range("row000", "row001"), new Range("row005", "row006"));
+        BatchScanner scanner = client.createBatchScanner(TABLE_NAME, AUTHS, 2);
+        scanner.setRanges(ranges);
+        assertEquals(8, keys(scanner).size());
+        
+        scanner = client.createBatchScanner(TABLE_NAME, AUTHS, 2);
+        scanner.setRanges(ranges);
+        assertEquals(8, keys(scanner).size());
+        assertEquals(1, metrics(TABLE_NAME).getCacheHits());
+    }
+    
+    @Test
+    public void testCachedEntriesAreCopied() throws Exception {
+        List<Map.Entry<Key,Value>> entries = new ArrayList<>();
+        client.createScanner(TABLE_NAME, AUTHS).forEach(entries::add);
+        // modifying the entries of the scan that populated the cache, or of one that was served from it, leaves the cached result unchanged
+        entries.get(0).getValue().set("changed".getBytes());
+        entries.clear();
+        client.createScanner(TABLE_NAME, AUTHS).forEach(entries::add);
+        assertEquals(1, metrics(TABLE_NAME).getCacheHits());
+        assertEquals(new Value("value0"), entries.get(0).getValue());
+        Key key = new Key(entries.get(0).getKey());
+        entries.get(0).getValue().set("changed".getBytes());
+        entries.get(0).getKey().setTimestamp(key.getTimestamp() + 1);
+        
+        Map.Entry<Key,Value> first = client.createScanner(TABLE_NAME, AUTHS).iterator().next();
+        assertEquals(new Value("value0"), first.getValue());
+        assertEquals(key, first.getKey());
+    }
+    
+    @Test
+    public void testWritesThroughTheClientInvalidate() throws Exception {
+        keys(client.createScanner(TABLE_NAME, AUTHS));
+        assertEquals(1, cache.size());
+        BatchWriter writer = client.createBatchWriter(TABLE_NAME, new BatchWriterConfig());
+        writer.addMutation(mutation(100));
+        writer.flush();
+        assertEquals(0, cache.size());
+        assertEquals(21, keys(client.createScanner(TABLE_NAME, AUTHS)).size());
+        writer.addMutation(mutation(101));
+        writer.close();
+        assertEquals(0, cache.size());
+        assertEquals(22, keys(client.createScanner(TABLE_NAME, AUTHS)).size());
+        
+        MultiTableBatchWriter multiTableWriter = client.createMultiTableBatchWriter(new BatchWriterConfig());
+        multiTableWriter.getBatchWriter(UNCACHED_TABLE_NAME).addMutation(mutation(100));
+        multiTableWriter.flush();
+        assertEquals(1, cache.size());
+        multiTableWriter.getBatchWriter(TABLE_NAME).addMutation(mutation(102));
+        multiTableWriter.close();
+        assertEquals(0, cache.size());
+        assertEquals(23, keys(client.createScanner(TABLE_NAME, AUTHS)).size());
+    }
+    
+    @Test
+    public void testDeletesAndConditionalWritesInvalidate() throws Exception {
+        keys(client.createScanner(TABLE_NAME, AUTHS));
+        BatchDeleter deleter = client.createBatchDeleter(TABLE_NAME, AUTHS, 1);
+        deleter.setRanges(Collections.singleton(new Range("row000")));
+        deleter.delete();
+        deleter.close();
+        assertEquals(0, cache.size());
+        assertEquals(18, keys(client.createScanner(TABLE_NAME, AUTHS)).size());
+        
+        ConditionalWriter writer = cache.invalidating(new StubConditionalWriter(), TABLE_NAME);
+        writer.write(new ConditionalMutation("row100"));
+        assertEquals(0, cache.size());
+        keys(client.createScanner(TABLE_NAME, AUTHS));
+        Iterator<ConditionalWriter.Result> results = writer.write(Collections.singleton(new ConditionalMutation("row101")).iterator());
+        assertEquals(0, cache.size());
+        keys(client.createScanner(TABLE_NAME, AUTHS));
+        results.next();
+        assertFalse(results.hasNext());
+        assertEquals(0, cache.size());
+        keys(client.createScanner(TABLE_NAME, AUTHS));
+        writer.close();
+        assertEquals(0, cache.size());
+        
+        // writers to tables whose scans are not cached are not wrapped
+        ConditionalWriter uncached = new StubConditionalWriter();
+        assertSame(uncached, cache.invalidating(uncached, UNCACHED_TABLE_NAME));
+    }
+    
+    /**
+     * Accepts every mutation without writing it
+     */
+    private static class StubConditionalWriter implements ConditionalWriter {
+        @Override
+        public Iterator<Result> write(Iterator<ConditionalMutation> mutations) {
+            List<Result> results = new ArrayList<>();
+            mutations.forEachRemaining(mutation -> results.add(write(mutation)));
+            return results.iterator();
+        }
+        
+        @Override
+        public Result write(ConditionalMutation mutation) {
+            return new Result(Status.ACCEPTED, mutation, "localhost");
+        }
+        
+        @Override
+        public void close() {}
+    }
+    
+    @Test
+    public void testScansDifferingInConsistencyAreCachedSeparately() throws Exception {
+        keys(client.createScanner(TABLE_NAME, AUTHS));
+        Scanner scanner = client.createScanner(TABLE_NAME, AUTHS);
+        scanner.setConsistencyLevel(ScannerBase.ConsistencyLevel.EVENTUAL);
+        keys(scanner);
+        assertEquals(2, cache.size());
+        assertEquals(0, metrics(TABLE_NAME).getCacheHits());
+    }
+    
+    @Test
+    public void testScanRunningDuringAWriteIsNotCached() throws Exception {
+        Iterator<Map.Entry<Key,Value>> running = client.createScanner(TABLE_NAME, AUTHS).iterator();
+        running.next();
+        try (BatchWriter writer = client.createBatchWriter(TABLE_NAME, new BatchWriterConfig())) {
+            writer.addMutation(mutation(100));
+        }
+        while (running.hasNext()) {
+            running.next();
+        }
+        assertEquals(0, cache.size());
+        assertEquals(21, keys(client.createScanner(TABLE_NAME, AUTHS)).size());
+        assertEquals(1, cache.size());
+    }
+    
+    private static Mutation mutation(int row) {
+        Mutation m = new Mutation(String.format("row%03d", row));
+        m.put("f", "a", new ColumnVisibility("A"), new Value("value" + row));
+        return m;
+    }
+    
+    @Test
+    public void testOnlyCompleteScansOfEnabledTablesAreCached() throws Exception {
+        Iterator<Map.Entry<Key,Value>> partial = client.createScanner(TABLE_NAME, AUTHS).iterator();
+        partial.next();
+        assertEquals(0, cache.size());
+        
+        keys(client.createScanner(UNCACHED_TABLE_NAME, AUTHS));
+        keys(client.createScanner(UNCACHED_TABLE_NAME, AUTHS));
+        assertEquals(0, cache.size());
+        assertEquals(0, metrics(UNCACHED_TABLE_NAME).getCacheMisses());
+        
+        // mock scanners are not cached either
+        client.getMock().tableOperations().create(TABLE_NAME);
+        client.invalidateMockTables();
+        keys(client.createScanner(TABLE_NAME, Authorizations.EMPTY));
+        assertEquals(0, cache.size());
+    }
+    
+    @Test
+    public void testLargeResultsAreNotCached() throws Exception {
+        cache = new ScanResultCache(16 * 1024, 1, TimeUnit.MINUTES);
+        cache.enable(TABLE_NAME);
+        client.setScanResultCache(cache);
+        // 20 entries of over 128 bytes each exceed the 1kb result limit
+        assertEquals(20, keys(client.createScanner(TABLE_NAME, AUTHS)).size());
+        assertEquals(0, cache.size());
+        
+        Scanner scanner = client.createScanner(TABLE_NAME, AUTHS);
+        scanner.setRange(new Range("row000"));
+        assertEquals(2, keys(scanner).size());
+        assertEquals(1, cache.size());
+    }
+    
+    @Test
+    public void testDisable() throws Exception {
+        keys(client.createScanner(TABLE_NAME, AUTHS));
+        cache.disable(TABLE_NAME);
+        assertEquals(0, cache.size());
+        assertEquals(Collections.emptySet(), cache.getTables());
+        assertThrows(IllegalArgumentException.class, () -> new ScanResultCache(0, 1, TimeUnit.MINUTES));
+    }
+}